@@ -0,0 +1,77 @@
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.AccountDAO;
+import Model.Account;
+import Service.AccountService;
+import Util.BloomFilter;
+
+/**
+ * AccountService registration and login, with and without the credential cache and the username Bloom filter.
+ * Run with different thread counts by passing JMH's -t option, for example
+ * -Djmh.args="AccountServiceBenchmark -t 8".
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {BenchmarkData.DB_URL, BenchmarkData.HEAP})
+public class AccountServiceBenchmark {
+
+    @Param({"1000", "100000"})
+    public int accounts;
+
+    /**
+     * Maximum size of the login credential cache; 0 disables it.
+     */
+    @Param({"0", "10000"})
+    public int credentialCacheSize;
+
+    @Param({"false", "true"})
+    public boolean usernameFilter;
+
+    private AccountService accountService;
+    private final AtomicLong registrations = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void seed() throws SQLException {
+        BenchmarkData.seed(accounts, 0);
+        accountService = new AccountService(new AccountDAO(), credentialCacheSize, TimeUnit.MINUTES.toNanos(5));
+        if (usernameFilter) {
+            accountService.enableUsernameFilter(new BloomFilter(1_000_000, 0.01));
+        }
+    }
+
+    /**
+     * Log in as one of the seeded accounts, chosen at random.
+     */
+    @Benchmark
+    public Account loginUser() {
+        String username = "user" + ThreadLocalRandom.current().nextInt(accounts);
+        return accountService.loginUser(new Account(username, "password"));
+    }
+
+    /**
+     * Register a new, unique account.
+     */
+    @Benchmark
+    public Account registerUser() {
+        return accountService.registerUser(new Account("new" + registrations.getAndIncrement(), "password"));
+    }
+}
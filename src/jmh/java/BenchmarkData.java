@@ -0,0 +1,48 @@
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import DAO.AccountStore;
+import DAO.MessageDAO;
+import DAO.MessageStore;
+import Model.Account;
+import Util.ConnectionUtil;
+import Util.DatasetGenerator;
+
+/**
+ * Seeds the benchmark database. Benchmarks fork with db.url pointing at a private in-memory database, so this never
+ * touches the application's own database.
+ */
+public class BenchmarkData {
+
+    /**
+     * JVM options every benchmark forks with.
+     */
+    public static final String DB_URL = "-Ddb.url=jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1";
+    public static final String HEAP = "-Xmx4g";
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * Recreate the schema, then fill it with DatasetGenerator's default dataset shape: accounts "user0" to
+     * "user{accounts - 1}", all with the password "password", and messages spread over them by a Zipf distribution.
+     */
+    public static void seed(int accounts, int messages) throws SQLException {
+        ConnectionUtil.resetTestDatabase();
+        try (Connection connection = ConnectionUtil.getConnection()) {
+            new DatasetGenerator(accounts, messages).generate(connection);
+        }
+    }
+
+    /**
+     * Copy a dataset written by seed() from the database into other stores, such as the in-memory engine's.
+     * Accounts and messages are copied in id order, so empty stores give them the same ids as in the database.
+     */
+    public static void copy(int accounts, AccountStore accountStore, MessageStore messageStore) throws IOException {
+        for (int i = 0; i < accounts; i++) {
+            accountStore.insertAccount(new Account("user" + i, "password"));
+        }
+        new MessageDAO().forEachMessage(messageStore::insertMessage);
+    }
+}
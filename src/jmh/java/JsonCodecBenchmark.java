@@ -0,0 +1,58 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Model.Message;
+import Util.JsonCodec;
+
+/**
+ * Compares the JSON work done for one POST /messages request by the original handlers with the shared JsonCodec.
+ * Both paths start from the raw request bytes and end with the response bytes Javalin writes. Run with "-prof gc"
+ * to see the allocation per request (gc.alloc.rate.norm).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonCodecBenchmark {
+
+    private final byte[] requestBody = ("{\"posted_by\":1,\"message_text\":\"hello message\","
+            + "\"time_posted_epoch\":1669947792}").getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * The original path: a new ObjectMapper per request, the body decoded to a String first, and the response
+     * serialized to a String which Javalin then encodes.
+     */
+    @Benchmark
+    public byte[] perRequestMapper() throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        Message message = mapper.readValue(new String(requestBody, StandardCharsets.UTF_8), Message.class);
+        message.setMessage_id(1);
+        return mapper.writeValueAsString(message).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The shared codec: a pre-built reader parsing the body stream, and the pre-built writer used by ctx.json().
+     */
+    @Benchmark
+    public byte[] sharedCodec() throws IOException {
+        Message message = JsonCodec.INSTANCE.readMessage(new ByteArrayInputStream(requestBody));
+        message.setMessage_id(1);
+        return JsonCodec.INSTANCE.toJsonString(message, Message.class).getBytes(StandardCharsets.UTF_8);
+    }
+}
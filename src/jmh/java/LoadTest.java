@@ -0,0 +1,297 @@
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import Controller.SocialMediaController;
+import DAO.StorageEngine;
+import Util.LatencyHistogram;
+import io.javalin.Javalin;
+
+/**
+ * Open-loop HTTP load test. Boots SocialMediaController on a random port against a seeded in-memory database, sends
+ * a weighted mix of the API's endpoints at a fixed target rate, and reports latency percentiles, throughput and
+ * error rate per endpoint.
+ *
+ * Requests are scheduled at fixed intervals whether or not earlier ones have completed, and each latency is measured
+ * from the time the request was scheduled to be sent rather than when it actually was. A stall therefore shows up in
+ * the latency of every request that should have been sent during it, which corrects for coordinated omission.
+ *
+ * Options, all optional, given as --name value:
+ *   rate       target requests per second (500)
+ *   duration   measured seconds (30)
+ *   warmup     seconds of load before measuring starts (5)
+ *   accounts   seeded accounts (1000)
+ *   messages   seeded messages (100000)
+ *   mix        endpoint weights, for example "getMessageById=50,createMessage=50"; endpoints left out get no load
+ *
+ * Run with mvn -Pjmh test-compile exec:exec@loadtest -Dloadtest.args="--rate 2000 --duration 60". Server options
+ * such as -Dserver.virtualThreads=true can be given in loadtest.jvmArgs; with -Dstorage.engine=memory the seeded
+ * data is copied into the in-memory engine.
+ */
+public class LoadTest {
+
+    /**
+     * Requests still outstanding beyond which new ones are counted as errors instead of being sent, so that an
+     * overloaded server cannot exhaust the load generator's memory.
+     */
+    private static final int MAX_OUTSTANDING = 20000;
+
+    private static final String[] ENDPOINTS = {"register", "login", "createMessage", "getAllMessages",
+            "getMessageById", "deleteMessage", "updateMessage", "getMessagesByAccountId"};
+
+    private static final String DEFAULT_MIX = "register=5,login=10,createMessage=15,getAllMessages=5,"
+            + "getMessageById=30,deleteMessage=5,updateMessage=10,getMessagesByAccountId=20";
+
+    /**
+     * Results for one endpoint.
+     */
+    private static class EndpointStats {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder requests = new LongAdder();
+        final LongAdder errors = new LongAdder();
+    }
+
+    private final Map<String, String> options;
+    private final int accounts;
+    private final int messages;
+    private final AtomicLong registrations = new AtomicLong();
+    private final HttpClient client;
+    private String baseUrl;
+
+    private LoadTest(Map<String, String> options) {
+        this.options = options;
+        this.accounts = intOption("accounts", 1000);
+        this.messages = intOption("messages", 100000);
+        ExecutorService clientExecutor = Executors.newFixedThreadPool(
+                Math.max(4, Runtime.getRuntime().availableProcessors()), runnable -> {
+                    Thread thread = new Thread(runnable, "loadtest-client");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .executor(clientExecutor)
+                .build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            options.put(args[i].replaceFirst("^--", ""), args[i + 1]);
+        }
+        if (System.getProperty("db.url") == null) {
+            System.setProperty("db.url", "jdbc:h2:mem:loadtest;DB_CLOSE_DELAY=-1");
+        }
+        new LoadTest(options).run();
+        System.exit(0);
+    }
+
+    private void run() throws Exception {
+        System.out.println("Seeding " + accounts + " accounts and " + messages + " messages");
+        BenchmarkData.seed(accounts, messages);
+        if (StorageEngine.isInMemory()) {
+            BenchmarkData.copy(accounts, StorageEngine.accountStore(), StorageEngine.messageStore());
+        }
+
+        Javalin app = new SocialMediaController().startAPI().start(0);
+        baseUrl = "http://localhost:" + app.port();
+        try {
+            drive();
+        } finally {
+            app.stop();
+        }
+    }
+
+    private void drive() throws InterruptedException {
+        int rate = intOption("rate", 500);
+        long warmupNanos = TimeUnit.SECONDS.toNanos(intOption("warmup", 5));
+        long durationNanos = TimeUnit.SECONDS.toNanos(intOption("duration", 30));
+        String[] mix = weightedMix(options.getOrDefault("mix", DEFAULT_MIX));
+
+        Map<String, EndpointStats> stats = new LinkedHashMap<>();
+        for (String endpoint : ENDPOINTS) {
+            stats.put(endpoint, new EndpointStats());
+        }
+        EndpointStats total = new EndpointStats();
+        AtomicInteger outstanding = new AtomicInteger();
+
+        System.out.println("Sending " + rate + " requests/s to " + baseUrl + " for " + (warmupNanos + durationNanos)
+                / 1_000_000_000L + "s, measuring the last " + durationNanos / 1_000_000_000L + "s");
+
+        long intervalNanos = 1_000_000_000L / rate;
+        long start = System.nanoTime();
+        long measureFrom = start + warmupNanos;
+        long end = measureFrom + durationNanos;
+
+        for (long i = 0; ; i++) {
+            long intendedStart = start + i * intervalNanos;
+            if (intendedStart >= end) {
+                break;
+            }
+            long wait = intendedStart - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+
+            String endpoint = mix[ThreadLocalRandom.current().nextInt(mix.length)];
+            boolean measured = intendedStart >= measureFrom;
+            EndpointStats endpointStats = stats.get(endpoint);
+            if (measured) {
+                endpointStats.requests.increment();
+                total.requests.increment();
+            }
+
+            if (outstanding.get() >= MAX_OUTSTANDING) {
+                if (measured) {
+                    endpointStats.errors.increment();
+                    total.errors.increment();
+                }
+                continue;
+            }
+
+            outstanding.incrementAndGet();
+            client.sendAsync(request(endpoint), HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, failure) -> {
+                        outstanding.decrementAndGet();
+                        if (!measured) {
+                            return;
+                        }
+                        long latency = System.nanoTime() - intendedStart;
+                        endpointStats.latency.record(latency);
+                        total.latency.record(latency);
+                        if (failure != null || response.statusCode() >= 500) {
+                            endpointStats.errors.increment();
+                            total.errors.increment();
+                        }
+                    });
+        }
+
+        // Give outstanding requests a chance to finish, so that their latency is counted
+        long drainUntil = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (outstanding.get() > 0 && System.nanoTime() < drainUntil) {
+            Thread.sleep(10);
+        }
+
+        report(stats, total, durationNanos / 1e9, outstanding.get());
+    }
+
+    private void report(Map<String, EndpointStats> stats, EndpointStats total, double seconds, int unfinished) {
+        System.out.println();
+        System.out.println("Latency in ms, measured from each request's scheduled start (percentiles within 12.5%)");
+        System.out.printf("%-24s %9s %9s %8s %9s %9s %9s %9s%n",
+                "endpoint", "requests", "req/s", "errors", "p50", "p99", "p99.9", "max");
+        for (Map.Entry<String, EndpointStats> entry : stats.entrySet()) {
+            if (entry.getValue().requests.sum() > 0) {
+                printRow(entry.getKey(), entry.getValue(), seconds);
+            }
+        }
+        printRow("total", total, seconds);
+        if (unfinished > 0) {
+            System.out.println(unfinished + " requests had not completed when the run ended");
+        }
+    }
+
+    /**
+     * Print one endpoint's results. Throughput counts completed requests; the error rate counts failures, 5xx
+     * responses and requests dropped because too many were outstanding.
+     */
+    private static void printRow(String name, EndpointStats stats, double seconds) {
+        long requests = stats.requests.sum();
+        long completed = stats.latency.getCount();
+        long errors = stats.errors.sum();
+        System.out.printf("%-24s %9d %9.1f %7.2f%% %9.2f %9.2f %9.2f %9.2f%n",
+                name, requests, completed / seconds, requests == 0 ? 0.0 : 100.0 * errors / requests,
+                stats.latency.valueAtQuantile(0.5) / 1e6, stats.latency.valueAtQuantile(0.99) / 1e6,
+                stats.latency.valueAtQuantile(0.999) / 1e6, stats.latency.valueAtQuantile(1.0) / 1e6);
+    }
+
+    /**
+     * Build a request for the endpoint, with random ids and bodies drawn from the seeded data.
+     */
+    private HttpRequest request(String endpoint) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int accountId = random.nextInt(accounts) + 1;
+        int messageId = random.nextInt(messages) + 1;
+        switch (endpoint) {
+            case "register":
+                return post("/register", "{\"username\":\"load" + registrations.getAndIncrement() + "_"
+                        + random.nextInt(Integer.MAX_VALUE) + "\",\"password\":\"password\"}");
+            case "login":
+                return post("/login", "{\"username\":\"user" + (accountId - 1) + "\",\"password\":\"password\"}");
+            case "createMessage":
+                return post("/messages", messageBody(accountId));
+            case "getAllMessages":
+                return get("/messages?limit=100");
+            case "getMessageById":
+                return get("/messages/" + messageId);
+            case "deleteMessage":
+                return HttpRequest.newBuilder(URI.create(baseUrl + "/messages/" + messageId)).DELETE().build();
+            case "updateMessage":
+                return HttpRequest.newBuilder(URI.create(baseUrl + "/messages/" + messageId))
+                        .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\":\"updated text\"}"))
+                        .build();
+            case "getMessagesByAccountId":
+                return get("/accounts/" + accountId + "/messages");
+            default:
+                throw new IllegalArgumentException("Unknown endpoint " + endpoint);
+        }
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path)).GET().build();
+    }
+
+    private HttpRequest post(String path, String body) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .POST(HttpRequest.BodyPublishers.ofString(body)).build();
+    }
+
+    private static String messageBody(int accountId) {
+        return "{\"posted_by\":" + accountId + ",\"message_text\":\"load test message\",\"time_posted_epoch\":"
+                + System.currentTimeMillis() / 1000 + "}";
+    }
+
+    /**
+     * Expand "a=2,b=1" into {"a", "a", "b"}, so that a uniformly random element follows the weights.
+     */
+    private static String[] weightedMix(String mix) {
+        List<String> expanded = new ArrayList<>();
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.trim().split("=");
+            boolean known = false;
+            for (String endpoint : ENDPOINTS) {
+                known |= endpoint.equals(parts[0]);
+            }
+            if (!known) {
+                throw new IllegalArgumentException("Unknown endpoint " + parts[0]);
+            }
+            for (int i = 0; i < Integer.parseInt(parts[1]); i++) {
+                expanded.add(parts[0]);
+            }
+        }
+        if (expanded.isEmpty()) {
+            throw new IllegalArgumentException("The mix has no weight");
+        }
+        return expanded.toArray(new String[0]);
+    }
+
+    private int intOption(String name, int defaultValue) {
+        String value = options.get(name);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+}
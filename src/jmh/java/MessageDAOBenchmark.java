@@ -0,0 +1,89 @@
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.InMemoryAccountStore;
+import DAO.InMemoryMessageStore;
+import DAO.MessageDAO;
+import DAO.MessageStore;
+import Model.Message;
+
+/**
+ * MessageDAO hot paths against a message table of 1k, 100k and 1M rows, spread over one account per 100 messages.
+ * Run with different thread counts by passing JMH's -t option, for example
+ * -Djmh.args="MessageDAOBenchmark -t 8".
+ *
+ * insertMessage adds rows for the whole trial, so its table ends up somewhat larger than the rows parameter.
+ *
+ * The engine parameter runs the same calls against the H2 MessageDAO and against an InMemoryMessageStore holding the
+ * same dataset, which gives a baseline without any database or I/O cost.
+ *
+ * Add -prof gc to jmh.args to report the bytes allocated per call alongside the time, for example
+ * -Djmh.args="MessageDAOBenchmark.getMessagesByAccountId -p engine=memory -prof gc".
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {BenchmarkData.DB_URL, BenchmarkData.HEAP})
+public class MessageDAOBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int rows;
+
+    @Param({"h2", "memory"})
+    public String engine;
+
+    private MessageStore messageStore;
+    private int accounts;
+
+    @Setup(Level.Trial)
+    public void seed() throws SQLException, IOException {
+        accounts = Math.max(1, rows / 100);
+        BenchmarkData.seed(accounts, rows);
+        if (engine.equals("memory")) {
+            InMemoryAccountStore accountStore = new InMemoryAccountStore();
+            messageStore = new InMemoryMessageStore(accountStore);
+            BenchmarkData.copy(accounts, accountStore, messageStore);
+        } else {
+            messageStore = new MessageDAO();
+        }
+    }
+
+    @Benchmark
+    public Message getMessageById() {
+        return messageStore.getMessageById(ThreadLocalRandom.current().nextInt(rows) + 1);
+    }
+
+    @Benchmark
+    public List<Message> getMessagesByAccountId() {
+        return messageStore.getMessagesByAccountId(ThreadLocalRandom.current().nextInt(accounts) + 1);
+    }
+
+    @Benchmark
+    public List<Message> getAllMessages() {
+        return messageStore.getAllMessages();
+    }
+
+    @Benchmark
+    public Message insertMessage() {
+        int postedBy = ThreadLocalRandom.current().nextInt(accounts) + 1;
+        return messageStore.insertMessage(new Message(postedBy, "benchmark insert", 1669947792L));
+    }
+}
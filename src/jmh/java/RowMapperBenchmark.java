@@ -0,0 +1,88 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.RowMappers;
+import Model.Message;
+import Util.ConnectionUtil;
+
+/**
+ * Compares ways of mapping the same query's rows into Messages: looking every column up by name on every row, as
+ * MessageDAO used to, against RowMappers.messageByName, which looks them up once per statement, and
+ * RowMappers.MESSAGE, which reads by position. Every variant runs the same statement on one open connection, so the
+ * difference is the mapping alone. Run with "-prof gc" to see the allocation per call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {BenchmarkData.DB_URL, BenchmarkData.HEAP})
+public class RowMapperBenchmark {
+
+    /**
+     * Rows returned by each query.
+     */
+    @Param({"100", "10000"})
+    public int rows;
+
+    private Connection connection;
+    private PreparedStatement statement;
+
+    @Setup(Level.Trial)
+    public void seed() throws SQLException {
+        BenchmarkData.seed(Math.max(1, rows / 100), rows);
+        connection = ConnectionUtil.getConnection();
+        statement = connection.prepareStatement("SELECT " + RowMappers.MESSAGE_COLUMNS + " FROM message");
+    }
+
+    @TearDown(Level.Trial)
+    public void close() throws SQLException {
+        statement.close();
+        connection.close();
+    }
+
+    @Benchmark
+    public List<Message> byNameEveryRow() throws SQLException {
+        List<Message> messages = new ArrayList<>();
+        try (ResultSet rs = statement.executeQuery()) {
+            while (rs.next()) {
+                messages.add(new Message(rs.getInt("message_id"), rs.getInt("posted_by"),
+                        rs.getString("message_text"), rs.getLong("time_posted_epoch")));
+            }
+        }
+        return messages;
+    }
+
+    @Benchmark
+    public List<Message> resolvedOnce() throws SQLException {
+        try (ResultSet rs = statement.executeQuery()) {
+            return RowMappers.list(rs, RowMappers.messageByName(rs));
+        }
+    }
+
+    @Benchmark
+    public List<Message> byPosition() throws SQLException {
+        try (ResultSet rs = statement.executeQuery()) {
+            return RowMappers.list(rs, RowMappers.MESSAGE);
+        }
+    }
+}
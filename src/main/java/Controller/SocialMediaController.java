@@ -4,13 +4,28 @@ import Model.Account;
 import Model.Message;
 import Service.AccountService;
 import Service.MessageService;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import io.javalin.Javalin;
+import io.javalin.http.ContentType;
 import io.javalin.http.Context;
+import io.javalin.http.Handler;
 import Service.ServiceException;
-
+import DAO.MessageHandler;
+import DAO.StorageEngine;
+import Util.ConnectionUtil;
+import Util.DatabaseExecutor;
+import Util.JsonCodec;
+import Util.Metrics;
+import Util.UnitOfWork;
+import Util.VirtualThreadPool;
+import org.eclipse.jetty.server.Response;
+import org.eclipse.jetty.server.Server;
+
+import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 
 
 /**
@@ -19,9 +34,20 @@ import java.util.List;
  * refer to prior mini-project labs and lecture materials for guidance on how a controller may be built.
  */
 public class SocialMediaController {
+
+    /**
+     * Shared JSON codec, also registered as the app's JsonMapper so that ctx.json() uses it.
+     */
+    private static final JsonCodec JSON = JsonCodec.INSTANCE;
+
     MessageService messageService;
     AccountService accountService;
 
+    /**
+     * In async mode, the bulkhead that runs every handler's database work; null otherwise.
+     */
+    DatabaseExecutor databaseExecutor;
+
     public SocialMediaController(){
         this.messageService = new MessageService();
         this.accountService = new AccountService();
@@ -31,35 +57,100 @@ public class SocialMediaController {
     /**
      * In order for the test cases to work, you will need to write the endpoints in the startAPI() method, as the test
      * suite must receive a Javalin object from this method.
+     * With the system property server.virtualThreads set to true, every request runs on its own virtual thread
+     * instead of Jetty's bounded pool of platform threads, which is left with the acceptors and selectors.
+     * With server.async.enabled set to true, handlers run their database work on a DatabaseExecutor with one thread
+     * per pooled connection and a queue of server.async.queueCapacity requests; requests beyond that get a 503.
+     * With storage.engine set to memory, the services keep everything in memory and never use the database; set to
+     * log, messages are kept in an append-only log of memory-mapped files (see StorageEngine).
      * @return a Javalin app object which defines the behavior of the Javalin controller.
      */
 
     public Javalin startAPI() {
-        Javalin app = Javalin.create();
+        Javalin app = Javalin.create(config -> {
+            config.jsonMapper(JSON);
+            // Called once every request has been fully handled, including async handlers
+            config.requestLogger.http((ctx, executionTimeMs) -> Metrics.requestFinished(ctx.req().getMethod(),
+                    matchedRoute(ctx), ctx.statusCode(), (long) (executionTimeMs * 1_000_000.0),
+                    ctx.contentLength(), responseBytes(ctx)));
+            if (Boolean.getBoolean("server.virtualThreads")) {
+                config.jetty.server(() -> new Server(new VirtualThreadPool("server")));
+            }
+        });
+
+        if (Boolean.getBoolean("server.async.enabled")) {
+            // Without a database there are no connections to match, so use one thread per core instead
+            int threads = StorageEngine.isInMemory() ? Runtime.getRuntime().availableProcessors()
+                    : ConnectionUtil.getPoolStats().getMaxSize();
+            databaseExecutor = new DatabaseExecutor(threads, Integer.getInteger("server.async.queueCapacity", 100));
+            app.events(event -> event.serverStopped(databaseExecutor::shutdown));
+            Metrics.gauge("db_executor_queued", "Requests waiting for a database executor thread.",
+                    databaseExecutor::getQueued);
+            Metrics.gauge("db_executor_active", "Database executor threads currently running a request.",
+                    databaseExecutor::getActive);
+        }
+        if (!StorageEngine.isInMemory()) {
+            Metrics.gauge("db_pool_active_connections", "Connections currently borrowed from the pool.",
+                    () -> ConnectionUtil.getPoolStats().getActive());
+            Metrics.gauge("db_pool_idle_connections", "Open connections waiting in the pool.",
+                    () -> ConnectionUtil.getPoolStats().getIdle());
+            Metrics.gauge("db_pool_waiting_threads", "Threads waiting to borrow a connection.",
+                    () -> ConnectionUtil.getPoolStats().getWaiting());
+        }
+        Metrics.gauge("messages_cache_hits", "Message lookups answered by the message cache.",
+                () -> messageService.getMessageCache().getHitCount());
+        Metrics.gauge("messages_cache_misses", "Message lookups the message cache could not answer.",
+                () -> messageService.getMessageCache().getMissCount());
+        Metrics.gauge("messages_cache_evictions", "Messages evicted from the message cache to bound its size.",
+                () -> messageService.getMessageCache().getEvictionCount());
+
+        // Every DAO call made while handling a request shares one connection and one transaction, committed once
+        // the handler has finished. Server errors roll the transaction back instead, and a failed commit turns the
+        // response into a 500, since nothing the handler reported was stored. In async mode the handler takes the
+        // unit of work to the DatabaseExecutor and ends it there, so the after handler finds none.
+        app.before(ctx -> {
+            Metrics.requestStarted();
+            UnitOfWork.begin();
+        });
+        app.after(ctx -> {
+            UnitOfWork unitOfWork = UnitOfWork.current();
+            if (unitOfWork != null) {
+                if (ctx.statusCode() >= 500) {
+                    unitOfWork.setRollbackOnly();
+                }
+                if (!unitOfWork.end()) {
+                    ctx.status(500).result("");
+                }
+            }
+        });
 
         // 1: Our API should be able to process new User registrations.
-        app.post("/register", this::postRegisterUserHandler);
+        app.post("/register", onDatabaseExecutor(this::postRegisterUserHandler));
 
         // 2: Our API should be able to process User logins.
-        app.post("/login", this::postLoginUserHandler);
+        app.post("/login", onDatabaseExecutor(this::postLoginUserHandler));
 
         // 3: Our API should be able to process the creation of new messages.
-        app.post("/messages", this::postCreateMessageHandler);
+        app.post("/messages", onDatabaseExecutor(this::postCreateMessageHandler));
+        app.post("/messages/batch", onDatabaseExecutor(this::postCreateMessagesBatchHandler));
 
         // 4: Our API should be able to retrieve all messages.
-        app.get("/messages", this::getAllMessagesHandler);
+        app.get("/messages", onDatabaseExecutor(this::getAllMessagesHandler));
 
         // 5: Our API should be able to retrieve a message by its ID.
-        app.get("/messages/{message_id}", this::getMessageByIdHandler);
+        app.get("/messages/{message_id}", onDatabaseExecutor(this::getMessageByIdHandler));
 
         // 6: Our API should be able to delete a message identified by a message ID.
-        app.delete("/messages/{message_id}", this::deleteMessageHandler);
+        app.delete("/messages/{message_id}", onDatabaseExecutor(this::deleteMessageHandler));
 
         // 7: Our API should be able to update a message text identified by a message ID.
-        app.patch("/messages/{message_id}", this::updateMessageHandler);
+        app.patch("/messages/{message_id}", onDatabaseExecutor(this::updateMessageHandler));
 
         // 8: Our API should be able to retrieve all messages written by a particular user.
-        app.get("/accounts/{account_id}/messages", this::getMessagesByAccountIdHandler);
+        app.get("/accounts/{account_id}/messages", onDatabaseExecutor(this::getMessagesByAccountIdHandler));
+
+        // Request, database and connection pool metrics in the Prometheus text format
+        app.get("/metrics", this::getMetricsHandler);
 
         // app.start(8080);
 
@@ -76,15 +167,13 @@ public class SocialMediaController {
      *
      * @param ctx the Javalin context object representing the current HTTP request
      *            and response
-     * @throws JsonProcessingException if an error occurs during JSON parsing or
-     *            serialization
+     * @throws IOException if an error occurs during JSON parsing
      */
 
-    private void postRegisterUserHandler(Context ctx) throws JsonProcessingException {
+    private void postRegisterUserHandler(Context ctx) throws IOException {
         
-        // Retrieve the message from the path parameter
-        ObjectMapper mapper = new ObjectMapper();
-        Account account = mapper.readValue(ctx.body(), Account.class);
+        // Read the account straight from the request body
+        Account account = JSON.readAccount(ctx.bodyInputStream());
 
         try {
 
@@ -94,7 +183,7 @@ public class SocialMediaController {
             if(addedAccount!=null) {
 
                 // If User Registration successfull then the response body should contain a JSON of the Account
-                ctx.json(mapper.writeValueAsString(addedAccount));
+                ctx.json(addedAccount);
             
             } else {
 
@@ -121,15 +210,13 @@ public class SocialMediaController {
      *
      * @param ctx the Javalin context object representing the current HTTP request
      *            and response
-     * @throws JsonProcessingException if an error occurs during JSON parsing or
-     *            serialization
+     * @throws IOException if an error occurs during JSON parsing
      */
 
-    private void postLoginUserHandler(Context ctx) throws JsonProcessingException {
+    private void postLoginUserHandler(Context ctx) throws IOException {
         
-        // Retrieve account from the path parameter
-        ObjectMapper mapper = new ObjectMapper();
-        Account account = mapper.readValue(ctx.body(), Account.class);
+        // Read the account straight from the request body
+        Account account = JSON.readAccount(ctx.bodyInputStream());
 
         try {
 
@@ -140,7 +227,7 @@ public class SocialMediaController {
             if(loggedInAccount!=null){
                 
                 // Send the logged-in account as a JSON response
-                ctx.json(mapper.writeValueAsString(loggedInAccount));
+                ctx.json(loggedInAccount);
 
             }else{
 
@@ -167,15 +254,13 @@ public class SocialMediaController {
      *
      * @param ctx the Javalin context object representing the current HTTP request
      *            and response
-     * @throws JsonProcessingException if an error occurs during JSON parsing or
-     *            serialization
+     * @throws IOException if an error occurs during JSON parsing
      */
 
-    private void postCreateMessageHandler(Context ctx) throws JsonProcessingException {
+    private void postCreateMessageHandler(Context ctx) throws IOException {
         
-        // Retrieve the message from the path parameter
-        ObjectMapper mapper = new ObjectMapper();
-        Message message = mapper.readValue(ctx.body(), Message.class);
+        // Read the message straight from the request body
+        Message message = JSON.readMessage(ctx.bodyInputStream());
         
         // Call the messageService to create new message
         Message createdMessage = messageService.createMessage(message);
@@ -183,7 +268,7 @@ public class SocialMediaController {
         if(createdMessage!=null){
 
             // Send the created message as a JSON response
-            ctx.json(mapper.writeValueAsString(createdMessage));
+            ctx.json(createdMessage);
 
         }else{
 
@@ -195,16 +280,75 @@ public class SocialMediaController {
     }
 
 
+    /**
+     * This method handles the creation of a batch of new messages.
+     * It expects a POST request to "/messages/batch" with a JSON list of messages in the request body. Each message is
+     * validated with the same rules as POST "/messages"; the response is a JSON list with one result per message, in
+     * the same order, holding either the created message or the reason it was rejected.
+     *
+     * @param ctx the Javalin context object representing the current HTTP request
+     *            and response
+     */
+
+    private void postCreateMessagesBatchHandler(Context ctx) {
+
+        try {
+
+            // Read the messages straight from the request body
+            List<Message> messages = JSON.readMessages(ctx.bodyInputStream());
+
+            // Call the messageService to validate and create every message in the batch
+            ctx.json(messageService.createMessages(messages));
+
+        } catch (IOException | ServiceException e) {
+
+            // Set the status code to 400 (Bad Request) for a malformed or oversized batch
+            ctx.status(400);
+
+        }
+
+    }
+
+
     // 4: Our API should be able to retrieve all messages.
 
     /**
      * This method retrieves all messages.
      * It expects a GET request to "/messages".
      *
+     * Without query parameters the response is a JSON list of every message. If a "limit" or "cursor" query
+     * parameter is given, the response is instead a single page of messages ordered by message_id, together with
+     * the next_cursor to pass back for the following page. With "stream=true" the full list is streamed from the
+     * database straight to the response instead of being built in memory first.
+     *
      * @param ctx the Javalin context object representing the current HTTP request and response
      */
 
-    public void getAllMessagesHandler(Context ctx) throws JsonProcessingException {
+    public void getAllMessagesHandler(Context ctx) throws IOException {
+
+        if ( isStreamRequest(ctx) ) {
+
+            streamMessages(ctx, messageService::forEachMessage);
+            return;
+
+        }
+
+        if ( isPageRequest(ctx) ) {
+
+            try {
+
+                // Call the messageService to retrieve one page of messages
+                ctx.json(messageService.getMessagesPage(pageLimit(ctx), ctx.queryParam("cursor")));
+
+            } catch (NumberFormatException | ServiceException e) {
+
+                // Respond with a 'Bad Request' status for an invalid limit or cursor
+                ctx.status(400);
+
+            }
+            return;
+
+        }
         
         // Call the messageService to retrieve all messages
         List<Message> messages = messageService.getAllMessages();
@@ -214,6 +358,49 @@ public class SocialMediaController {
     }
 
 
+    /**
+     * A streaming read from the messageService, such as forEachMessage.
+     */
+    @FunctionalInterface
+    private interface MessageSource {
+        int forEach(MessageHandler handler) throws IOException;
+    }
+
+
+    /**
+     * Write the source's messages to the response as a JSON array, one row at a time. Each row goes from the database
+     * cursor straight into the JsonGenerator, so memory use does not grow with the number of messages.
+     *
+     * If the read fails part way through, the array is left unterminated and the connection is aborted, since the
+     * status line has usually been sent already: the client sees a broken response rather than a complete-looking
+     * 200 holding only some of the messages.
+     *
+     * @param ctx the Javalin context object representing the current HTTP request and response
+     * @throws IOException if the messages could not be read or the response could not be written
+     */
+
+    private void streamMessages(Context ctx, MessageSource source) throws IOException {
+
+        ctx.contentType(ContentType.APPLICATION_JSON);
+
+        // Javalin owns the response stream, so the codec's generator only flushes it when closed. Closing must not
+        // write the closing bracket for us, or a failed read would still look like a complete array.
+        JsonGenerator generator = JSON.createGenerator(ctx.outputStream());
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+        try (generator) {
+            generator.writeStartArray();
+            source.forEach(generator::writeObject);
+            generator.writeEndArray();
+        } catch (IOException e) {
+            if ( ctx.res() instanceof Response ) {
+                ((Response) ctx.res()).getHttpChannel().abort(e);
+            }
+            throw e;
+        }
+
+    }
+
+
     // 5: Our API should be able to retrieve a message by its ID.
 
     /**
@@ -280,13 +467,12 @@ public class SocialMediaController {
         // Retrieve the message ID from the path parameter
         int id = Integer.parseInt(ctx.pathParam("message_id"));
 
-        // Attempt to retrieve the message by its ID
-        Message idMessage = messageService.getMessageById(id);
-        if ( idMessage != null) {
-            // The message exists, so delete it
-            messageService.deleteMessageById(id);
+        // Delete the message, getting back the row as it was before deletion
+        Message deletedMessage = messageService.deleteMessageById(id);
+        if ( deletedMessage != null) {
+            // The message existed, so respond with the now-deleted message
             ctx.status(200);
-            ctx.json(idMessage);
+            ctx.json(deletedMessage);
         } else {
             // The message does not exist
             // Set the response status to 200 (OK) to indicate successful deletion
@@ -305,15 +491,13 @@ public class SocialMediaController {
      *
      * @param ctx the Javalin context object representing the current HTTP request
      *            and response
-     * @throws JsonProcessingException if an error occurs during JSON parsing or
-     *            serialization
+     * @throws IOException if an error occurs during JSON parsing
      */
 
-    private void updateMessageHandler(Context ctx) throws JsonProcessingException {
+    private void updateMessageHandler(Context ctx) throws IOException {
 
-        // Retrieve the message from the path parameter
-        ObjectMapper mapper = new ObjectMapper();
-        Message message = mapper.readValue(ctx.body(), Message.class);
+        // Read the message straight from the request body
+        Message message = JSON.readMessage(ctx.bodyInputStream());
 
         // Retrieve the message ID from the path parameter
         int id = Integer.parseInt(ctx.pathParam("message_id"));
@@ -322,7 +506,7 @@ public class SocialMediaController {
         Message messageById = messageService.updateMessageById(id, message);
         
         if(messageById!=null){
-            ctx.json(mapper.writeValueAsString(messageById));
+            ctx.json(messageById);
         }else{
 
             // Set the status code to 400 (Bad Request)
@@ -341,13 +525,29 @@ public class SocialMediaController {
      * @param ctx the Javalin context object representing the current HTTP request and response
      */
 
-    private void getMessagesByAccountIdHandler(Context ctx) throws JsonProcessingException {
+    private void getMessagesByAccountIdHandler(Context ctx) throws IOException {
 
         try {
 
             // Retrieve the account ID from the path parameter
             int accountId = Integer.parseInt(ctx.pathParam("account_id"));
 
+            if ( isStreamRequest(ctx) ) {
+
+                // Stream the account's messages from the database cursor straight to the response
+                streamMessages(ctx, handler -> messageService.forEachMessageByAccountId(accountId, handler));
+                return;
+
+            }
+
+            if ( isPageRequest(ctx) ) {
+
+                // Call the messageService to retrieve one page of the account's messages
+                ctx.json(messageService.getMessagesPageByAccountId(accountId, pageLimit(ctx), ctx.queryParam("cursor")));
+                return;
+
+            }
+
             // Call the messageService to retrieve messages by account ID
             List<Message> messages = messageService.getMessagesByAccountId(accountId);
 
@@ -358,6 +558,10 @@ public class SocialMediaController {
                 ctx.status(200); // As per test expectations, return a 200 status even if the message is not found.
             }
 
+        } catch (NumberFormatException e) {
+
+            ctx.status(400); // Respond with a 'Bad Request' status for an invalid account_id or limit.
+
         } catch (ServiceException e) {
 
             System.out.println(e.getMessage());
@@ -368,4 +572,101 @@ public class SocialMediaController {
         
     }
 
-}
\ No newline at end of file
+
+
+    /**
+     * This method writes out every metric in the Prometheus text format.
+     * It expects a GET request to "/metrics".
+     *
+     * @param ctx the Javalin context object representing the current HTTP request and response
+     */
+
+    private void getMetricsHandler(Context ctx) {
+
+        StringBuilder metrics = new StringBuilder(16384);
+        Metrics.writePrometheus(metrics);
+
+        ctx.contentType("text/plain; version=0.0.4; charset=utf-8");
+        ctx.result(metrics.toString());
+
+    }
+
+
+
+    /**
+     * @return the path of the endpoint that handled the request, or null if none did
+     */
+    private static String matchedRoute(Context ctx) {
+        try {
+            return ctx.endpointHandlerPath();
+        } catch (IllegalStateException e) {
+            return null;
+        }
+    }
+
+
+    /**
+     * @return the number of bytes written for the response, or -1 if the server does not report it
+     */
+    private static long responseBytes(Context ctx) {
+        return ctx.res() instanceof Response ? ((Response) ctx.res()).getHttpOutput().getWritten() : -1;
+    }
+
+
+    /**
+     * In async mode, wrap a handler so that it runs on the DatabaseExecutor, taking the request's unit of work with it.
+     * The unit of work is committed on the executor thread before the response is written, and a failed commit fails
+     * the request with a 500. A request arriving while the executor's queue is full is answered at once with 503
+     * (Service Unavailable).
+     * @return the handler itself when async mode is off
+     */
+    private Handler onDatabaseExecutor(Handler handler) {
+        if (databaseExecutor == null) {
+            return handler;
+        }
+        return ctx -> {
+            UnitOfWork unitOfWork = UnitOfWork.detach();
+            ctx.future(() -> {
+                try {
+                    return databaseExecutor.submit(unitOfWork, () -> {
+                        handler.handle(ctx);
+                        if (ctx.statusCode() >= 500 && unitOfWork != null) {
+                            unitOfWork.setRollbackOnly();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    ctx.header("Retry-After", "1");
+                    ctx.status(503);
+                    return CompletableFuture.completedFuture(null);
+                }
+            });
+        };
+    }
+
+
+    /**
+     * @return true if the client asked for the full listing to be streamed with "stream=true".
+     */
+    private static boolean isStreamRequest(Context ctx) {
+        return "true".equals(ctx.queryParam("stream"));
+    }
+
+
+    /**
+     * @return true if the client asked for a single page rather than the full listing.
+     */
+    private static boolean isPageRequest(Context ctx) {
+        return ctx.queryParam("limit") != null || ctx.queryParam("cursor") != null;
+    }
+
+
+    /**
+     * @return the "limit" query parameter, or the default page size if it is absent.
+     * @throws NumberFormatException if the limit is not an integer
+     */
+    private static int pageLimit(Context ctx) {
+        String limit = ctx.queryParam("limit");
+        return limit == null ? MessageService.DEFAULT_PAGE_SIZE : Integer.parseInt(limit);
+    }
+
+}
@@ -1,13 +1,17 @@
 package DAO;
 
 import Model.Account;
-import Model.Message;
 import Util.ConnectionUtil;
+import Util.LatencyHistogram;
+import Util.Metrics;
+import Util.UnitOfWork;
+import Util.IntBitmap;
+import Util.IntHashSet;
 
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Objects;
+import java.util.function.Consumer;
 
 /**
  * A DAO is a class that mediates the transformation of data between the format of objects in Java to rows in a
@@ -18,78 +22,233 @@ import java.util.Objects;
  * account_id, which is of type int and is a primary key,
  * username, which is of type varchar(255) and is a unique key.
  * password, which is of type varchar(255).
+ *
+ * This is the H2 implementation of AccountStore.
  */
-public class AccountDAO {
+public class AccountDAO implements AccountStore {
+
+    /**
+     * SQLState reported when an insert would duplicate a unique username.
+     */
+    private static final String UNIQUE_VIOLATION = "23505";
+
+    /**
+     * The statements run by the methods below. They are public so that QueryPlanTest can EXPLAIN the SQL that is
+     * actually run rather than a copy of it.
+     *
+     * getAccountByUsername.
+     */
+    public static final String SELECT_ACCOUNT_BY_USERNAME =
+            "SELECT " + RowMappers.ACCOUNT_COLUMNS + " FROM account WHERE username = ?";
+
+    /**
+     * loadAccountIds.
+     */
+    public static final String SELECT_ACCOUNT_IDS =
+            "SELECT account_id FROM account";
+
+    /**
+     * forEachUsername.
+     */
+    public static final String SELECT_USERNAMES =
+            "SELECT username FROM account";
 
     /**
-     * Retrieve an account from the account table, identified by its account_id.
-     * @return an account identified by account_id.
+     * getExistingAccountIds, with the ids to look up as one array parameter.
      */
-    public Account getAccountById(Account account){
+    public static final String SELECT_EXISTING_ACCOUNT_IDS =
+            "SELECT account_id FROM account WHERE account_id = ANY(?)";
 
-        String password = account.getPassword();
+    /**
+     * insertAccount, returning the row with its generated account_id.
+     */
+    public static final String INSERT_ACCOUNT_RETURNING =
+            "SELECT " + RowMappers.ACCOUNT_COLUMNS + " FROM FINAL TABLE ("
+                    + "INSERT INTO account (username, password) VALUES (?, ?))";
+
+    /**
+     * Query timers, exported by Metrics as db_query_seconds.
+     */
+    private static final LatencyHistogram GET_ACCOUNT_BY_USERNAME_TIMER =
+            Metrics.timer("AccountDAO.getAccountByUsername");
+    private static final LatencyHistogram GET_EXISTING_ACCOUNT_IDS_TIMER =
+            Metrics.timer("AccountDAO.getExistingAccountIds");
+    private static final LatencyHistogram INSERT_ACCOUNT_TIMER = Metrics.timer("AccountDAO.insertAccount");
+
+    /**
+     * Every account_id in the account table once loadAccountIds has run. This one bitmap is handed to every caller,
+     * so all of them see each account this AccountDAO inserts. insertAccount only adds a new id once its transaction
+     * has committed: an id is never removed, so one added before a rollback would stay in the bitmap for good and let
+     * messages be posted under an account that does not exist.
+     */
+    private final IntBitmap accountIds = new IntBitmap();
+
+    private boolean accountIdsLoaded;
+
+    /**
+     * Retrieve an account from the account table, identified by its username.
+     * username is unique, so this is a single lookup on its index returning at most one row.
+     * @return the account with that username, or null if there is none.
+     */
+    public Account getAccountByUsername(String username){
 
-        Connection connection = ConnectionUtil.getConnection();
-        try {
-            String sql = "SELECT * FROM account WHERE username = ?";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+        long start = System.nanoTime();
 
-            preparedStatement.setString(1,account.getUsername());
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(SELECT_ACCOUNT_BY_USERNAME)) {
+
+            preparedStatement.setString(1, username);
+
+            return RowMappers.first(preparedStatement.executeQuery(), RowMappers.ACCOUNT);
+
+        }catch(SQLException e){
+
+            System.out.println(e.getMessage());
+
+        } finally {
+            GET_ACCOUNT_BY_USERNAME_TIMER.record(System.nanoTime() - start);
+        }
+
+        return null;
+
+    }
+
+
+    /**
+     * Load every account_id in the account table into this AccountDAO's bitmap, the first time it is called. Later
+     * calls return the same bitmap without querying again; insertAccount keeps it current.
+     * @return the account ids
+     */
+    public synchronized IntBitmap loadAccountIds(){
+
+        if (accountIdsLoaded) {
+            return accountIds;
+        }
+
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(SELECT_ACCOUNT_IDS,
+                     ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+
+            preparedStatement.setFetchSize(1000);
 
             ResultSet rs = preparedStatement.executeQuery();
-            
             while(rs.next()){
+                accountIds.add(rs.getInt(1));
+            }
+            accountIdsLoaded = true;
+
+        }catch(SQLException e){
 
-                Account accountById = new Account(rs.getInt("account_id"), rs.getString("username"), rs.getString("password"));
-                // accounts.add(accountById);
-
-                // Compare the provided password with the stored password in the Account object
-                if (Objects.equals(password, accountById.getPassword())) {
-                    
-                    // Return an authenticated Account
-                    return accountById;
-                
-                }
-    
+            System.out.println(e.getMessage());
+
+        }
+
+        return accountIds;
+
+    }
+
+
+    /**
+     * Hand every username in the account table to the consumer, one row at a time.
+     * @param consumer receives each username
+     */
+    public void forEachUsername(Consumer<String> consumer){
+
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(SELECT_USERNAMES,
+                     ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+
+            preparedStatement.setFetchSize(1000);
+
+            ResultSet rs = preparedStatement.executeQuery();
+            while(rs.next()){
+                consumer.accept(rs.getString(1));
             }
 
         }catch(SQLException e){
-            
+
             System.out.println(e.getMessage());
-        
+
         }
-        
-        return null;
-    
+
+    }
+
+
+    /**
+     * Find which of the given account_ids belong to existing accounts, with a single query.
+     * @param accountIds the account_ids to look up
+     * @return the subset of accountIds that exist in the account table.
+     */
+    public IntHashSet getExistingAccountIds(IntHashSet accountIds){
+
+        IntHashSet existing = new IntHashSet(accountIds.size());
+        if (accountIds.isEmpty()) {
+            return existing;
+        }
+
+        long start = System.nanoTime();
+
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(SELECT_EXISTING_ACCOUNT_IDS)) {
+
+            int[] ids = accountIds.toArray();
+            Integer[] elements = new Integer[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                elements[i] = ids[i];
+            }
+            preparedStatement.setArray(1, connection.createArrayOf("INTEGER", elements));
+
+            ResultSet rs = preparedStatement.executeQuery();
+            while(rs.next()){
+                existing.add(rs.getInt(1));
+            }
+
+        }catch(SQLException e){
+
+            System.out.println(e.getMessage());
+
+        } finally {
+            GET_EXISTING_ACCOUNT_IDS_TIMER.record(System.nanoTime() - start);
+        }
+
+        return existing;
     }
 
-    
+
     /**
      * Insert a new account into the Account table.
      * The account_id should be automatically generated by the sql database if it is not provided because it was
      * set to auto_increment. Therefore, we only need to insert a record with a columns (username, password).
+     * The username column is unique, so registering a taken username violates the constraint and yields null;
+     * callers do not need to look the username up first.
+     * @return the persisted account including its account_id, or null if the username is already taken.
      */
     public Account insertAccount(Account account){
-        Connection connection = ConnectionUtil.getConnection();
-        try {
 
-            String sql = "INSERT INTO account (username, password) VALUES (?, ?)" ;
-            PreparedStatement preparedStatement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+        long start = System.nanoTime();
+
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(INSERT_ACCOUNT_RETURNING)) {
 
             preparedStatement.setString(1, account.getUsername());
             preparedStatement.setString(2, account.getPassword());
 
-            preparedStatement.executeUpdate();
-            ResultSet pkeyResultSet = preparedStatement.getGeneratedKeys();
-            if(pkeyResultSet.next()){
-                int generated_account_id = (int) pkeyResultSet.getLong(1);
-                return new Account( generated_account_id, account.getUsername(), account.getPassword() );
+            Account inserted = RowMappers.first(preparedStatement.executeQuery(), RowMappers.ACCOUNT);
+            if(inserted != null){
+                int accountId = inserted.getAccount_id();
+                UnitOfWork.afterCommit(() -> accountIds.add(accountId));
+                return inserted;
             }
 
         }catch(SQLException e){
             
-            System.out.println(e.getMessage());
+            // A taken username is an expected outcome rather than an error worth logging
+            if (!UNIQUE_VIOLATION.equals(e.getSQLState())) {
+                System.out.println(e.getMessage());
+            }
         
+        } finally {
+            INSERT_ACCOUNT_TIMER.record(System.nanoTime() - start);
         }
         
         return null;
@@ -0,0 +1,45 @@
+package DAO;
+
+import Model.Account;
+import Util.IntBitmap;
+import Util.IntHashSet;
+
+import java.util.function.Consumer;
+
+/**
+ * Where accounts are kept. AccountService and MessageService only talk to this interface, so the storage engine can
+ * be chosen at startup (see StorageEngine): AccountDAO keeps accounts in the H2 database, InMemoryAccountStore in
+ * memory.
+ *
+ * Every implementation behaves like the account table: account_ids are generated on insert and usernames are
+ * unique. Returned accounts belong to the caller.
+ */
+public interface AccountStore {
+
+    /**
+     * @return the account with that username, or null if there is none.
+     */
+    Account getAccountByUsername(String username);
+
+    /**
+     * @return a bitmap of every account_id, which insertAccount keeps current from then on. Every call returns the
+     *         same bitmap.
+     */
+    IntBitmap loadAccountIds();
+
+    /**
+     * Hand every username to the consumer, one at a time.
+     */
+    void forEachUsername(Consumer<String> consumer);
+
+    /**
+     * @return the subset of accountIds that belong to existing accounts.
+     */
+    IntHashSet getExistingAccountIds(IntHashSet accountIds);
+
+    /**
+     * Store a new account, generating its account_id.
+     * @return the stored account including its account_id, or null if the username is already taken.
+     */
+    Account insertAccount(Account account);
+}
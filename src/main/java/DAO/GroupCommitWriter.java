@@ -0,0 +1,189 @@
+package DAO;
+
+import Model.Message;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A GroupCommitWriter amortises the cost of committing new messages across concurrent callers.
+ *
+ * Callers submit a message and wait on the returned future. A single writer thread drains the queue, collecting up
+ * to maxBatch messages or waiting at most maxDelayMicros after the first one, inserts them with one JDBC batch and
+ * one commit, and then completes every caller's future with its persisted message. A future only completes after
+ * the commit, so callers that wait on it before responding keep the same durability as a direct insert.
+ *
+ * If a batch fails (for example because one message's posted_by does not exist), its messages are retried one at a
+ * time so that only the offending messages fail. When the queue is full, submit() inserts directly on the caller's
+ * thread instead of blocking.
+ */
+public class GroupCommitWriter {
+
+    private final MessageStore messageStore;
+    private final int capacity;
+    private final int maxBatch;
+    private final long maxDelayNanos;
+
+    /**
+     * Pending inserts. The queue itself is unbounded; the size counter below bounds it without taking a lock.
+     */
+    private final ConcurrentLinkedQueue<PendingInsert> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    /**
+     * @param messageStore   the store used to insert each batch
+     * @param capacity       the maximum number of messages waiting to be written
+     * @param maxBatch       the maximum number of messages committed together
+     * @param maxDelayMicros how long the writer waits for a batch to fill after its first message arrives
+     */
+    public GroupCommitWriter(MessageStore messageStore, int capacity, int maxBatch, long maxDelayMicros) {
+        if (capacity < 1 || maxBatch < 1) {
+            throw new IllegalArgumentException("capacity and maxBatch must be positive");
+        }
+        this.messageStore = messageStore;
+        this.capacity = capacity;
+        this.maxBatch = maxBatch;
+        this.maxDelayNanos = TimeUnit.MICROSECONDS.toNanos(maxDelayMicros);
+
+        this.writer = new Thread(this::run, "message-group-commit");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Queue a message for insertion.
+     * @param message the message to insert
+     * @return a future completed with the persisted message (including its generated message_id) once it has been
+     *         committed, or with null if it could not be inserted
+     */
+    public CompletableFuture<Message> submit(Message message) {
+        if (running) {
+            if (size.incrementAndGet() <= capacity) {
+                PendingInsert pending = new PendingInsert(message);
+                queue.offer(pending);
+                LockSupport.unpark(writer);
+                if (!running) {
+                    // shutdown() may have drained the queue before this offer, and nothing else will poll it now
+                    writeQueued();
+                }
+                return pending.result;
+            }
+            size.decrementAndGet();
+        }
+        // Back-pressure: rather than block the caller on a full queue, do the insert on its own thread
+        return CompletableFuture.completedFuture(messageStore.insertMessage(message));
+    }
+
+    /**
+     * Stop accepting new messages, write everything already queued and stop the writer thread.
+     */
+    public void shutdown() {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // A caller racing with shutdown may have queued a message after the writer's last poll
+        writeQueued();
+    }
+
+    /**
+     * Write everything still queued on the calling thread, once the writer has stopped or is stopping. A caller that
+     * queues a message after this drain sees running is false and drains again, so no message is left behind.
+     */
+    private void writeQueued() {
+        List<PendingInsert> stragglers = new ArrayList<>();
+        PendingInsert pending;
+        while ((pending = queue.poll()) != null) {
+            stragglers.add(pending);
+        }
+        if (!stragglers.isEmpty()) {
+            size.addAndGet(-stragglers.size());
+            write(stragglers);
+        }
+    }
+
+    private void run() {
+        List<PendingInsert> batch = new ArrayList<>(maxBatch);
+        while (running || !queue.isEmpty()) {
+            PendingInsert first = queue.poll();
+            if (first == null) {
+                LockSupport.park(this);
+                continue;
+            }
+            batch.add(first);
+
+            // Give concurrent callers a short window to join this commit
+            long deadline = System.nanoTime() + maxDelayNanos;
+            while (batch.size() < maxBatch) {
+                PendingInsert next = queue.poll();
+                if (next != null) {
+                    batch.add(next);
+                    continue;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0 || !running) {
+                    break;
+                }
+                LockSupport.parkNanos(this, remaining);
+            }
+
+            size.addAndGet(-batch.size());
+            write(batch);
+            batch.clear();
+        }
+    }
+
+    private void write(List<PendingInsert> batch) {
+        List<Message> messages = new ArrayList<>(batch.size());
+        for (PendingInsert pending : batch) {
+            messages.add(pending.message);
+        }
+
+        List<Message> persisted = null;
+        try {
+            persisted = messageStore.insertMessages(messages);
+        } catch (RuntimeException e) {
+            System.out.println(e.getMessage());
+        }
+
+        if (persisted != null) {
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).result.complete(persisted.get(i));
+            }
+            return;
+        }
+
+        // The batch was rolled back as a whole, so find out which messages can still be stored on their own
+        for (PendingInsert pending : batch) {
+            try {
+                pending.result.complete(messageStore.insertMessage(pending.message));
+            } catch (RuntimeException e) {
+                pending.result.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * A message waiting to be written, together with the future its caller is waiting on.
+     */
+    private static class PendingInsert {
+        final Message message;
+        final CompletableFuture<Message> result = new CompletableFuture<>();
+
+        PendingInsert(Message message) {
+            this.message = message;
+        }
+    }
+}
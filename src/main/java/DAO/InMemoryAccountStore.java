@@ -0,0 +1,77 @@
+package DAO;
+
+import Model.Account;
+import Util.IntBitmap;
+import Util.IntHashSet;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * An AccountStore kept entirely in memory, for the "memory" storage engine.
+ *
+ * Accounts are indexed by username in a ConcurrentHashMap, whose putIfAbsent enforces unique usernames, and their
+ * ids are kept in an IntBitmap. Nothing here touches the database, nothing survives a restart, and changes take
+ * effect immediately rather than when the request's unit of work commits.
+ */
+public class InMemoryAccountStore implements AccountStore {
+
+    private final ConcurrentHashMap<String, Account> byUsername = new ConcurrentHashMap<>();
+
+    /**
+     * Every account_id. This is the live bitmap, so loadAccountIds hands out one that is always current.
+     */
+    private final IntBitmap accountIds = new IntBitmap();
+
+    private final AtomicInteger nextAccountId = new AtomicInteger(1);
+
+    public Account getAccountByUsername(String username) {
+        Account account = username == null ? null : byUsername.get(username);
+        return account == null ? null : copy(account);
+    }
+
+    public IntBitmap loadAccountIds() {
+        return accountIds;
+    }
+
+    public void forEachUsername(Consumer<String> consumer) {
+        byUsername.keySet().forEach(consumer);
+    }
+
+    public IntHashSet getExistingAccountIds(IntHashSet ids) {
+        IntHashSet existing = new IntHashSet(ids.size());
+        for (int id : ids.toArray()) {
+            if (accountIds.contains(id)) {
+                existing.add(id);
+            }
+        }
+        return existing;
+    }
+
+    /**
+     * Like the auto_increment column, an id taken by an insert that fails on a duplicate username is not reused.
+     */
+    public Account insertAccount(Account account) {
+        if (account.getUsername() == null) {
+            return null;
+        }
+        Account stored = new Account(nextAccountId.getAndIncrement(), account.getUsername(), account.getPassword());
+        if (byUsername.putIfAbsent(stored.getUsername(), stored) != null) {
+            return null;
+        }
+        accountIds.add(stored.getAccount_id());
+        return copy(stored);
+    }
+
+    /**
+     * @return true if an account has that account_id
+     */
+    boolean exists(int accountId) {
+        return accountIds.contains(accountId);
+    }
+
+    private static Account copy(Account account) {
+        return new Account(account.getAccount_id(), account.getUsername(), account.getPassword());
+    }
+}
@@ -0,0 +1,249 @@
+package DAO;
+
+import Model.Message;
+import Util.IntObjectMap;
+import Util.TextArena;
+
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A MessageStore kept entirely in memory, for the "memory" storage engine.
+ *
+ * Messages are held in two concurrent sorted indexes, mirroring the table's primary key and its
+ * (posted_by, time_posted_epoch, message_id) index: one by message_id, and one per account ordered by
+ * (time_posted_epoch, message_id). Every query is a lookup or a range scan on one of them, so reads never lock.
+ * posted_by is checked against the InMemoryAccountStore, like the foreign key.
+ *
+ * The indexes hold small immutable entries rather than Messages: message_text lives off the heap in a TextArena, and
+ * an entry keeps only its handle, so each message costs a few dozen bytes of heap plus the index nodes, and the
+ * garbage collector never has to trace or copy the text. A Message, and its String, is only built when a caller asks
+ * for it.
+ *
+ * Inserts take their message_id from a counter and need no lock. Updates and deletes, which must change both indexes
+ * together, take a single write lock; a reader running alongside one may see the message in one index before the
+ * other catches up. They free the old text only after replacing the entry, and a reader checks after decoding that
+ * the entry it read is still the current one, so reused space is never returned as a message's text. Nothing here
+ * touches the database, nothing survives a restart, and changes take effect immediately rather than when the
+ * request's unit of work commits.
+ */
+public class InMemoryMessageStore implements MessageStore {
+
+    /**
+     * The length of the message_text column.
+     */
+    private static final int MAX_TEXT_LENGTH = 255;
+
+    private final InMemoryAccountStore accounts;
+
+    /**
+     * A stored message, with its text in the arena. Replaced rather than changed on update.
+     */
+    private static final class Entry {
+        final int messageId;
+        final int postedBy;
+        final long timePostedEpoch;
+        final int text;
+
+        Entry(int messageId, int postedBy, long timePostedEpoch, int text) {
+            this.messageId = messageId;
+            this.postedBy = postedBy;
+            this.timePostedEpoch = timePostedEpoch;
+            this.text = text;
+        }
+
+        MessageTimeKey key() {
+            return new MessageTimeKey(timePostedEpoch, messageId);
+        }
+    }
+
+    private final TextArena texts = new TextArena();
+
+    private final ConcurrentSkipListMap<Integer, Entry> byId = new ConcurrentSkipListMap<>();
+    private final IntObjectMap<ConcurrentSkipListMap<MessageTimeKey, Entry>> byAccount = new IntObjectMap<>();
+
+    private final AtomicInteger nextMessageId = new AtomicInteger(1);
+    private final Object writeLock = new Object();
+
+    /**
+     * @param accounts the accounts that posted_by must refer to
+     */
+    public InMemoryMessageStore(InMemoryAccountStore accounts) {
+        this.accounts = accounts;
+    }
+
+    public List<Message> getAllMessages() {
+        return readAll(byId.values(), Integer.MAX_VALUE);
+    }
+
+    public int forEachMessage(MessageHandler handler) throws IOException {
+        int count = 0;
+        for (Entry entry : byId.values()) {
+            Message message = read(entry);
+            if (message != null) {
+                handler.handle(message);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public Message getMessageById(int id) {
+        Entry entry = byId.get(id);
+        return entry == null ? null : read(entry);
+    }
+
+    public List<Message> getMessagesByAccountId(int accountId) {
+        ConcurrentSkipListMap<MessageTimeKey, Entry> entries = byAccount.get(accountId);
+        return entries == null ? new ArrayList<>() : readAll(entries.values(), Integer.MAX_VALUE);
+    }
+
+    public int forEachMessageByAccountId(int accountId, MessageHandler handler) throws IOException {
+        ConcurrentSkipListMap<MessageTimeKey, Entry> entries = byAccount.get(accountId);
+        if (entries == null) {
+            return 0;
+        }
+        int count = 0;
+        for (Entry entry : entries.values()) {
+            Message message = read(entry);
+            if (message != null) {
+                handler.handle(message);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public List<Message> getMessagesAfter(int afterMessageId, int limit) {
+        return readAll(byId.tailMap(afterMessageId, false).values(), limit);
+    }
+
+    public List<Message> getMessagesByAccountIdAfter(int accountId, long afterEpoch, int afterMessageId, int limit) {
+        ConcurrentSkipListMap<MessageTimeKey, Entry> entries = byAccount.get(accountId);
+        if (entries == null) {
+            return new ArrayList<>();
+        }
+        return readAll(entries.tailMap(new MessageTimeKey(afterEpoch, afterMessageId), false).values(), limit);
+    }
+
+    public Message insertMessage(Message message) {
+        if (!insertable(message)) {
+            return null;
+        }
+        return store(message);
+    }
+
+    /**
+     * Every message is checked before any is stored, so a batch is stored whole or not at all. Readers may see
+     * part of a batch while it is being stored.
+     */
+    public List<Message> insertMessages(List<Message> messages) {
+        for (Message message : messages) {
+            if (!insertable(message)) {
+                return null;
+            }
+        }
+        List<Message> persisted = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            persisted.add(store(message));
+        }
+        return persisted;
+    }
+
+    public Message updateMessageById(int id, Message message) {
+        String text = message.getMessage_text();
+        if (text != null && text.length() > MAX_TEXT_LENGTH) {
+            return null;
+        }
+        synchronized (writeLock) {
+            Entry old = byId.get(id);
+            if (old == null) {
+                return null;
+            }
+            Entry updated = new Entry(id, old.postedBy, old.timePostedEpoch, texts.add(text));
+            byId.put(id, updated);
+            byAccount.get(old.postedBy).put(updated.key(), updated);
+            texts.free(old.text);
+            return new Message(id, old.postedBy, text, old.timePostedEpoch);
+        }
+    }
+
+    public Message deleteMessageById(int id) {
+        synchronized (writeLock) {
+            Entry old = byId.remove(id);
+            if (old == null) {
+                return null;
+            }
+            byAccount.get(old.postedBy).remove(old.key());
+            Message deleted = new Message(id, old.postedBy, texts.get(old.text), old.timePostedEpoch);
+            texts.free(old.text);
+            return deleted;
+        }
+    }
+
+    /**
+     * @return the arena holding message_text, for reporting its size
+     */
+    public TextArena getTextArena() {
+        return texts;
+    }
+
+    private boolean insertable(Message message) {
+        String text = message.getMessage_text();
+        return accounts.exists(message.getPosted_by()) && (text == null || text.length() <= MAX_TEXT_LENGTH);
+    }
+
+    /**
+     * Add a new message to both indexes. It goes into the account's index first, so that by the time updates and
+     * deletes can find it by message_id it is in both.
+     */
+    private Message store(Message message) {
+        Entry stored = new Entry(nextMessageId.getAndIncrement(), message.getPosted_by(),
+                message.getTime_posted_epoch(), texts.add(message.getMessage_text()));
+        byAccount.computeIfAbsent(stored.postedBy, accountId -> new ConcurrentSkipListMap<>())
+                .put(stored.key(), stored);
+        byId.put(stored.messageId, stored);
+        return new Message(stored.messageId, stored.postedBy, message.getMessage_text(), stored.timePostedEpoch);
+    }
+
+    /**
+     * Build the Message for an entry. If the entry was replaced while its text was being decoded, the text may have
+     * been overwritten, so the current entry is read instead.
+     * @return the message, or null if it has been deleted
+     */
+    private Message read(Entry entry) {
+        while (true) {
+            Message message = new Message(entry.messageId, entry.postedBy, texts.get(entry.text),
+                    entry.timePostedEpoch);
+            // The arena is read with plain loads, which may otherwise be reordered after the check below, so a reader
+            // could pass it with bytes read from space already freed and reused
+            VarHandle.acquireFence();
+            Entry current = byId.get(entry.messageId);
+            if (current == entry) {
+                return message;
+            }
+            if (current == null) {
+                return null;
+            }
+            entry = current;
+        }
+    }
+
+    private List<Message> readAll(Iterable<Entry> entries, int limit) {
+        List<Message> messages = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (messages.size() >= limit) {
+                break;
+            }
+            Message message = read(entry);
+            if (message != null) {
+                messages.add(message);
+            }
+        }
+        return messages;
+    }
+}
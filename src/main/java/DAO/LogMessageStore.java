@@ -0,0 +1,763 @@
+package DAO;
+
+import Model.Message;
+import Util.IntBitmap;
+import Util.IntHashSet;
+import Util.IntObjectMap;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+
+/**
+ * A MessageStore that keeps messages in an append-only log of memory-mapped segment files, for the "log" storage
+ * engine. Accounts stay in whatever AccountStore it is given.
+ *
+ * Every change is appended as a record with a fixed layout:
+ *
+ *   offset  size  field
+ *   0       4     record length in bytes, header included; 0 where no record has been written yet
+ *   4       4     CRC32C of every byte from offset 8 to the end of the record
+ *   8       4     type, see below
+ *   12      4     message_id
+ *   16      4     posted_by
+ *   20      8     time_posted_epoch
+ *   28      4     length of message_text in UTF-8 bytes, or -1 if it is null
+ *   32      ...   message_text in UTF-8
+ *
+ * A PUT holds a message as it now is: an insert appends one, and an update appends a new PUT for the same message_id,
+ * which supersedes the old one. A delete appends a TOMBSTONE. A batch is appended as BATCH_BEGIN, a BATCH_PUT for each
+ * message and BATCH_COMMIT, all in one segment, and its messages only count once the commit record is there; a batch
+ * cut off by a crash or a failed append is dropped on replay. When the active segment is full, a new one is started,
+ * beginning with a HIGH_WATER record that holds the next message_id to assign, so that ids stay unique even after
+ * compaction has dropped every record of the highest ones.
+ *
+ * In memory, an index maps each live message_id to its latest record's segment and offset, and a per-account index
+ * orders message_ids by (time_posted_epoch, message_id). On startup both are rebuilt by replaying every segment in
+ * order; replay stops at the first record whose checksum does not match, which is where a crash cut off the last
+ * write.
+ *
+ * Appends are serialised by one lock and cost a copy into the mapped segment, with no system call unless fsync is
+ * set. Reads take no lock: they look the offset up and decode the message straight from the mapped segment.
+ *
+ * Superseded records and tombstones are garbage. A background compactor rewrites sealed segments that are less than
+ * half live: it re-appends their live records to the active segment, carries their tombstones forward while an older
+ * segment might still hold the deleted record, and deletes the segment file.
+ *
+ * Without fsync, an append is safe from a process crash once it returns, but not from a power failure until the
+ * operating system writes the page back.
+ */
+public class LogMessageStore implements MessageStore {
+
+    private static final int TYPE_PUT = 1;
+    private static final int TYPE_TOMBSTONE = 2;
+    private static final int TYPE_BATCH_BEGIN = 3;
+    private static final int TYPE_BATCH_PUT = 4;
+    private static final int TYPE_BATCH_COMMIT = 5;
+    private static final int TYPE_HIGH_WATER = 6;
+
+    private static final int HEADER_BYTES = 32;
+
+    /**
+     * The length of the message_text column.
+     */
+    private static final int MAX_TEXT_LENGTH = 255;
+
+    /**
+     * A header and 255 characters of at most three UTF-8 bytes each (a character outside the Basic Multilingual Plane
+     * is two chars and four bytes).
+     */
+    private static final int MAX_RECORD_BYTES = HEADER_BYTES + 3 * MAX_TEXT_LENGTH;
+
+    /**
+     * Sealed segments with less than this share of their bytes still live are compacted.
+     */
+    private static final double COMPACTION_LIVE_RATIO = 0.5;
+
+    /**
+     * One segment file, mapped in full. end and liveBytes are only used under the write lock.
+     */
+    private static final class Segment {
+        final int number;
+        final Path path;
+        final MappedByteBuffer buffer;
+
+        /**
+         * Bytes taken by records; the next record is appended here.
+         */
+        int end;
+
+        /**
+         * Bytes taken by PUT records that are still the latest version of a message.
+         */
+        long liveBytes;
+
+        Segment(int number, Path path, MappedByteBuffer buffer) {
+            this.number = number;
+            this.path = path;
+            this.buffer = buffer;
+        }
+    }
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final boolean fsync;
+    private final AccountStore accounts;
+
+    /**
+     * Known account_ids, so that posted_by is usually checked without asking the AccountStore.
+     */
+    private final IntBitmap accountIds;
+
+    /**
+     * Location of the latest record of every live message, as segment number << 32 | offset.
+     */
+    private final ConcurrentSkipListMap<Integer, Long> byId = new ConcurrentSkipListMap<>();
+    private final IntObjectMap<ConcurrentSkipListSet<MessageTimeKey>> byAccount = new IntObjectMap<>();
+
+    /**
+     * Every segment by number. A reader that finds a segment gone retries with the message's new location.
+     */
+    private final Map<Integer, Segment> segments = new ConcurrentHashMap<>();
+
+    private final Object writeLock = new Object();
+
+    // Guarded by writeLock
+    private Segment active;
+    private int nextMessageId;
+    private final byte[] scratch = new byte[MAX_RECORD_BYTES];
+    private final CRC32C crc = new CRC32C();
+
+    private ScheduledExecutorService compactor;
+
+    /**
+     * Open the log in the directory, creating it if needed, and rebuild the indexes from its segments.
+     * @param directory     where the segment files are kept
+     * @param segmentBytes  the size of each segment file
+     * @param fsync         whether every append is forced to disk before it returns
+     * @param accounts      the accounts that posted_by must refer to
+     */
+    public LogMessageStore(Path directory, int segmentBytes, boolean fsync, AccountStore accounts)
+            throws IOException {
+        if (segmentBytes < 2 * MAX_RECORD_BYTES) {
+            throw new IllegalArgumentException("Segments must hold at least two records");
+        }
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.fsync = fsync;
+        this.accounts = accounts;
+        this.accountIds = accounts.loadAccountIds();
+
+        Files.createDirectories(directory);
+        synchronized (writeLock) {
+            recover();
+        }
+    }
+
+    /**
+     * Compact sealed segments every intervalMillis on a background thread, until close().
+     */
+    public synchronized void startCompaction(long intervalMillis) {
+        if (compactor != null) {
+            return;
+        }
+        compactor = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "message-log-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        compactor.scheduleWithFixedDelay(() -> {
+            try {
+                compact();
+            } catch (IOException | RuntimeException e) {
+                System.out.println(e.getMessage());
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop compacting and force the active segment to disk.
+     */
+    public synchronized void close() {
+        if (compactor != null) {
+            compactor.shutdown();
+            compactor = null;
+        }
+        synchronized (writeLock) {
+            active.buffer.force();
+        }
+    }
+
+    public List<Message> getAllMessages() {
+        List<Message> messages = new ArrayList<>();
+        for (Map.Entry<Integer, Long> entry : byId.entrySet()) {
+            Message message = read(entry.getKey(), entry.getValue());
+            if (message != null) {
+                messages.add(message);
+            }
+        }
+        return messages;
+    }
+
+    public int forEachMessage(MessageHandler handler) throws IOException {
+        int count = 0;
+        for (Map.Entry<Integer, Long> entry : byId.entrySet()) {
+            Message message = read(entry.getKey(), entry.getValue());
+            if (message != null) {
+                handler.handle(message);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public Message getMessageById(int id) {
+        Long location = byId.get(id);
+        return location == null ? null : read(id, location);
+    }
+
+    public List<Message> getMessagesByAccountId(int accountId) {
+        NavigableSet<MessageTimeKey> keys = byAccount.get(accountId);
+        return keys == null ? new ArrayList<>() : readAll(keys, Integer.MAX_VALUE);
+    }
+
+    public int forEachMessageByAccountId(int accountId, MessageHandler handler) throws IOException {
+        NavigableSet<MessageTimeKey> keys = byAccount.get(accountId);
+        if (keys == null) {
+            return 0;
+        }
+        int count = 0;
+        for (MessageTimeKey key : keys) {
+            Message message = getMessageById(key.messageId);
+            if (message != null) {
+                handler.handle(message);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public List<Message> getMessagesAfter(int afterMessageId, int limit) {
+        List<Message> messages = new ArrayList<>();
+        for (Map.Entry<Integer, Long> entry : byId.tailMap(afterMessageId, false).entrySet()) {
+            if (messages.size() >= limit) {
+                break;
+            }
+            Message message = read(entry.getKey(), entry.getValue());
+            if (message != null) {
+                messages.add(message);
+            }
+        }
+        return messages;
+    }
+
+    public List<Message> getMessagesByAccountIdAfter(int accountId, long afterEpoch, int afterMessageId, int limit) {
+        NavigableSet<MessageTimeKey> keys = byAccount.get(accountId);
+        if (keys == null) {
+            return new ArrayList<>();
+        }
+        return readAll(keys.tailSet(new MessageTimeKey(afterEpoch, afterMessageId), false), limit);
+    }
+
+    public Message insertMessage(Message message) {
+        if (!insertable(message)) {
+            return null;
+        }
+        byte[] text = encode(message.getMessage_text());
+        try {
+            synchronized (writeLock) {
+                return put(nextMessageId++, message.getPosted_by(), message.getTime_posted_epoch(), text);
+            }
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+            return null;
+        }
+    }
+
+    public List<Message> insertMessages(List<Message> messages) {
+        for (Message message : messages) {
+            if (!insertable(message)) {
+                return null;
+            }
+        }
+        // A batch is kept within one segment, so that compacting the segment with its commit record can never leave
+        // its messages behind in an older one without it
+        byte[][] texts = new byte[messages.size()][];
+        int batchBytes = 2 * HEADER_BYTES;
+        for (int i = 0; i < messages.size(); i++) {
+            texts[i] = encode(messages.get(i).getMessage_text());
+            batchBytes += HEADER_BYTES + (texts[i] == null ? 0 : texts[i].length);
+        }
+        if (batchBytes > segmentBytes - HEADER_BYTES) {
+            System.out.println("A batch of " + batchBytes + " bytes does not fit in one segment");
+            return null;
+        }
+        List<Message> persisted = new ArrayList<>(messages.size());
+        long[] locations = new long[messages.size()];
+        synchronized (writeLock) {
+            int firstId = nextMessageId;
+            int written = 0;
+            try {
+                if (active.end + batchBytes > active.buffer.capacity()) {
+                    startSegment();
+                }
+                append(TYPE_BATCH_BEGIN, firstId, 0, 0, null);
+                for (Message message : messages) {
+                    locations[written] = append(TYPE_BATCH_PUT, firstId + written, message.getPosted_by(),
+                            message.getTime_posted_epoch(), texts[written]);
+                    written++;
+                }
+                append(TYPE_BATCH_COMMIT, firstId, 0, 0, null);
+            } catch (IOException e) {
+                System.out.println(e.getMessage());
+                // Without its commit record the batch is dropped on replay, and it was never indexed, so all that is
+                // left is to stop counting its records as live. Its ids are not handed out again.
+                nextMessageId = firstId + messages.size();
+                for (int i = 0; i < written; i++) {
+                    release(locations[i]);
+                }
+                return null;
+            }
+            nextMessageId = firstId + messages.size();
+            for (int i = 0; i < messages.size(); i++) {
+                Message message = messages.get(i);
+                index(firstId + i, message.getPosted_by(), message.getTime_posted_epoch(), locations[i]);
+                persisted.add(new Message(firstId + i, message.getPosted_by(), message.getMessage_text(),
+                        message.getTime_posted_epoch()));
+            }
+            return persisted;
+        }
+    }
+
+    public Message updateMessageById(int id, Message message) {
+        String text = message.getMessage_text();
+        if (text != null && text.length() > MAX_TEXT_LENGTH) {
+            return null;
+        }
+        byte[] encoded = encode(text);
+        try {
+            synchronized (writeLock) {
+                Long old = byId.get(id);
+                if (old == null) {
+                    return null;
+                }
+                Message current = decode(segments.get(segmentOf(old)), offsetOf(old));
+                long location = append(TYPE_PUT, id, current.getPosted_by(), current.getTime_posted_epoch(), encoded);
+                byId.put(id, location);
+                release(old);
+                return new Message(id, current.getPosted_by(), text, current.getTime_posted_epoch());
+            }
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+            return null;
+        }
+    }
+
+    public Message deleteMessageById(int id) {
+        try {
+            synchronized (writeLock) {
+                return delete(id);
+            }
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Compact every sealed segment that is less than COMPACTION_LIVE_RATIO live, oldest first.
+     * @return the number of segments compacted
+     */
+    public int compact() throws IOException {
+        List<Segment> candidates = new ArrayList<>();
+        synchronized (writeLock) {
+            for (Segment segment : segments.values()) {
+                if (segment != active && segment.liveBytes < segment.end * COMPACTION_LIVE_RATIO) {
+                    candidates.add(segment);
+                }
+            }
+        }
+        candidates.sort((a, b) -> Integer.compare(a.number, b.number));
+        for (Segment segment : candidates) {
+            compact(segment);
+        }
+        return candidates.size();
+    }
+
+    /**
+     * Move a sealed segment's live records to the active segment, then delete it. Each record is handled under the
+     * write lock on its own, so writers are only held up for one record at a time.
+     */
+    private void compact(Segment segment) throws IOException {
+        int end;
+        synchronized (writeLock) {
+            end = segment.end;
+        }
+        MappedByteBuffer buffer = segment.buffer;
+        int offset = 0;
+        while (offset < end) {
+            int length = buffer.getInt(offset);
+            synchronized (writeLock) {
+                int type = buffer.getInt(offset + 8);
+                int id = buffer.getInt(offset + 12);
+                int postedBy = buffer.getInt(offset + 16);
+                long epoch = buffer.getLong(offset + 20);
+                if (type == TYPE_PUT || type == TYPE_BATCH_PUT) {
+                    // A committed batch's messages are moved as plain PUTs, which need no commit record
+                    Long current = byId.get(id);
+                    if (current != null && current == location(segment.number, offset)) {
+                        byId.put(id, append(TYPE_PUT, id, postedBy, epoch, textBytes(buffer, offset)));
+                    }
+                } else if (type == TYPE_TOMBSTONE && hasSegmentBefore(segment.number)) {
+                    // The deleted record may be in an older segment, which would bring it back on replay
+                    append(TYPE_TOMBSTONE, id, postedBy, epoch, null);
+                }
+            }
+            offset += length;
+        }
+        synchronized (writeLock) {
+            // Make the moved records durable before the only other copy goes
+            active.buffer.force();
+            segments.remove(segment.number);
+        }
+        Files.deleteIfExists(segment.path);
+    }
+
+    private boolean hasSegmentBefore(int number) {
+        for (int other : segments.keySet()) {
+            if (other < number) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Append a new message and add it to the indexes. Must hold writeLock.
+     */
+    private Message put(int id, int postedBy, long epoch, byte[] text) throws IOException {
+        index(id, postedBy, epoch, append(TYPE_PUT, id, postedBy, epoch, text));
+        return new Message(id, postedBy, text == null ? null : new String(text, StandardCharsets.UTF_8), epoch);
+    }
+
+    /**
+     * Add a new message's record to the indexes. Must hold writeLock.
+     */
+    private void index(int id, int postedBy, long epoch, long location) {
+        byAccount.computeIfAbsent(postedBy, accountId -> new ConcurrentSkipListSet<>())
+                .add(new MessageTimeKey(epoch, id));
+        byId.put(id, location);
+    }
+
+    /**
+     * Append a tombstone for a message and drop it from the indexes. Must hold writeLock.
+     * @return the deleted message, or null if there was none
+     */
+    private Message delete(int id) throws IOException {
+        Long old = byId.get(id);
+        if (old == null) {
+            return null;
+        }
+        Message current = decode(segments.get(segmentOf(old)), offsetOf(old));
+        append(TYPE_TOMBSTONE, id, current.getPosted_by(), current.getTime_posted_epoch(), null);
+        byId.remove(id);
+        byAccount.get(current.getPosted_by()).remove(MessageTimeKey.of(current));
+        release(old);
+        return current;
+    }
+
+    /**
+     * Write one record at the end of the active segment, starting a new segment if it does not fit. A new segment
+     * begins with a HIGH_WATER record. PUT and BATCH_PUT records are counted as live. Must hold writeLock.
+     * @return the record's location
+     */
+    private long append(int type, int id, int postedBy, long epoch, byte[] text) throws IOException {
+        int length = HEADER_BYTES + (text == null ? 0 : text.length);
+        if (active.end + length > active.buffer.capacity()) {
+            startSegment();
+        }
+
+        writeInt(0, length);
+        writeInt(8, type);
+        writeInt(12, id);
+        writeInt(16, postedBy);
+        writeInt(20, (int) (epoch >>> 32));
+        writeInt(24, (int) epoch);
+        writeInt(28, text == null ? -1 : text.length);
+        if (text != null) {
+            System.arraycopy(text, 0, scratch, HEADER_BYTES, text.length);
+        }
+        crc.reset();
+        crc.update(scratch, 8, length - 8);
+        writeInt(4, (int) crc.getValue());
+
+        int offset = active.end;
+        active.buffer.put(offset, scratch, 0, length);
+        if (fsync) {
+            active.buffer.force(offset, length);
+        }
+        active.end += length;
+        if (type == TYPE_PUT || type == TYPE_BATCH_PUT) {
+            active.liveBytes += length;
+        }
+        return location(active.number, offset);
+    }
+
+    /**
+     * Seal the active segment and start the next, beginning with a HIGH_WATER record. Must hold writeLock.
+     */
+    private void startSegment() throws IOException {
+        active.buffer.force();
+        active = createSegment(active.number + 1);
+        // Every id below nextMessageId has been handed out, so it must not be again even once compaction has dropped
+        // all of its records from the older segments
+        append(TYPE_HIGH_WATER, nextMessageId, 0, 0, null);
+    }
+
+    private void writeInt(int index, int value) {
+        scratch[index] = (byte) (value >>> 24);
+        scratch[index + 1] = (byte) (value >>> 16);
+        scratch[index + 2] = (byte) (value >>> 8);
+        scratch[index + 3] = (byte) value;
+    }
+
+    /**
+     * Stop counting a superseded or deleted record as live. Must hold writeLock.
+     */
+    private void release(long location) {
+        Segment segment = segments.get(segmentOf(location));
+        if (segment != null) {
+            segment.liveBytes -= segment.buffer.getInt(offsetOf(location));
+        }
+    }
+
+    /**
+     * Read a message from its location. If compaction has moved it since the location was looked up, it is read from
+     * wherever it is now.
+     * @return the message, or null if it has been deleted
+     */
+    private Message read(int id, long location) {
+        while (true) {
+            Segment segment = segments.get(segmentOf(location));
+            if (segment != null) {
+                return decode(segment, offsetOf(location));
+            }
+            Long moved = byId.get(id);
+            if (moved == null) {
+                return null;
+            }
+            location = moved;
+        }
+    }
+
+    private List<Message> readAll(NavigableSet<MessageTimeKey> keys, int limit) {
+        List<Message> messages = new ArrayList<>();
+        for (MessageTimeKey key : keys) {
+            if (messages.size() >= limit) {
+                break;
+            }
+            Message message = getMessageById(key.messageId);
+            if (message != null) {
+                messages.add(message);
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * Decode the record at the offset straight from the mapped segment.
+     */
+    private static Message decode(Segment segment, int offset) {
+        MappedByteBuffer buffer = segment.buffer;
+        byte[] text = textBytes(buffer, offset);
+        return new Message(buffer.getInt(offset + 12), buffer.getInt(offset + 16),
+                text == null ? null : new String(text, StandardCharsets.UTF_8), buffer.getLong(offset + 20));
+    }
+
+    private static byte[] textBytes(MappedByteBuffer buffer, int offset) {
+        int textLength = buffer.getInt(offset + 28);
+        if (textLength < 0) {
+            return null;
+        }
+        byte[] text = new byte[textLength];
+        buffer.get(offset + HEADER_BYTES, text);
+        return text;
+    }
+
+    /**
+     * posted_by must be a known account, checked against the bitmap and, for accounts it may not have seen yet, the
+     * AccountStore itself. message_text must fit the column.
+     */
+    private boolean insertable(Message message) {
+        String text = message.getMessage_text();
+        if (text != null && text.length() > MAX_TEXT_LENGTH) {
+            return false;
+        }
+        int postedBy = message.getPosted_by();
+        if (accountIds.contains(postedBy)) {
+            return true;
+        }
+        IntHashSet lookup = new IntHashSet(1);
+        lookup.add(postedBy);
+        return !accounts.getExistingAccountIds(lookup).isEmpty();
+    }
+
+    private static byte[] encode(String text) {
+        return text == null ? null : text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static long location(int segment, int offset) {
+        return (long) segment << 32 | offset;
+    }
+
+    private static int segmentOf(long location) {
+        return (int) (location >>> 32);
+    }
+
+    private static int offsetOf(long location) {
+        return (int) location;
+    }
+
+    /**
+     * Replay every segment in order to rebuild the indexes, and pick up appending after the last intact record.
+     * A batch's BATCH_PUT records are held back until its BATCH_COMMIT, and dropped if any other record, or the end
+     * of their segment, comes first.
+     */
+    private void recover() throws IOException {
+        List<Integer> numbers = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "segment-*.log")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                numbers.add(Integer.parseInt(name.substring("segment-".length(), name.length() - ".log".length())));
+            }
+        }
+        Collections.sort(numbers);
+
+        int maxId = 0;
+        int highWater = 0;
+        List<Long> uncommitted = new ArrayList<>();
+        for (int number : numbers) {
+            Segment segment = createSegment(number);
+            int offset = 0;
+            int length;
+            while ((length = intactRecordLength(segment.buffer, offset)) > 0) {
+                int type = segment.buffer.getInt(offset + 8);
+                int id = segment.buffer.getInt(offset + 12);
+                switch (type) {
+                    case TYPE_HIGH_WATER:
+                        highWater = Math.max(highWater, id);
+                        break;
+                    case TYPE_BATCH_BEGIN:
+                        uncommitted.clear();
+                        break;
+                    case TYPE_BATCH_PUT:
+                        maxId = Math.max(maxId, id);
+                        uncommitted.add(location(number, offset));
+                        break;
+                    case TYPE_BATCH_COMMIT:
+                        for (long location : uncommitted) {
+                            replay(location);
+                        }
+                        uncommitted.clear();
+                        break;
+                    default:
+                        maxId = Math.max(maxId, id);
+                        uncommitted.clear();
+                        replay(location(number, offset));
+                        break;
+                }
+                offset += length;
+            }
+            uncommitted.clear();
+            segment.end = offset;
+            active = segment;
+        }
+
+        if (active == null) {
+            active = createSegment(0);
+        } else {
+            // Clear whatever a crash left after the last intact record, so that it cannot be mistaken for records
+            // once new ones have been appended in front of it
+            byte[] zeros = new byte[64 << 10];
+            for (int i = active.end; i < active.buffer.capacity(); i += zeros.length) {
+                active.buffer.put(i, zeros, 0, Math.min(zeros.length, active.buffer.capacity() - i));
+            }
+        }
+        nextMessageId = Math.max(maxId + 1, highWater);
+    }
+
+    /**
+     * Apply one PUT, BATCH_PUT or TOMBSTONE record to the indexes while recovering.
+     */
+    private void replay(long location) {
+        Segment segment = segments.get(segmentOf(location));
+        MappedByteBuffer buffer = segment.buffer;
+        int offset = offsetOf(location);
+        int type = buffer.getInt(offset + 8);
+        int id = buffer.getInt(offset + 12);
+        boolean put = type != TYPE_TOMBSTONE;
+
+        Long old = put ? byId.put(id, location) : byId.remove(id);
+        if (old != null) {
+            release(old);
+        }
+        MessageTimeKey key = new MessageTimeKey(buffer.getLong(offset + 20), id);
+        int postedBy = buffer.getInt(offset + 16);
+        if (put) {
+            segment.liveBytes += buffer.getInt(offset);
+            byAccount.computeIfAbsent(postedBy, accountId -> new ConcurrentSkipListSet<>()).add(key);
+        } else {
+            NavigableSet<MessageTimeKey> keys = byAccount.get(postedBy);
+            if (keys != null) {
+                keys.remove(key);
+            }
+        }
+    }
+
+    /**
+     * @return the length of the record at the offset if it is complete and its checksum matches, or 0
+     */
+    private int intactRecordLength(MappedByteBuffer buffer, int offset) {
+        if (offset + HEADER_BYTES > buffer.capacity()) {
+            return 0;
+        }
+        int length = buffer.getInt(offset);
+        if (length < HEADER_BYTES || length > MAX_RECORD_BYTES || offset + length > buffer.capacity()) {
+            return 0;
+        }
+        crc.reset();
+        crc.update(buffer.slice(offset + 8, length - 8));
+        return (int) crc.getValue() == buffer.getInt(offset + 4) ? length : 0;
+    }
+
+    /**
+     * Open (creating if needed) and map a segment file. New files are sized to segmentBytes and so start zeroed.
+     */
+    private Segment createSegment(int number) throws IOException {
+        Path path = directory.resolve(String.format("segment-%010d.log", number));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            long size = Math.max(channel.size(), segmentBytes);
+            Segment segment = new Segment(number, path, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+            segments.put(number, segment);
+            return segment;
+        }
+    }
+}
@@ -1,13 +1,18 @@
 package DAO;
 
 import Util.ConnectionUtil;
+import Util.LatencyHistogram;
+import Util.Metrics;
+import Util.UnitOfWork;
 import Model.Message;
 
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
-import java.sql.Statement;
 import java.sql.ResultSet;
+import java.sql.Savepoint;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -21,8 +26,109 @@ import java.util.List;
  * posted_by, which is of type int, and is a foreign key associated with the column 'account_id' of 'account'
  * message_text, which is of type varchar(255),
  * time_posted_epoch, which is of type bigint.
+ *
+ * This is the H2 implementation of MessageStore. Every query selects RowMappers.MESSAGE_COLUMNS and maps its rows with
+ * RowMappers.MESSAGE.
  */
-public class MessageDAO {
+public class MessageDAO implements MessageStore {
+
+    /**
+     * SQLState reported when a posted_by does not refer to an existing account.
+     */
+    private static final String FOREIGN_KEY_VIOLATION = "23506";
+
+    /**
+     * Number of rows fetched per round trip when streaming the whole Message table.
+     */
+    private static final int STREAM_FETCH_SIZE = 500;
+
+    /**
+     * The statements run by the methods below. They are public so that QueryPlanTest can EXPLAIN the SQL that is
+     * actually run rather than a copy of it.
+     *
+     * getAllMessages.
+     */
+    public static final String SELECT_ALL_MESSAGES =
+            "SELECT " + RowMappers.MESSAGE_COLUMNS + " FROM message";
+
+    /**
+     * forEachMessage.
+     */
+    public static final String SELECT_ALL_MESSAGES_BY_ID =
+            "SELECT " + RowMappers.MESSAGE_COLUMNS + " FROM message ORDER BY message_id";
+
+    /**
+     * getMessagesByAccountId and forEachMessageByAccountId.
+     */
+    public static final String SELECT_MESSAGES_BY_ACCOUNT_ID =
+            "SELECT " + RowMappers.MESSAGE_COLUMNS + " FROM message "
+                    + "WHERE posted_by = ? ORDER BY time_posted_epoch, message_id";
+
+    /**
+     * getMessageById.
+     */
+    public static final String SELECT_MESSAGE_BY_ID =
+            "SELECT " + RowMappers.MESSAGE_COLUMNS + " FROM message WHERE message_id = ?";
+
+    /**
+     * getMessagesAfter.
+     */
+    public static final String SELECT_MESSAGES_AFTER =
+            "SELECT " + RowMappers.MESSAGE_COLUMNS + " FROM message "
+                    + "WHERE message_id > ? ORDER BY message_id LIMIT ?";
+
+    /**
+     * getMessagesByAccountIdAfter.
+     */
+    public static final String SELECT_MESSAGES_BY_ACCOUNT_ID_AFTER =
+            "SELECT " + RowMappers.MESSAGE_COLUMNS + " FROM message "
+                    + "WHERE posted_by = ? AND (time_posted_epoch, message_id) > (?, ?) "
+                    + "ORDER BY time_posted_epoch, message_id LIMIT ?";
+
+    /**
+     * insertMessage, returning the row with its generated message_id.
+     */
+    public static final String INSERT_MESSAGE_RETURNING =
+            "SELECT " + RowMappers.MESSAGE_COLUMNS + " FROM FINAL TABLE ("
+                    + "INSERT INTO message ( posted_by, message_text, time_posted_epoch) VALUES ( ?, ?, ? ))";
+
+    /**
+     * insertMessages, run as a batch.
+     */
+    public static final String INSERT_MESSAGE =
+            "INSERT INTO message ( posted_by, message_text, time_posted_epoch) VALUES ( ?, ?, ? )";
+
+    /**
+     * updateMessageById, returning the updated row.
+     */
+    public static final String UPDATE_MESSAGE_BY_ID_RETURNING =
+            "SELECT " + RowMappers.MESSAGE_COLUMNS + " FROM FINAL TABLE ("
+                    + "UPDATE message SET message_text = ? WHERE message_id = ?)";
+
+    /**
+     * deleteMessageById, returning the deleted row.
+     */
+    public static final String DELETE_MESSAGE_BY_ID_RETURNING =
+            "SELECT " + RowMappers.MESSAGE_COLUMNS + " FROM OLD TABLE ("
+                    + "DELETE FROM message WHERE message_id = ?)";
+
+    /**
+     * Query timers, exported by Metrics as db_query_seconds.
+     */
+    private static final LatencyHistogram GET_ALL_MESSAGES_TIMER = Metrics.timer("MessageDAO.getAllMessages");
+    private static final LatencyHistogram FOR_EACH_MESSAGE_TIMER = Metrics.timer("MessageDAO.forEachMessage");
+    private static final LatencyHistogram FOR_EACH_MESSAGE_BY_ACCOUNT_ID_TIMER =
+            Metrics.timer("MessageDAO.forEachMessageByAccountId");
+    private static final LatencyHistogram GET_MESSAGE_BY_ID_TIMER = Metrics.timer("MessageDAO.getMessageById");
+    private static final LatencyHistogram GET_MESSAGES_BY_ACCOUNT_ID_TIMER =
+            Metrics.timer("MessageDAO.getMessagesByAccountId");
+    private static final LatencyHistogram GET_MESSAGES_AFTER_TIMER = Metrics.timer("MessageDAO.getMessagesAfter");
+    private static final LatencyHistogram GET_MESSAGES_BY_ACCOUNT_ID_AFTER_TIMER =
+            Metrics.timer("MessageDAO.getMessagesByAccountIdAfter");
+    private static final LatencyHistogram INSERT_MESSAGE_TIMER = Metrics.timer("MessageDAO.insertMessage");
+    private static final LatencyHistogram INSERT_MESSAGES_TIMER = Metrics.timer("MessageDAO.insertMessages");
+    private static final LatencyHistogram UPDATE_MESSAGE_BY_ID_TIMER = Metrics.timer("MessageDAO.updateMessageById");
+    private static final LatencyHistogram DELETE_MESSAGE_BY_ID_TIMER = Metrics.timer("MessageDAO.deleteMessageById");
 
     /**
      * Retrieve all messages from the Message table.
@@ -30,33 +136,104 @@ public class MessageDAO {
      */
     public List<Message> getAllMessages(){
 
-        Connection connection = ConnectionUtil.getConnection();
         List<Message> messages = new ArrayList<>();
 
+        long start = System.nanoTime();
+
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(SELECT_ALL_MESSAGES)) {
+
+            messages = RowMappers.list(preparedStatement.executeQuery(), RowMappers.MESSAGE);
+
+        }catch(SQLException e){
+
+            System.out.println(e.getMessage());
+        
+        } finally {
+            GET_ALL_MESSAGES_TIMER.record(System.nanoTime() - start);
+        }
+
+        return messages;
+    }
+
+
+    /**
+     * Hand every message in the Message table to the handler, one row at a time, in message_id order.
+     * Rows are read through a forward-only, read-only cursor fetched in batches of STREAM_FETCH_SIZE, and no list is
+     * built, so memory use stays constant however large the table is.
+     * @param handler receives each message as it is read
+     * @return the number of messages handed to the handler
+     * @throws IOException if the handler fails, for example because the client went away mid-response, or the rows
+     *         could not be read to the end
+     */
+    public int forEachMessage(MessageHandler handler) throws IOException {
+
+        long start = System.nanoTime();
+
+        try {
+            return stream(SELECT_ALL_MESSAGES_BY_ID, null, handler);
+        } finally {
+            FOR_EACH_MESSAGE_TIMER.record(System.nanoTime() - start);
+        }
+    }
+
+
+    /**
+     * Hand every message written by a particular user to the handler, one row at a time, ordered by
+     * time_posted_epoch then message_id, through the same kind of cursor as forEachMessage.
+     * @param accountId the posted_by of the messages
+     * @param handler receives each message as it is read
+     * @return the number of messages handed to the handler
+     * @throws IOException if the handler fails, or the rows could not be read to the end
+     */
+    public int forEachMessageByAccountId(int accountId, MessageHandler handler) throws IOException {
+
+        long start = System.nanoTime();
+
         try {
+            return stream(SELECT_MESSAGES_BY_ACCOUNT_ID, accountId, handler);
+        } finally {
+            FOR_EACH_MESSAGE_BY_ACCOUNT_ID_TIMER.record(System.nanoTime() - start);
+        }
+    }
+
+
+    /**
+     * Run a query through a forward-only, read-only cursor fetched in batches of STREAM_FETCH_SIZE, handing each row
+     * to the handler as it is read.
+     * A database error part way through is rethrown rather than printed, so that a caller writing a response can
+     * abort it instead of presenting the rows read so far as the whole result.
+     * @param parameter the query's single int parameter, or null if it has none
+     */
+    private int stream(String sql, Integer parameter, MessageHandler handler) throws IOException {
 
-            String sql = "SELECT * FROM message";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+        int count = 0;
+
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(sql,
+                     ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+
+            preparedStatement.setFetchSize(STREAM_FETCH_SIZE);
+            if (parameter != null) {
+                preparedStatement.setInt(1, parameter);
+            }
 
             ResultSet rs = preparedStatement.executeQuery();
             while(rs.next()){
 
-                Message message = new Message( rs.getInt("message_id"),
-                        rs.getInt("posted_by"),
-                        rs.getString("message_text"),
-                        rs.getLong("time_posted_epoch") );
-
-                messages.add(message);
+                handler.handle(RowMappers.MESSAGE.map(rs));
+                count++;
 
             }
 
         }catch(SQLException e){
 
             System.out.println(e.getMessage());
-        
+            throw new IOException("Reading messages failed after " + count + " rows", e);
+
         }
 
-        return messages;
+        return count;
     }
 
 
@@ -65,163 +242,233 @@ public class MessageDAO {
      * @return a message identified by message_id.
      */
     public Message getMessageById(int id){
-        Connection connection = ConnectionUtil.getConnection();
-        String sql = "SELECT * FROM message WHERE message_id = ?";
         
-        try {
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+        long start = System.nanoTime();
+
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(SELECT_MESSAGE_BY_ID)) {
 
             preparedStatement.setInt(1,id);
 
-            ResultSet rs = preparedStatement.executeQuery();
-            while(rs.next()){
+            return RowMappers.first(preparedStatement.executeQuery(), RowMappers.MESSAGE);
 
-                Message messageById = new Message( rs.getInt("message_id"),
-                        rs.getInt("posted_by"),
-                        rs.getString("message_text"),
-                        rs.getLong("time_posted_epoch") );
+        }catch(SQLException e){
+            System.out.println(e.getMessage());
+        } finally {
+            GET_MESSAGE_BY_ID_TIMER.record(System.nanoTime() - start);
+        }
 
-                return messageById;
+        return null;
+    }
 
-            }
 
+    /**
+     * Retrieve all messages written by a particular user
+     * @return all messages written by a particular user
+     */
+    public List<Message> getMessagesByAccountId(int accountId){
+
+        List<Message> messages = new ArrayList<>();
+        // posted_by is a foreign key to account, so every matching message already belongs to a real account.
+        // The (posted_by, time_posted_epoch, message_id) index serves both the filter and the ordering.
+        long start = System.nanoTime();
+
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(SELECT_MESSAGES_BY_ACCOUNT_ID)) {
+
+            preparedStatement.setInt(1, accountId);
+
+            messages = RowMappers.list(preparedStatement.executeQuery(), RowMappers.MESSAGE);
         }catch(SQLException e){
             System.out.println(e.getMessage());
+        } finally {
+            GET_MESSAGES_BY_ACCOUNT_ID_TIMER.record(System.nanoTime() - start);
         }
 
-        return null;
+        return messages;
+        
     }
 
 
     /**
-     * retrieve a message from the Message table, identified by its posted_by (user).
-     * @return a message identified by posted_by.
+     * Retrieve one page of messages, ordered by message_id, starting strictly after afterMessageId.
+     * The seek on the primary key means each page costs the same no matter how deep into the table it is.
+     * @param afterMessageId the message_id of the last message on the previous page, or 0 for the first page
+     * @param limit the maximum number of messages to return
+     * @return up to limit messages with a message_id greater than afterMessageId.
      */
-    public Message getMessagePosted_by(int posted_by){
-        Connection connection = ConnectionUtil.getConnection();
-        try {
+    public List<Message> getMessagesAfter(int afterMessageId, int limit){
 
-            String sql = "SELECT * FROM message WHERE posted_by = ?";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+        List<Message> messages = new ArrayList<>();
 
-            preparedStatement.setInt(1,posted_by);
+        long start = System.nanoTime();
 
-            ResultSet rs = preparedStatement.executeQuery();
-            while(rs.next()){
-                
-                Message message = new Message( rs.getInt("message_id"),
-                        rs.getInt("posted_by"),
-                        rs.getString("message_text"),
-                        rs.getLong("time_posted_epoch") );
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(SELECT_MESSAGES_AFTER)) {
 
-                return message;
+            preparedStatement.setInt(1, afterMessageId);
+            preparedStatement.setInt(2, limit);
 
-            }
+            messages = RowMappers.list(preparedStatement.executeQuery(), RowMappers.MESSAGE);
 
         }catch(SQLException e){
 
             System.out.println(e.getMessage());
-        
+
+        } finally {
+            GET_MESSAGES_AFTER_TIMER.record(System.nanoTime() - start);
         }
-        
-        return null;
-    
+
+        return messages;
     }
 
 
     /**
-     * Retrieve all messages written by a particular user
-     * @return all messages written by a particular user
+     * Retrieve one page of messages written by a particular user, ordered by (time_posted_epoch, message_id) and
+     * starting strictly after the given position.
+     * @param accountId the posted_by of the messages
+     * @param afterEpoch the time_posted_epoch of the last message on the previous page
+     * @param afterMessageId the message_id of the last message on the previous page
+     * @param limit the maximum number of messages to return
+     * @return up to limit messages by accountId positioned after (afterEpoch, afterMessageId).
      */
-    public List<Message> getMessagesByAccountId(int accountId){
+    public List<Message> getMessagesByAccountIdAfter(int accountId, long afterEpoch, int afterMessageId, int limit){
 
         List<Message> messages = new ArrayList<>();
-        Connection connection = ConnectionUtil.getConnection();
-        try {
-            
-            String sql = "SELECT * FROM message WHERE posted_by = ? AND posted_by IN (SELECT account_id FROM account)";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+
+        long start = System.nanoTime();
+
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(SELECT_MESSAGES_BY_ACCOUNT_ID_AFTER)) {
 
             preparedStatement.setInt(1, accountId);
+            preparedStatement.setLong(2, afterEpoch);
+            preparedStatement.setInt(3, afterMessageId);
+            preparedStatement.setInt(4, limit);
 
-            ResultSet rs = preparedStatement.executeQuery();
+            messages = RowMappers.list(preparedStatement.executeQuery(), RowMappers.MESSAGE);
 
-            while(rs.next()){
-                Message messagesByAccountId = new Message( rs.getInt("message_id"),
-                rs.getInt("posted_by"),
-                rs.getString("message_text"),
-                rs.getLong("time_posted_epoch") );
-                
-                messages.add(messagesByAccountId);
-
-                return messages;
-            }
         }catch(SQLException e){
+
             System.out.println(e.getMessage());
+
+        } finally {
+            GET_MESSAGES_BY_ACCOUNT_ID_AFTER_TIMER.record(System.nanoTime() - start);
         }
 
-        return null;
-        
+        return messages;
     }
 
 
     /**
      * Insert a message into the Message table.
-     * Unlike some of the other insert problems, the primary key here will be provided by the client as part of the
-     * Message object. Given the specific nature of an ISBN as both a numerical organization of messages outside of this
-     * database, and as a primary key, it would make sense for the client to submit an ISBN when submitting a message.
-     * You only need to change the sql String and leverage PreparedStatement's setString and setInt methods.
+     * The message_id is generated by the database. The insert is wrapped in H2's FINAL TABLE data change delta table,
+     * so the stored row (including its generated message_id) comes back from the same statement.
+     * A posted_by that does not refer to an existing account violates the foreign key and yields null, so no
+     * separate existence query is needed.
+     * @return the persisted message, or null if it could not be inserted.
      */
     public Message insertMessage(Message message){
-        
-        Connection connection = ConnectionUtil.getConnection();
 
-        String sql = "INSERT INTO message ( posted_by, message_text, time_posted_epoch) VALUES ( ?, ?, ? )" ;
+        long start = System.nanoTime();
 
-        try {
-
-            PreparedStatement preparedStatement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(INSERT_MESSAGE_RETURNING)) {
 
             preparedStatement.setInt(1, message.getPosted_by());
             preparedStatement.setString(2, message.getMessage_text());
             preparedStatement.setLong(3, message.getTime_posted_epoch());
 
-            preparedStatement.executeUpdate();
+            return RowMappers.first(preparedStatement.executeQuery(), RowMappers.MESSAGE);
 
+        } catch (SQLException e) {
 
-            // After executing the INSERT statement using preparedStatement.executeUpdate()
-            // The ResultSet object named generatedKeys is obtained by calling
-            // preparedStatement.getGeneratedKeys()
+            // A missing parent account is an expected outcome rather than an error worth logging
+            if (!FOREIGN_KEY_VIOLATION.equals(e.getSQLState())) {
+                System.out.println(e.getMessage());
+            }
+        
+        } finally {
+            INSERT_MESSAGE_TIMER.record(System.nanoTime() - start);
+        }
 
-            ResultSet generatedKeys = preparedStatement.getGeneratedKeys();
+        return null;
 
-            // Check if any keys were generated by iterating over the ResultSet using
-            // generatedKeys.next()
+    }
 
-            if (generatedKeys.next()) {
 
-                // By iterating over the ResultSet using generatedKeys.next(), we can access
-                // the generated key value(s). In this case, since we expect only one key
-                // (the ID of the inserted message), we use generatedKeys.getInt(1) to retrieve
-                // the value of the first column in the result set, which represents the
-                // generated ID.
+    /**
+     * Insert several messages into the Message table with one JDBC batch, in one transaction.
+     * Either every message is inserted or, if any insert fails, none are.
+     * When a UnitOfWork is active the batch joins its transaction instead of committing on its own, behind a savepoint:
+     * a failed batch is rolled back to it, so the rows it did insert are not committed with the rest of the unit.
+     * @param messages the messages to insert; their posted_by values must refer to existing accounts
+     * @return the persisted messages with their generated message_ids, in the same order, or null if the batch
+     *         failed.
+     */
+    public List<Message> insertMessages(List<Message> messages){
 
-                // Retrieve the generated ID
-                int generatedId = (int) generatedKeys.getLong(1);
+        long start = System.nanoTime();
 
-                // Finally, the retrieved ID is used to create a new Message object, combining
-                // it with the other attributes of the inserted message.
+        try (Connection connection = ConnectionUtil.getConnection()) {
 
-                // Create a new Message object with the generated ID and other attributes
-                return new Message(generatedId, message.getPosted_by(), message.getMessage_text(),
-                        message.getTime_posted_epoch());
+            // Only manage the transaction if nobody else (such as a UnitOfWork) already is
+            boolean ownTransaction = connection.getAutoCommit();
+            Savepoint savepoint = null;
+            if (ownTransaction) {
+                connection.setAutoCommit(false);
+            } else {
+                savepoint = connection.setSavepoint();
+            }
 
+            try (PreparedStatement preparedStatement =
+                         connection.prepareStatement(INSERT_MESSAGE, Statement.RETURN_GENERATED_KEYS)) {
+
+                for (Message message : messages) {
+                    preparedStatement.setInt(1, message.getPosted_by());
+                    preparedStatement.setString(2, message.getMessage_text());
+                    preparedStatement.setLong(3, message.getTime_posted_epoch());
+                    preparedStatement.addBatch();
+                }
+                preparedStatement.executeBatch();
+
+                // The generated keys come back one row per inserted message, in batch order
+                List<Message> persisted = new ArrayList<>(messages.size());
+                ResultSet generatedKeys = preparedStatement.getGeneratedKeys();
+                for (Message message : messages) {
+                    if (!generatedKeys.next()) {
+                        throw new SQLException("Missing generated key for batched message");
+                    }
+                    persisted.add(new Message((int) generatedKeys.getLong(1), message.getPosted_by(),
+                            message.getMessage_text(), message.getTime_posted_epoch()));
+                }
+
+                if (ownTransaction) {
+                    connection.commit();
+                } else {
+                    connection.releaseSavepoint(savepoint);
+                }
+                return persisted;
+
+            } catch (SQLException e) {
+                if (ownTransaction) {
+                    connection.rollback();
+                } else {
+                    rollbackToSavepoint(connection, savepoint);
+                }
+                throw e;
+            } finally {
+                if (ownTransaction) {
+                    connection.setAutoCommit(true);
+                }
             }
 
         } catch (SQLException e) {
 
             System.out.println(e.getMessage());
-        
+
+        } finally {
+            INSERT_MESSAGES_TIMER.record(System.nanoTime() - start);
         }
 
         return null;
@@ -229,34 +476,44 @@ public class MessageDAO {
     }
 
 
+    /**
+     * Undo a failed batch inside someone else's transaction. If even that fails, the rows may still be there, so the
+     * UnitOfWork is marked rollback-only rather than letting it commit them.
+     */
+    private static void rollbackToSavepoint(Connection connection, Savepoint savepoint) {
+        try {
+            connection.rollback(savepoint);
+        } catch (SQLException e) {
+            System.out.println(e.getMessage());
+            UnitOfWork unitOfWork = UnitOfWork.current();
+            if (unitOfWork != null) {
+                unitOfWork.setRollbackOnly();
+            }
+        }
+    }
+
+
     /**
      * Update a message into the Message table, identified by message_id.
-     * @return updated message by its ID
+     * The FINAL TABLE wrapper returns the updated row from the UPDATE itself, so no follow-up SELECT is needed.
+     * @return updated message by its ID, or null if no message has that ID.
      */
     public Message updateMessageById(int id, Message message){
-        
-        Connection connection = ConnectionUtil.getConnection();
-        String sql = "UPDATE message SET message_text = ? WHERE message_id = ?";
-        int rowsUpdated = 0;
 
-        try {
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+        long start = System.nanoTime();
+
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(UPDATE_MESSAGE_BY_ID_RETURNING)) {
 
             preparedStatement.setString(1, message.getMessage_text());
             preparedStatement.setInt(2, id);
 
-            rowsUpdated = preparedStatement.executeUpdate();
+            return RowMappers.first(preparedStatement.executeQuery(), RowMappers.MESSAGE);
+
         }catch(SQLException e){
             System.out.println(e.getMessage());
-        }
-        
-        if ( rowsUpdated > 0 ) {
-
-            // Retrieve the updated message by its ID
-            Message updatedMessage = this.getMessageById(id);
-
-            return new Message(id, updatedMessage.getPosted_by(), updatedMessage.getMessage_text(),
-                               updatedMessage.getTime_posted_epoch());
+        } finally {
+            UPDATE_MESSAGE_BY_ID_TIMER.record(System.nanoTime() - start);
         }
 
         return null;
@@ -265,31 +522,29 @@ public class MessageDAO {
 
     /**
      * Delete a message from the Message table, identified by message_id.
-     * @return true if the deletion was successful; false if the message was not
-     *         found in the database.
+     * The OLD TABLE wrapper returns the row as it was before the DELETE, so the deleted message is available without
+     * reading it first.
+     * @return the deleted message, or null if the message was not found in the database.
      */
-    public boolean deleteMessageById(int id){
-        Connection connection = ConnectionUtil.getConnection();
-        
-        int rowsUpdated = 0;
+    public Message deleteMessageById(int id){
+        long start = System.nanoTime();
 
-        try {
-
-            String sql = "DELETE FROM message WHERE message_id = ?";
-            
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+        try (Connection connection = ConnectionUtil.getConnection();
+             PreparedStatement preparedStatement = connection.prepareStatement(DELETE_MESSAGE_BY_ID_RETURNING)) {
 
             preparedStatement.setInt(1,id);
 
-            rowsUpdated = preparedStatement.executeUpdate();
+            return RowMappers.first(preparedStatement.executeQuery(), RowMappers.MESSAGE);
 
         }catch(SQLException e){
 
             System.out.println(e.getMessage());
         
+        } finally {
+            DELETE_MESSAGE_BY_ID_TIMER.record(System.nanoTime() - start);
         }
         
-        return rowsUpdated > 0;
+        return null;
     
     }
 
@@ -0,0 +1,20 @@
+package DAO;
+
+import Model.Message;
+
+import java.io.IOException;
+
+/**
+ * A MessageHandler receives messages one at a time as a DAO reads them, so a caller can process a large result
+ * (for example, writing it to an HTTP response) without holding every message in memory at once.
+ */
+@FunctionalInterface
+public interface MessageHandler {
+
+    /**
+     * Process one message.
+     * @param message the message just read from the database
+     * @throws IOException if the message could not be processed, which stops the read
+     */
+    void handle(Message message) throws IOException;
+}
@@ -0,0 +1,83 @@
+package DAO;
+
+import Model.Message;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Where messages are kept. MessageService only talks to this interface, so the storage engine can be chosen at
+ * startup (see StorageEngine): MessageDAO keeps messages in the H2 database, InMemoryMessageStore in memory and
+ * LogMessageStore in an append-only log of memory-mapped files.
+ *
+ * Every implementation behaves like the message table: message_ids are generated on insert, posted_by must refer to
+ * an existing account, message_text is at most 255 characters, and the methods return null rather than throwing when
+ * a message cannot be found or stored. Returned messages belong to the caller.
+ */
+public interface MessageStore {
+
+    /**
+     * @return every message.
+     */
+    List<Message> getAllMessages();
+
+    /**
+     * Hand every message to the handler, one at a time, in message_id order, without building a list.
+     * @return the number of messages handed to the handler
+     * @throws IOException if the handler fails, or the messages could not be read to the end
+     */
+    int forEachMessage(MessageHandler handler) throws IOException;
+
+    /**
+     * Hand every message posted by the account to the handler, one at a time, ordered by time_posted_epoch then
+     * message_id, without building a list.
+     * @return the number of messages handed to the handler
+     * @throws IOException if the handler fails, or the messages could not be read to the end
+     */
+    int forEachMessageByAccountId(int accountId, MessageHandler handler) throws IOException;
+
+    /**
+     * @return the message with that message_id, or null if there is none.
+     */
+    Message getMessageById(int id);
+
+    /**
+     * @return every message posted by the account, ordered by time_posted_epoch then message_id.
+     */
+    List<Message> getMessagesByAccountId(int accountId);
+
+    /**
+     * @return up to limit messages with a message_id greater than afterMessageId, in message_id order.
+     */
+    List<Message> getMessagesAfter(int afterMessageId, int limit);
+
+    /**
+     * @return up to limit messages posted by the account, ordered by time_posted_epoch then message_id and
+     *         positioned strictly after (afterEpoch, afterMessageId).
+     */
+    List<Message> getMessagesByAccountIdAfter(int accountId, long afterEpoch, int afterMessageId, int limit);
+
+    /**
+     * Store a new message, generating its message_id.
+     * @return the stored message, or null if it could not be stored, for example because posted_by does not refer to
+     *         an existing account.
+     */
+    Message insertMessage(Message message);
+
+    /**
+     * Store several new messages. Either every message is stored or none are.
+     * @return the stored messages with their generated message_ids, in the same order, or null if the batch failed.
+     */
+    List<Message> insertMessages(List<Message> messages);
+
+    /**
+     * Replace the message_text of a message.
+     * @return the updated message, or null if no message has that message_id.
+     */
+    Message updateMessageById(int id, Message message);
+
+    /**
+     * @return the deleted message, or null if no message has that message_id.
+     */
+    Message deleteMessageById(int id);
+}
@@ -0,0 +1,41 @@
+package DAO;
+
+import Model.Message;
+
+/**
+ * A message's position among its account's messages: ordered by time_posted_epoch, then message_id, like the
+ * (posted_by, time_posted_epoch, message_id) index. Used by the storage engines that keep their own indexes.
+ */
+final class MessageTimeKey implements Comparable<MessageTimeKey> {
+    final long timePostedEpoch;
+    final int messageId;
+
+    MessageTimeKey(long timePostedEpoch, int messageId) {
+        this.timePostedEpoch = timePostedEpoch;
+        this.messageId = messageId;
+    }
+
+    static MessageTimeKey of(Message message) {
+        return new MessageTimeKey(message.getTime_posted_epoch(), message.getMessage_id());
+    }
+
+    @Override
+    public int compareTo(MessageTimeKey other) {
+        int byTime = Long.compare(timePostedEpoch, other.timePostedEpoch);
+        return byTime != 0 ? byTime : Integer.compare(messageId, other.messageId);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof MessageTimeKey)) {
+            return false;
+        }
+        MessageTimeKey other = (MessageTimeKey) o;
+        return timePostedEpoch == other.timePostedEpoch && messageId == other.messageId;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(timePostedEpoch) * 31 + messageId;
+    }
+}
@@ -0,0 +1,17 @@
+package DAO;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Turns the current row of a ResultSet into an object. The shared mappers, and the column lists their queries must
+ * select, are in RowMappers.
+ */
+@FunctionalInterface
+public interface RowMapper<T> {
+
+    /**
+     * Map the row the ResultSet is positioned on, without moving it.
+     */
+    T map(ResultSet rs) throws SQLException;
+}
@@ -0,0 +1,73 @@
+package DAO;
+
+import Model.Account;
+import Model.Message;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The row mappers shared by the DAOs.
+ *
+ * Each query selects one of the column lists below, in that order, so its mapper reads every column by position.
+ * Reading by name, as rs.getInt("message_id") does, makes the driver look the label up on every row; reading by
+ * position costs nothing per row, and a query that selected the wrong columns fails on its first row.
+ *
+ * For a result set whose column order is not known in advance, messageByName resolves the positions once from the
+ * ResultSet and returns a mapper that reads by position from then on.
+ */
+public final class RowMappers {
+
+    /**
+     * The columns MESSAGE reads, in order.
+     */
+    public static final String MESSAGE_COLUMNS = "message_id, posted_by, message_text, time_posted_epoch";
+
+    /**
+     * The columns ACCOUNT reads, in order.
+     */
+    public static final String ACCOUNT_COLUMNS = "account_id, username, password";
+
+    public static final RowMapper<Message> MESSAGE =
+            rs -> new Message(rs.getInt(1), rs.getInt(2), rs.getString(3), rs.getLong(4));
+
+    public static final RowMapper<Account> ACCOUNT =
+            rs -> new Account(rs.getInt(1), rs.getString(2), rs.getString(3));
+
+    private RowMappers() {
+    }
+
+    /**
+     * @return a Message mapper for this ResultSet, with each column's position looked up once, here
+     * @throws SQLException if a message column is missing from the ResultSet
+     */
+    public static RowMapper<Message> messageByName(ResultSet rs) throws SQLException {
+        int messageId = rs.findColumn("message_id");
+        int postedBy = rs.findColumn("posted_by");
+        int messageText = rs.findColumn("message_text");
+        int timePostedEpoch = rs.findColumn("time_posted_epoch");
+        return row -> new Message(row.getInt(messageId), row.getInt(postedBy), row.getString(messageText),
+                row.getLong(timePostedEpoch));
+    }
+
+    /**
+     * Map every remaining row.
+     */
+    public static <T> List<T> list(ResultSet rs, RowMapper<T> mapper) throws SQLException {
+        List<T> rows = new ArrayList<>();
+        while (rs.next()) {
+            rows.add(mapper.map(rs));
+        }
+        return rows;
+    }
+
+    /**
+     * Map the next row.
+     * @return the mapped row, or null if there are no more rows
+     */
+    public static <T> T first(ResultSet rs, RowMapper<T> mapper) throws SQLException {
+        return rs.next() ? mapper.map(rs) : null;
+    }
+}
@@ -0,0 +1,108 @@
+package DAO;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+
+/**
+ * Picks the storage engine behind the services, once per process, from the system property storage.engine:
+ *
+ * "h2" (the default) keeps messages and accounts in the H2 database behind ConnectionUtil, through MessageDAO and
+ * AccountDAO.
+ *
+ * "memory" keeps them in an InMemoryMessageStore and InMemoryAccountStore shared by the whole process. It never
+ * touches the database, so reads cost a map lookup, but it starts empty, is not transactional and loses everything
+ * when the process exits. It suits read-heavy nodes that are loaded through the API, and benchmarks that want a
+ * baseline without any I/O.
+ *
+ * "log" keeps messages in a LogMessageStore, an append-only log of memory-mapped files that survives restarts, and
+ * accounts in H2 through AccountDAO. It is configured by:
+ *
+ *   storage.log.dir                       directory for the segment files, ./messagelog by default
+ *   storage.log.segmentBytes              size of each segment file, 64 MiB by default
+ *   storage.log.fsync                     force every append to disk before it returns, false by default
+ *   storage.log.compactionIntervalMillis  how often sealed segments are compacted, 10 seconds by default
+ */
+public class StorageEngine {
+
+    private static final String ENGINE = parse(System.getProperty("storage.engine", "h2"));
+
+    private StorageEngine() {
+    }
+
+    /**
+     * The memory engine's stores, created the first time they are asked for.
+     */
+    private static class InMemory {
+        static final InMemoryAccountStore ACCOUNTS = new InMemoryAccountStore();
+        static final InMemoryMessageStore MESSAGES = new InMemoryMessageStore(ACCOUNTS);
+    }
+
+    /**
+     * The AccountDAO shared by the h2 and log engines, so that every service validates posted_by against the one
+     * account id bitmap its insertAccount keeps current.
+     */
+    private static class Database {
+        static final AccountDAO ACCOUNTS = new AccountDAO();
+    }
+
+    /**
+     * The log engine's message store, opened the first time it is asked for.
+     */
+    private static class Log {
+        static final LogMessageStore MESSAGES = open();
+
+        private static LogMessageStore open() {
+            try {
+                LogMessageStore store = new LogMessageStore(
+                        Paths.get(System.getProperty("storage.log.dir", "./messagelog")),
+                        Integer.getInteger("storage.log.segmentBytes", 64 << 20),
+                        Boolean.getBoolean("storage.log.fsync"),
+                        Database.ACCOUNTS);
+                store.startCompaction(Long.getLong("storage.log.compactionIntervalMillis", 10000));
+                return store;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private static String parse(String engine) {
+        switch (engine) {
+            case "h2":
+            case "memory":
+            case "log":
+                return engine;
+            default:
+                throw new IllegalArgumentException("Unknown storage.engine " + engine + ", expected h2, memory or log");
+        }
+    }
+
+    /**
+     * @return true if the memory engine is in use, in which case the database is never used
+     */
+    public static boolean isInMemory() {
+        return ENGINE.equals("memory");
+    }
+
+    /**
+     * @return a MessageStore for the selected engine
+     */
+    public static MessageStore messageStore() {
+        switch (ENGINE) {
+            case "memory":
+                return InMemory.MESSAGES;
+            case "log":
+                return Log.MESSAGES;
+            default:
+                return new MessageDAO();
+        }
+    }
+
+    /**
+     * @return an AccountStore for the selected engine
+     */
+    public static AccountStore accountStore() {
+        return isInMemory() ? InMemory.ACCOUNTS : Database.ACCOUNTS;
+    }
+}
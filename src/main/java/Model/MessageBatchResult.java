@@ -0,0 +1,62 @@
+package Model;
+
+/**
+ * This is a class that models the outcome of one item in a batch of new messages.
+ *
+ * Exactly one of message and error is set: message holds the persisted message (including its generated
+ * message_id) when the item was created, and error explains why it was rejected otherwise.
+ */
+public class MessageBatchResult {
+    /**
+     * The persisted message, or null if the item was rejected.
+     */
+    public Message message;
+    /**
+     * The reason the item was rejected, or null if it was created.
+     */
+    public String error;
+
+    /**
+     * A default, no-args constructor, as well as correctly formatted getters and setters, are needed for
+     * Jackson Objectmapper to work.
+     */
+    public MessageBatchResult() {
+    }
+
+    public MessageBatchResult(Message message, String error) {
+        this.message = message;
+        this.error = error;
+    }
+
+    public static MessageBatchResult created(Message message) {
+        return new MessageBatchResult(message, null);
+    }
+
+    public static MessageBatchResult rejected(String error) {
+        return new MessageBatchResult(null, error);
+    }
+
+    public Message getMessage() {
+        return message;
+    }
+
+    public void setMessage(Message message) {
+        this.message = message;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    @Override
+    public String toString() {
+        return "MessageBatchResult{" +
+                "message=" + message +
+                ", error='" + error + '\'' +
+                '}';
+    }
+}
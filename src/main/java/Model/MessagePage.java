@@ -0,0 +1,55 @@
+package Model;
+
+import java.util.List;
+
+/**
+ * This is a class that models one page of a paginated message listing.
+ *
+ * next_cursor is passed back as the cursor query parameter to fetch the following page. It is null on the last page.
+ */
+public class MessagePage {
+    /**
+     * The messages on this page, in listing order.
+     */
+    public List<Message> messages;
+    /**
+     * An opaque cursor identifying the position after the last message on this page, or null if there are no more.
+     */
+    public String next_cursor;
+
+    /**
+     * A default, no-args constructor, as well as correctly formatted getters and setters, are needed for
+     * Jackson Objectmapper to work.
+     */
+    public MessagePage() {
+    }
+
+    public MessagePage(List<Message> messages, String next_cursor) {
+        this.messages = messages;
+        this.next_cursor = next_cursor;
+    }
+
+    public List<Message> getMessages() {
+        return messages;
+    }
+
+    public void setMessages(List<Message> messages) {
+        this.messages = messages;
+    }
+
+    public String getNext_cursor() {
+        return next_cursor;
+    }
+
+    public void setNext_cursor(String next_cursor) {
+        this.next_cursor = next_cursor;
+    }
+
+    @Override
+    public String toString() {
+        return "MessagePage{" +
+                "messages=" + messages +
+                ", next_cursor='" + next_cursor + '\'' +
+                '}';
+    }
+}
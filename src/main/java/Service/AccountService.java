@@ -1,9 +1,18 @@
 package Service;
 
 import Model.Account;
-import DAO.AccountDAO;
+import DAO.AccountStore;
+import DAO.StorageEngine;
+import Util.BloomFilter;
+import Util.TinyLfuCache;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The purpose of a Service class is to contain "business logic" that sits between the web layer (controller) and
@@ -16,47 +25,180 @@ import java.util.List;
  * readable and maintainable in the long run!
  */
 public class AccountService {
-    private AccountDAO accountDAO;
+    private AccountStore accountStore;
 
     /**
-     * no-args constructor for creating a new AccountService with a new AccountDAO.
-     * There is no need to change this constructor.
+     * Recently verified logins by username, or null when the credential cache is disabled.
+     * Only a salted digest of the password is kept, never the password itself.
+     */
+    private TinyLfuCache<String, VerifiedCredential> credentialCache;
+    private long credentialTtlNanos;
+
+    /**
+     * Every registered username, or null when the filter is disabled. A username the filter has definitely never
+     * seen is inserted straight away; only probable duplicates are looked up first.
+     */
+    private BloomFilter usernameFilter;
+
+    /**
+     * Random salt mixed into every cached digest, so digests are useless outside this process.
+     */
+    private final byte[] digestSalt = new byte[16];
+
+    /**
+     * no-args constructor for creating a new AccountService on the engine chosen by StorageEngine.
+     * The login credential cache is sized with the system property accounts.credentialCache.maxSize (0 disables it)
+     * and entries live for accounts.credentialCache.ttlSeconds.
+     * The registration username filter is sized for accounts.usernameFilter.expectedUsernames usernames (0 disables
+     * it) and is loaded from the account table here.
      */
     public AccountService(){
-        accountDAO = new AccountDAO();
+        this(StorageEngine.accountStore(),
+                Integer.getInteger("accounts.credentialCache.maxSize", 10000),
+                TimeUnit.SECONDS.toNanos(Long.getLong("accounts.credentialCache.ttlSeconds", 300L)));
+
+        long expectedUsernames = Long.getLong("accounts.usernameFilter.expectedUsernames", 1_000_000L);
+        if (expectedUsernames > 0) {
+            enableUsernameFilter(new BloomFilter(expectedUsernames, 0.01));
+        }
     }
     
     /**
-     * Constructor for a AccountService when a AccountDAO is provided.
-     * This is used for when a mock AccountDAO that exhibits mock behavior is used in the test cases.
-     * This would allow the testing of AccountService independently of AccountDAO.
+     * Constructor for a AccountService when a AccountStore is provided.
+     * This is used for when a mock AccountStore that exhibits mock behavior is used in the test cases.
+     * This would allow the testing of AccountService independently of AccountStore.
      * There is no need to modify this constructor.
-     * @param accountDAO
+     * @param accountStore
+     */
+    public AccountService(AccountStore accountStore){
+        this(accountStore, 0, 0);
+    }
+
+    /**
+     * Constructor for a AccountService with a login credential cache.
+     * @param accountStore
+     * @param credentialCacheSize the maximum number of cached logins, or 0 to disable the cache
+     * @param credentialTtlNanos how long a cached login stays valid
+     */
+    public AccountService(AccountStore accountStore, int credentialCacheSize, long credentialTtlNanos){
+        this.accountStore = accountStore;
+        if (credentialCacheSize > 0) {
+            this.credentialCache = new TinyLfuCache<>(credentialCacheSize);
+            this.credentialTtlNanos = credentialTtlNanos;
+            new SecureRandom().nextBytes(digestSalt);
+        }
+    }
+
+    /**
+     * Fill the filter with every username in the account table and use it for registration pre-checks from now on.
+     * @param filter an empty filter sized for the expected number of accounts
      */
-    public AccountService(AccountDAO accountDAO){
-        this.accountDAO = accountDAO;
+    public void enableUsernameFilter(BloomFilter filter) {
+        accountStore.forEachUsername(filter::put);
+        this.usernameFilter = filter;
     }
 
+
     public Account registerUser(Account account) {
 
-        // Check for the username is not blank, the password is at least 4 characters long, and an Account with that username does not already exist.
-        if( account.getUsername().isBlank() || account.getPassword().length() < 4 || accountDAO.getAccountById(account) != null ) {
+        // Check for the username is not blank and the password is at least 4 characters long.
+        if( account.getUsername().isBlank() || account.getPassword().length() < 4 ) {
+            return null;
+        }
+
+        // A probable duplicate is confirmed with a cheap indexed read rather than a failed insert. Usernames the
+        // filter has never seen skip the read entirely.
+        if( usernameFilter != null && usernameFilter.mightContain(account.getUsername())
+                && accountStore.getAccountByUsername(account.getUsername()) != null ) {
             return null;
         }
         
+        // The unique username constraint still has the final say, in which case insertAccount returns null.
         // If all above conditions are met, the response body should contain a JSON of the Account
-        return accountDAO.insertAccount(account);
+        Account registered = accountStore.insertAccount(account);
+        if( registered != null && usernameFilter != null ) {
+            usernameFilter.put(registered.getUsername());
+        }
+        return registered;
     }
 
 
+    /**
+     * Log a user in by checking their username and password.
+     * A recently verified login is answered from the credential cache without touching the database; otherwise the
+     * account is read with a single lookup on the username index.
+     * @return the account if the username and password match, or null otherwise.
+     */
     public Account loginUser(Account account) {
 
-        // Check for the username is not blank, the password is at least 4 characters long, and an Account with that username already exist.
-        if( account.getUsername().isBlank() || account.getPassword().length() < 4 || accountDAO.getAccountById(account) == null ) {
+        // Check for the username is not blank and the password is at least 4 characters long.
+        if( account.getUsername().isBlank() || account.getPassword().length() < 4 ) {
             return null;
         }
 
-        return accountDAO.getAccountById(account);
+        byte[] digest = null;
+        if ( credentialCache != null ) {
+            digest = digest(account.getUsername(), account.getPassword());
+            VerifiedCredential cached = credentialCache.get(account.getUsername());
+            if ( cached != null && MessageDigest.isEqual(cached.digest, digest) ) {
+                // The digest matched, so the supplied password is the one verified earlier
+                return new Account(cached.accountId, account.getUsername(), account.getPassword());
+            }
+        }
+
+        // Check an Account with that username exists and its password matches
+        Account stored = accountStore.getAccountByUsername(account.getUsername());
+        if ( stored == null || !Objects.equals(stored.getPassword(), account.getPassword()) ) {
+            return null;
+        }
+
+        if ( credentialCache != null ) {
+            credentialCache.put(stored.getUsername(), new VerifiedCredential(stored.getAccount_id(), digest),
+                    credentialTtlNanos);
+        }
+        return stored;
+    }
+
+
+    /**
+     * Forget any cached login for the username. This must be called whenever an account's password changes.
+     */
+    public void invalidateCredentials(String username) {
+        if ( credentialCache != null ) {
+            credentialCache.invalidate(username);
+        }
+    }
+
+
+    /**
+     * @return a salted SHA-256 digest of the username and password.
+     */
+    private byte[] digest(String username, String password) {
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            sha256.update(digestSalt);
+            sha256.update(username.getBytes(StandardCharsets.UTF_8));
+            sha256.update((byte) 0);
+            sha256.update(password.getBytes(StandardCharsets.UTF_8));
+            return sha256.digest();
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new ServiceException(e);
+        }
+    }
+
+
+    /**
+     * A login that was verified against the database: the account's id and a digest of the credentials used.
+     */
+    private static class VerifiedCredential {
+        final int accountId;
+        final byte[] digest;
+
+        VerifiedCredential(int accountId, byte[] digest) {
+            this.accountId = accountId;
+            this.digest = digest;
+        }
     }
 
 }
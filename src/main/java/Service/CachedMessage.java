@@ -0,0 +1,68 @@
+package Service;
+
+import Model.Message;
+import Util.TextArena;
+
+import java.lang.invoke.VarHandle;
+
+/**
+ * A message as MessageService's cache holds it: message_id, posted_by and time_posted_epoch as primitives, and the
+ * message_text in a TextArena behind an int handle. An entry is a small fixed-size object with nothing for the
+ * garbage collector to follow, where a Message would bring its String and byte[] along. The Message is decoded on
+ * each hit.
+ *
+ * The text is freed when the entry leaves the cache, possibly while another thread is decoding it, so decode() checks
+ * afterwards that the entry was not released in the meantime.
+ */
+public final class CachedMessage {
+
+    /**
+     * Records that no message has the id.
+     */
+    static final CachedMessage MISSING = new CachedMessage(0, 0, 0, TextArena.NULL);
+
+    private final int messageId;
+    private final int postedBy;
+    private final long timePostedEpoch;
+    private final int text;
+
+    private volatile boolean released;
+
+    private CachedMessage(int messageId, int postedBy, long timePostedEpoch, int text) {
+        this.messageId = messageId;
+        this.postedBy = postedBy;
+        this.timePostedEpoch = timePostedEpoch;
+        this.text = text;
+    }
+
+    /**
+     * Copy a message into an entry, with its text in the arena.
+     */
+    static CachedMessage of(Message message, TextArena texts) {
+        return new CachedMessage(message.getMessage_id(), message.getPosted_by(), message.getTime_posted_epoch(),
+                texts.add(message.getMessage_text()));
+    }
+
+    /**
+     * @return the message, or null if the entry was released while its text was being read
+     */
+    Message decode(TextArena texts) {
+        String messageText = texts.get(text);
+        // The arena is read with plain loads, which must not be reordered after the check
+        VarHandle.acquireFence();
+        if (released) {
+            return null;
+        }
+        return new Message(messageId, postedBy, messageText, timePostedEpoch);
+    }
+
+    /**
+     * Give the text back to the arena once the entry has left the cache.
+     */
+    void release(TextArena texts) {
+        if (this != MISSING) {
+            released = true;
+            texts.free(text);
+        }
+    }
+}
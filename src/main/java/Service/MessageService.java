@@ -1,11 +1,27 @@
 package Service;
 
-import DAO.MessageDAO;
+import DAO.AccountStore;
+import DAO.GroupCommitWriter;
+import DAO.MessageStore;
+import DAO.MessageHandler;
+import DAO.StorageEngine;
 import Model.Message;
-
+import Model.MessageBatchResult;
+import Model.MessagePage;
+import Util.IntArrayList;
+import Util.IntBitmap;
+import Util.IntHashSet;
+import Util.TextArena;
+import Util.TinyLfuCache;
+import Util.UnitOfWork;
+
+import java.io.IOException;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The purpose of a Service class is to contain "business logic" that sits between the web layer (controller) and
@@ -18,65 +34,302 @@ import java.util.List;
  * readable and maintainable in the long run!
  */
 public class MessageService {
-    public MessageDAO messageDAO;
 
     /**
-     * No-args constructor for messageService which creates a MessageDAO.
-     * There is no need to change this constructor.
+     * Page size used when a client asks for a page without saying how large.
+     */
+    public static final int DEFAULT_PAGE_SIZE = 100;
+
+    /**
+     * Hard upper bound on the number of messages returned in one page, whatever the client asks for.
+     */
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    /**
+     * Maximum number of messages accepted in one call to createMessages.
+     */
+    public static final int MAX_BATCH_SIZE = 1000;
+
+    /**
+     * How long the absence of a message is remembered by the message cache.
+     */
+    private static final long NEGATIVE_CACHE_TTL_NANOS =
+            TimeUnit.MILLISECONDS.toNanos(Long.getLong("messages.cache.negativeTtlMillis", 1000L));
+
+    /**
+     * How long a cached message is served before it is read again, which bounds how stale an entry can get if an
+     * invalidation is ever missed.
+     */
+    private static final long CACHE_TTL_NANOS =
+            TimeUnit.SECONDS.toNanos(Long.getLong("messages.cache.ttlSeconds", 60L));
+
+    public MessageStore messageStore;
+    private AccountStore accountStore;
+
+    /**
+     * Every existing account_id, used to validate posted_by without a query. This is the accountStore's own bitmap,
+     * which its insertAccount keeps current; an id it does not hold is confirmed with the accountStore before a
+     * message is rejected. When null, posted_by is left to the foreign key alone.
+     */
+    private IntBitmap accountIds;
+
+    /**
+     * When set, createMessage hands inserts to this writer so that concurrent creations share one commit.
+     */
+    private GroupCommitWriter groupCommitWriter;
+
+    /**
+     * The message_text of every message in messageCache.
+     */
+    private final TextArena cachedTexts = new TextArena();
+
+    /**
+     * Messages by message_id, as compact CachedMessages whose text is in cachedTexts and is freed when they leave.
+     * CachedMessage.MISSING records that no message has that id, and expires after NEGATIVE_CACHE_TTL_NANOS so that
+     * scrapers requesting missing ids do not reach the database every time; a message expires after CACHE_TTL_NANOS.
+     * Sized with the system property messages.cache.maxSize.
+     */
+    private final TinyLfuCache<Integer, CachedMessage> messageCache =
+            new TinyLfuCache<>(Integer.getInteger("messages.cache.maxSize", 10000),
+                    (id, cached) -> cached.release(cachedTexts));
+
+    /**
+     * No-args constructor for messageService, which uses the stores of the engine chosen by StorageEngine.
+     * Group commit for createMessage is switched on with the system property messages.groupCommit.enabled, and tuned
+     * with messages.groupCommit.capacity, messages.groupCommit.maxBatch and messages.groupCommit.maxDelayMicros.
+     * The account ids used to validate posted_by are loaded here.
      */
     public MessageService(){
-        messageDAO = new MessageDAO();
+        messageStore = StorageEngine.messageStore();
+        accountStore = StorageEngine.accountStore();
+        accountIds = accountStore.loadAccountIds();
+        if (Boolean.getBoolean("messages.groupCommit.enabled")) {
+            groupCommitWriter = new GroupCommitWriter(messageStore,
+                    Integer.getInteger("messages.groupCommit.capacity", 4096),
+                    Integer.getInteger("messages.groupCommit.maxBatch", 64),
+                    Long.getLong("messages.groupCommit.maxDelayMicros", 200L));
+        }
     }
 
     /**
-     * Constructor for a MessageService when a MessageDAO is provided.
-     * This is used for when a mock MessageDAO that exhibits mock behavior is used in the test cases.
-     * This would allow the testing of MessageService independently of MessageDAO.
+     * Constructor for a MessageService when a MessageStore is provided.
+     * This is used for when a mock MessageStore that exhibits mock behavior is used in the test cases.
+     * This would allow the testing of MessageService independently of MessageStore.
      * There is no need to modify this constructor.
-     * @param messageDAO
+     * @param messageStore
      */
-    public MessageService(MessageDAO messageDAO){
-        this.messageDAO = messageDAO;
+    public MessageService(MessageStore messageStore){
+        this.messageStore = messageStore;
+        this.accountStore = StorageEngine.accountStore();
     }
 
+    /**
+     * Constructor for a MessageService when both a MessageStore and an AccountStore are provided, for example mocks.
+     * @param messageStore
+     * @param accountStore
+     */
+    public MessageService(MessageStore messageStore, AccountStore accountStore){
+        this.messageStore = messageStore;
+        this.accountStore = accountStore;
+    }
 
     /**
-     * Use the messageDAO to retrieve all messages.
+     * Constructor for a MessageService whose createMessage goes through the given group-commit writer.
+     * @param messageStore
+     * @param accountStore
+     * @param groupCommitWriter
+     */
+    public MessageService(MessageStore messageStore, AccountStore accountStore, GroupCommitWriter groupCommitWriter){
+        this.messageStore = messageStore;
+        this.accountStore = accountStore;
+        this.groupCommitWriter = groupCommitWriter;
+    }
+
+
+    /**
+     * Use the messageStore to retrieve all messages.
      * @return all messages.
      */
     public List<Message> getAllMessages() {
         
-        return messageDAO.getAllMessages();
+        return messageStore.getAllMessages();
 
     }
     
 
     /**
-     * Retrieve a Message by its ID using the MessageDAO
+     * Use the messageStore to hand every message to the handler as it is read, without building a list.
+     * @param handler receives each message in message_id order
+     * @return the number of messages handled
+     * @throws IOException if the handler fails, or the messages could not be read to the end
+     */
+    public int forEachMessage(MessageHandler handler) throws IOException {
+
+        return messageStore.forEachMessage(handler);
+
+    }
+
+
+    /**
+     * Use the messageStore to hand every message written by a particular user to the handler as it is read.
+     * @param handler receives each message ordered by time_posted_epoch, then message_id
+     * @return the number of messages handled
+     * @throws IOException if the handler fails, or the messages could not be read to the end
+     */
+    public int forEachMessageByAccountId(int accountId, MessageHandler handler) throws IOException {
+
+        return messageStore.forEachMessageByAccountId(accountId, handler);
+
+    }
+
+
+    /**
+     * Retrieve one page of all messages, ordered by message_id.
+     * @param limit the requested page size, clamped to between 1 and MAX_PAGE_SIZE
+     * @param cursor the next_cursor of the previous page, or null for the first page
+     * @return the page, with a next_cursor if more messages may follow
+     * @throws ServiceException if the cursor is malformed
+     */
+    public MessagePage getMessagesPage(int limit, String cursor) {
+
+        int afterMessageId = cursor == null ? 0 : PageCursor.decode(cursor).getMessageId();
+        int pageSize = clampPageSize(limit);
+
+        // Ask for one extra row so we know whether another page exists without a separate COUNT
+        List<Message> messages = messageStore.getMessagesAfter(afterMessageId, pageSize + 1);
+
+        return toPage(messages, pageSize);
+
+    }
+
+
+    /**
+     * Retrieve one page of the messages written by a particular user, ordered by time_posted_epoch then message_id.
+     * @param accountId the account whose messages are listed
+     * @param limit the requested page size, clamped to between 1 and MAX_PAGE_SIZE
+     * @param cursor the next_cursor of the previous page, or null for the first page
+     * @return the page, with a next_cursor if more messages may follow
+     * @throws ServiceException if the cursor is malformed
+     */
+    public MessagePage getMessagesPageByAccountId(int accountId, int limit, String cursor) {
+
+        PageCursor after = cursor == null ? new PageCursor(Long.MIN_VALUE, 0) : PageCursor.decode(cursor);
+        int pageSize = clampPageSize(limit);
+
+        List<Message> messages = messageStore.getMessagesByAccountIdAfter(accountId, after.getTimePostedEpoch(),
+                after.getMessageId(), pageSize + 1);
+
+        return toPage(messages, pageSize);
+
+    }
+
+
+    private static int clampPageSize(int limit) {
+        return Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+    }
+
+
+    /**
+     * Trim the extra look-ahead row off a page and turn the last remaining message into the next cursor.
+     */
+    private static MessagePage toPage(List<Message> messages, int pageSize) {
+
+        if ( messages.size() <= pageSize ) {
+            return new MessagePage(messages, null);
+        }
+
+        List<Message> page = messages.subList(0, pageSize);
+        Message last = page.get(pageSize - 1);
+        return new MessagePage(new ArrayList<>(page),
+                new PageCursor(last.getTime_posted_epoch(), last.getMessage_id()).encode());
+
+    }
+
+
+    /**
+     * Retrieve a Message by its ID using the MessageStore
      *
      * @param id The ID of the Message
-     * @return Optional containing the found Message
+     * @return the found Message, or null if there is none
      */
     public Message getMessageById(int id) {
 
-            Message message = messageDAO.getMessageById(id);
+            CachedMessage cached = messageCache.get(id);
+            if ( cached == CachedMessage.MISSING ) {
+                return null;
+            }
+            if ( cached != null ) {
+                Message message = cached.decode(cachedTexts);
+                // Null if the entry left the cache while it was being decoded, in which case read it again below
+                if ( message != null ) {
+                    return message;
+                }
+            }
+
+            // A write to this id that invalidates it while the row is being read makes the row unsafe to cache, since
+            // it may be the version the write replaced
+            long stamp = messageCache.invalidationStamp(id);
+            Message message = messageStore.getMessageById(id);
             
             if ( message == null ) {
+                messageCache.putIfNotInvalidated(id, CachedMessage.MISSING, NEGATIVE_CACHE_TTL_NANOS, stamp);
                 return null;
             }
 
+            CachedMessage entry = CachedMessage.of(message, cachedTexts);
+            if ( !messageCache.putIfNotInvalidated(id, entry, CACHE_TTL_NANOS, stamp) ) {
+                entry.release(cachedTexts);
+            }
             return message;
     
     }
 
 
+    /**
+     * @return the cache of messages by message_id, for monitoring its hit, miss and eviction counts.
+     */
+    public TinyLfuCache<Integer, CachedMessage> getMessageCache() {
+        return messageCache;
+    }
+
+
+    /**
+     * @return true if the account exists, from the account id bitmap or, for an account it does not hold such as one
+     *         registered by another process, from the accountStore, after which the bitmap holds it too
+     */
+    private boolean isExistingAccount(int accountId) {
+        if ( accountIds.contains(accountId) ) {
+            return true;
+        }
+        IntHashSet lookup = new IntHashSet(1);
+        lookup.add(accountId);
+        if ( accountStore.getExistingAccountIds(lookup).isEmpty() ) {
+            return false;
+        }
+        accountIds.add(accountId);
+        return true;
+    }
+
+
+    /**
+     * Drop a message from the cache now, and again once the current unit of work has finished. The second
+     * invalidation covers a concurrent reader that re-cached the old row before this transaction committed, and a
+     * reader whose read began before either invalidation cannot cache what it read, because its stamp no longer
+     * matches.
+     */
+    private void invalidateCachedMessage(int id) {
+        messageCache.invalidate(id);
+        UnitOfWork.afterCompletion(() -> messageCache.invalidate(id));
+    }
+
+
     /**
      * retrieve all messages written by a particular user
      * @return all messages written by a particular user
      */
     public List<Message> getMessagesByAccountId(int accountId) {
         
-        List<Message> messages = messageDAO.getMessagesByAccountId(accountId);
+        List<Message> messages = messageStore.getMessagesByAccountId(accountId);
 
         if ( messages == null ) {
             return new ArrayList<>();
@@ -88,7 +341,7 @@ public class MessageService {
 
 
     /**
-     * Use the messageDAO to persist a message to the database.
+     * Use the messageStore to persist a message to the database.
      * As a user, I should be able to submit a new post on the endpoint POST localhost:8080/messages. 
      * The request body will contain a JSON representation of a message, which should be persisted to the database, 
      * but will not contain a message_id.
@@ -105,20 +358,113 @@ public class MessageService {
             return null;
         }
 
-        // Check for message Posted By already exists
-        Message messagePosted_byExists = messageDAO.getMessagePosted_by( message.getPosted_by() );
+        // posted_by must refer to a real, existing user, which the account id bitmap answers from memory. The foreign
+        // key on posted_by still enforces this, and insertMessage returns null when it is violated.
+        if( accountIds != null && !isExistingAccount(message.getPosted_by()) ) {
+            return null;
+        }
+
+        // If all above conditions are met, the response body should contain a JSON of the Message
+        if ( groupCommitWriter != null ) {
+
+            // Wait for the shared commit, so the caller still only responds once the message is durable
+            try {
+                return cacheCreated(groupCommitWriter.submit(message).join());
+            } catch (CompletionException e) {
+                throw new ServiceException("The message could not be stored", e.getCause());
+            }
+
+        }
 
-        // If all above conditions are met, the response body should contain a JSON of the Account
-        if ( messagePosted_byExists != null ) {
+        return cacheCreated(messageStore.insertMessage(message));
+    }
+
+
+    /**
+     * Forget any cached absence of a newly created message's id.
+     * @return the created message, unchanged
+     */
+    private Message cacheCreated(Message created) {
+        if ( created != null ) {
+            invalidateCachedMessage(created.getMessage_id());
+        }
+        return created;
+    }
 
-            Message persistedMessage =  messageDAO.insertMessage(message);
 
-            return persistedMessage;
+    /**
+     * Persist a batch of new messages, validating each one against the same rules as createMessage.
+     * The posted_by values of the whole batch are checked against the account id bitmap, and with one query for any the
+     * bitmap does not hold, and every valid message is inserted in one JDBC batch and one transaction.
+     * @param messages the new messages, without message_ids
+     * @return one result per message, in the same order, holding either the persisted message or the reason it was
+     *         rejected
+     * @throws ServiceException if the batch is larger than MAX_BATCH_SIZE, or the valid messages could not be stored
+     */
+    public List<MessageBatchResult> createMessages(List<Message> messages) {
 
+        if ( messages.size() > MAX_BATCH_SIZE ) {
+            throw new ServiceException("A batch may contain at most " + MAX_BATCH_SIZE + " messages");
         }
 
-        // Return null if  Posted By user does not exist & message is not added to database
-        return null;
+        MessageBatchResult[] results = new MessageBatchResult[messages.size()];
+
+        // Check for the message_text is not blank, is not over 255 characters
+        IntHashSet postedBy = new IntHashSet(messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            Message message = messages.get(i);
+            String text = message.getMessage_text();
+            if ( text == null || text.isBlank() || text.length() > 255 ) {
+                results[i] = MessageBatchResult.rejected("message_text must be between 1 and 255 characters");
+            } else {
+                postedBy.add(message.getPosted_by());
+            }
+        }
+
+        // Check every posted_by refers to a real, existing user, from the account id bitmap, and with one query for
+        // the whole batch for any ids the bitmap does not hold
+        IntHashSet unknownAccounts = postedBy;
+        if ( accountIds != null ) {
+            unknownAccounts = new IntHashSet();
+            for (int accountId : postedBy.toArray()) {
+                if ( !accountIds.contains(accountId) ) {
+                    unknownAccounts.add(accountId);
+                }
+            }
+        }
+        IntHashSet existingAccounts = unknownAccounts.isEmpty()
+                ? unknownAccounts : accountStore.getExistingAccountIds(unknownAccounts);
+        if ( accountIds != null ) {
+            for (int accountId : existingAccounts.toArray()) {
+                accountIds.add(accountId);
+            }
+        }
+        IntArrayList validIndexes = new IntArrayList(messages.size());
+        List<Message> valid = new ArrayList<>();
+        for (int i = 0; i < messages.size(); i++) {
+            if ( results[i] != null ) {
+                continue;
+            }
+            int accountId = messages.get(i).getPosted_by();
+            if ( !existingAccounts.contains(accountId) && (accountIds == null || !accountIds.contains(accountId)) ) {
+                results[i] = MessageBatchResult.rejected("posted_by does not refer to an existing account");
+            } else {
+                validIndexes.add(i);
+                valid.add(messages.get(i));
+            }
+        }
+
+        if ( !valid.isEmpty() ) {
+            List<Message> persisted = messageStore.insertMessages(valid);
+            if ( persisted == null ) {
+                throw new ServiceException("The batch could not be stored");
+            }
+            for (int i = 0; i < persisted.size(); i++) {
+                results[validIndexes.get(i)] = MessageBatchResult.created(cacheCreated(persisted.get(i)));
+            }
+        }
+
+        return Arrays.asList(results);
     }
 
 
@@ -133,26 +479,28 @@ public class MessageService {
             return null;
         }
 
-        // Retrieve the existing message by its ID
-        Message retrievedMessage = this.getMessageById(id);
-
-        // Check if the message exists
-        if ( retrievedMessage == null ) {
-            return null;
+        // updateMessageById returns null if the message does not exist
+        Message updated = messageStore.updateMessageById(id, message);
+        if ( updated != null ) {
+            invalidateCachedMessage(id);
         }
-
-        return messageDAO.updateMessageById(id, message);
+        return updated;
         
     }
     
 
     /**
      * delete a message by its ID
+     * @return the deleted message, or null if there was no message with that ID
      */
-    public void deleteMessageById(int id) {
+    public Message deleteMessageById(int id) {
         
         // delete a message by its ID
-        boolean hasDeletedMessage = messageDAO.deleteMessageById(id);
+        Message deleted = messageStore.deleteMessageById(id);
+        if ( deleted != null ) {
+            invalidateCachedMessage(id);
+        }
+        return deleted;
 
     }
     
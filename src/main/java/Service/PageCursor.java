@@ -0,0 +1,57 @@
+package Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * PageCursor is the position of the last message on a page of a keyset-paginated listing. The next page starts
+ * strictly after this position, so a page is found with an index seek rather than by skipping rows with OFFSET.
+ *
+ * Clients only ever see the cursor in its encoded form and pass it back unchanged; the encoding is not part of the
+ * API contract.
+ */
+public class PageCursor {
+    private final long timePostedEpoch;
+    private final int messageId;
+
+    public PageCursor(long timePostedEpoch, int messageId) {
+        this.timePostedEpoch = timePostedEpoch;
+        this.messageId = messageId;
+    }
+
+    public long getTimePostedEpoch() {
+        return timePostedEpoch;
+    }
+
+    public int getMessageId() {
+        return messageId;
+    }
+
+    /**
+     * @return an opaque, URL-safe representation of this cursor
+     */
+    public String encode() {
+        String raw = timePostedEpoch + ":" + messageId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decode a cursor previously produced by encode().
+     * @param encoded the opaque cursor supplied by the client
+     * @return the decoded cursor
+     * @throws ServiceException if the cursor is malformed
+     */
+    public static PageCursor decode(String encoded) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(encoded), StandardCharsets.UTF_8);
+            int separator = raw.indexOf(':');
+            if (separator < 0) {
+                throw new ServiceException("Malformed cursor: " + encoded);
+            }
+            return new PageCursor(Long.parseLong(raw.substring(0, separator)),
+                    Integer.parseInt(raw.substring(separator + 1)));
+        } catch (IllegalArgumentException e) {
+            throw new ServiceException("Malformed cursor: " + encoded, e);
+        }
+    }
+}
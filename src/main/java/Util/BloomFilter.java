@@ -0,0 +1,106 @@
+package Util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread-safe Bloom filter of strings.
+ *
+ * mightContain() never returns false for a string that was put() into the filter, but may return true for one that
+ * was not, with a probability close to the false positive rate the filter was sized for (as long as no more than
+ * the expected number of strings are added). Bits are set with compare-and-set, so concurrent put() and
+ * mightContain() calls need no locking.
+ */
+public class BloomFilter {
+
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashCount;
+
+    /**
+     * @param expectedInsertions  the number of strings the filter is sized for
+     * @param falsePositiveRate   the acceptable false positive rate at that size, between 0 and 1
+     */
+    public BloomFilter(long expectedInsertions, double falsePositiveRate) {
+        if (expectedInsertions < 1 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("Invalid Bloom filter sizing");
+        }
+        // Optimal sizing: m = -n ln p / (ln 2)^2 bits and k = (m / n) ln 2 hash functions
+        long optimalBits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        int words = (int) Math.min(Integer.MAX_VALUE - 8, (optimalBits + 63) / 64);
+        this.bits = new AtomicLongArray(words);
+        this.bitCount = (long) words * 64;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedInsertions * Math.log(2)));
+    }
+
+    /**
+     * Add a string to the filter.
+     */
+    public void put(String value) {
+        long hash = hash64(value);
+        long step = (hash >>> 32) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = index(hash + i * step);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current;
+            while (((current = bits.get(word)) & mask) == 0) {
+                if (bits.compareAndSet(word, current, current | mask)) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return false if the string has definitely never been added, true if it probably has
+     */
+    public boolean mightContain(String value) {
+        long hash = hash64(value);
+        long step = (hash >>> 32) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = index(hash + i * step);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of hash functions used per string
+     */
+    public int getHashCount() {
+        return hashCount;
+    }
+
+    /**
+     * @return the size of the filter in bits
+     */
+    public long getBitCount() {
+        return bitCount;
+    }
+
+    /**
+     * Map one of the double-hashed (Kirsch-Mitzenmacher) values to a bit position.
+     */
+    private long index(long combinedHash) {
+        return (combinedHash & Long.MAX_VALUE) % bitCount;
+    }
+
+    /**
+     * 64-bit FNV-1a over the string's characters, finished with a MurmurHash3 mixer.
+     */
+    private static long hash64(String value) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,325 @@
+package Util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+/**
+ * A bounded pool of JDBC connections sitting in front of a DataSource.
+ *
+ * Callers borrow a connection with getConnection() and hand it back by calling close() on it, so DAO code can use
+ * the usual try-with-resources block. At most maxSize physical connections are ever open; a caller that cannot get
+ * one within acquireTimeoutMillis receives an SQLException instead of blocking forever.
+ *
+ * A background housekeeping thread closes connections that have been idle longer than idleTimeoutMillis (while
+ * keeping at least minSize open), and reports any connection that has been borrowed for longer than
+ * leakThresholdMillis together with the stack trace of the code that borrowed it. Capturing that stack trace costs a
+ * Throwable on every borrow, so leak detection is meant for debugging and is off when leakThresholdMillis is 0.
+ */
+public class ConnectionPool {
+
+    /**
+     * Number of seconds a connection is given to answer Connection.isValid() before it is discarded.
+     */
+    private static final int VALIDATION_TIMEOUT_SECONDS = 1;
+
+    private final DataSource dataSource;
+    private final int minSize;
+    private final int maxSize;
+    private final long acquireTimeoutMillis;
+    private final long idleTimeoutMillis;
+    private final long leakThresholdMillis;
+
+    /**
+     * One permit per connection that may still be handed out.
+     */
+    private final Semaphore permits;
+
+    /**
+     * Physical connections that are open but not currently borrowed, most recently returned first.
+     */
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+
+    /**
+     * Physical connections that are currently borrowed.
+     */
+    private final Map<PooledConnection, Boolean> borrowed = new ConcurrentHashMap<>();
+
+    private final AtomicInteger totalConnections = new AtomicInteger();
+    private final AtomicInteger waitingThreads = new AtomicInteger();
+    private final AtomicLong acquiredCount = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong evictedCount = new AtomicLong();
+    private final AtomicLong leakCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    private final ScheduledExecutorService housekeeper;
+
+    /**
+     * @param dataSource           the source of physical connections
+     * @param minSize              the number of connections kept open even when idle
+     * @param maxSize              the maximum number of connections open at any time
+     * @param acquireTimeoutMillis how long getConnection() waits for a free connection
+     * @param idleTimeoutMillis    how long a connection may sit idle before it is closed
+     * @param leakThresholdMillis  how long a connection may be borrowed before it is reported as leaked,
+     *                             or 0 to disable leak detection
+     */
+    public ConnectionPool(DataSource dataSource, int minSize, int maxSize, long acquireTimeoutMillis,
+                          long idleTimeoutMillis, long leakThresholdMillis) {
+        if (minSize < 0 || maxSize < 1 || minSize > maxSize) {
+            throw new IllegalArgumentException("Invalid pool size: min=" + minSize + ", max=" + maxSize);
+        }
+        this.dataSource = dataSource;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.leakThresholdMillis = leakThresholdMillis;
+        this.permits = new Semaphore(maxSize, true);
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "connection-pool-housekeeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(100, Math.min(idleTimeoutMillis, leakThresholdMillis > 0 ? leakThresholdMillis : Long.MAX_VALUE) / 2);
+        housekeeper.scheduleWithFixedDelay(this::housekeep, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Borrow a connection from the pool. The connection must be closed by the caller to return it to the pool.
+     * @return a validated connection to the database
+     * @throws SQLException if no connection became available within the acquire timeout, or one could not be opened
+     */
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        waitingThreads.incrementAndGet();
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        } finally {
+            waitingThreads.decrementAndGet();
+        }
+
+        long waited = System.nanoTime() - start;
+        totalWaitNanos.addAndGet(waited);
+        maxWaitNanos.accumulateAndGet(waited, Math::max);
+
+        if (!acquired) {
+            timeoutCount.incrementAndGet();
+            throw new SQLException("Timed out after " + acquireTimeoutMillis + "ms waiting for a database connection ("
+                    + borrowed.size() + " of " + maxSize + " in use)");
+        }
+
+        try {
+            PooledConnection pooled = takeIdleOrCreate();
+            pooled.borrowedAt = System.currentTimeMillis();
+            pooled.borrowedBy = leakThresholdMillis > 0 ? new Throwable("Connection borrowed here") : null;
+            pooled.leakReported = false;
+            borrowed.put(pooled, Boolean.TRUE);
+            acquiredCount.incrementAndGet();
+            return pooled.newHandle();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * @return a point-in-time snapshot of the pool's size and saturation counters.
+     */
+    public PoolStats getStats() {
+        return new PoolStats(maxSize, totalConnections.get(), borrowed.size(), idle.size(), waitingThreads.get(),
+                acquiredCount.get(), timeoutCount.get(), createdCount.get(), evictedCount.get(), leakCount.get(),
+                TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.get()), TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get()));
+    }
+
+    /**
+     * Close every idle connection and stop the housekeeping thread. Borrowed connections are closed as they are
+     * returned.
+     */
+    public void shutdown() {
+        housekeeper.shutdownNow();
+        PooledConnection pooled;
+        while ((pooled = idle.poll()) != null) {
+            discard(pooled);
+        }
+    }
+
+    private PooledConnection takeIdleOrCreate() throws SQLException {
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            if (isUsable(pooled.physical)) {
+                return pooled;
+            }
+            discard(pooled);
+        }
+        Connection physical = dataSource.getConnection();
+        totalConnections.incrementAndGet();
+        createdCount.incrementAndGet();
+        return new PooledConnection(physical);
+    }
+
+    private boolean isUsable(Connection connection) {
+        try {
+            return !connection.isClosed() && connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Return a borrowed connection to the pool, resetting any per-borrower state on the way.
+     */
+    private void release(PooledConnection pooled) {
+        if (borrowed.remove(pooled) == null) {
+            return;
+        }
+        try {
+            Connection physical = pooled.physical;
+            if (!physical.getAutoCommit()) {
+                physical.rollback();
+                physical.setAutoCommit(true);
+            }
+            pooled.lastReturnedAt = System.currentTimeMillis();
+            pooled.borrowedBy = null;
+            if (housekeeper.isShutdown()) {
+                discard(pooled);
+            } else {
+                idle.offerFirst(pooled);
+            }
+        } catch (SQLException e) {
+            System.out.println(e.getMessage());
+            discard(pooled);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void discard(PooledConnection pooled) {
+        totalConnections.decrementAndGet();
+        try {
+            pooled.physical.close();
+        } catch (SQLException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Evict connections that have been idle too long and report connections that look leaked.
+     */
+    private void housekeep() {
+        long now = System.currentTimeMillis();
+
+        // The deque is ordered most recently returned first, so the stalest connections sit at the tail.
+        Iterator<PooledConnection> stalest = idle.descendingIterator();
+        while (stalest.hasNext() && totalConnections.get() > minSize) {
+            PooledConnection pooled = stalest.next();
+            if (now - pooled.lastReturnedAt < idleTimeoutMillis) {
+                break;
+            }
+            if (idle.remove(pooled)) {
+                evictedCount.incrementAndGet();
+                discard(pooled);
+            }
+        }
+
+        if (leakThresholdMillis > 0) {
+            for (PooledConnection pooled : borrowed.keySet()) {
+                Throwable borrowedBy = pooled.borrowedBy;
+                if (!pooled.leakReported && borrowedBy != null && now - pooled.borrowedAt > leakThresholdMillis) {
+                    pooled.leakReported = true;
+                    leakCount.incrementAndGet();
+                    System.out.println("Possible connection leak: connection borrowed for "
+                            + (now - pooled.borrowedAt) + "ms");
+                    borrowedBy.printStackTrace(System.out);
+                }
+            }
+        }
+    }
+
+    /**
+     * Book-keeping for one physical connection owned by the pool.
+     */
+    private class PooledConnection {
+        final Connection physical;
+        volatile long borrowedAt;
+        volatile long lastReturnedAt = System.currentTimeMillis();
+        volatile Throwable borrowedBy;
+        volatile boolean leakReported;
+
+        PooledConnection(Connection physical) {
+            this.physical = physical;
+        }
+
+        /**
+         * A fresh proxy is handed to each borrower, so a stale reference kept after close() cannot touch the
+         * physical connection once somebody else has borrowed it.
+         */
+        Connection newHandle() {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, new Handle(this));
+        }
+    }
+
+    /**
+     * Forwards every call to the physical connection, except close() which returns it to the pool.
+     */
+    private class Handle implements InvocationHandler {
+        private final PooledConnection pooled;
+        private boolean closed;
+
+        Handle(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        release(pooled);
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || pooled.physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + pooled.physical + (closed ? ", returned" : "") + "]";
+                default:
+                    if (closed) {
+                        throw new SQLException("Connection has already been returned to the pool");
+                    }
+                    try {
+                        return method.invoke(pooled.physical, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+            }
+        }
+    }
+}
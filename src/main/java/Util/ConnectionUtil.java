@@ -1,7 +1,7 @@
 package Util;
 
-import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.SQLException;
 
@@ -13,15 +13,20 @@ import org.h2.tools.RunScript;
  * our database. This class utilizes the singleton design pattern. We will be
  * utilizing an in-memory called h2database for the sql demos.
  *
- * DO NOT CHANGE ANYTHING IN THIS CLASS
+ * Connections are borrowed from a bounded ConnectionPool. Callers must close the connection they receive (ideally
+ * with a try-with-resources block), which returns it to the pool rather than closing the physical connection.
+ * The pool can be tuned with the system properties db.pool.minSize, db.pool.maxSize, db.pool.acquireTimeoutMillis,
+ * db.pool.idleTimeoutMillis and db.pool.leakThresholdMillis. Leak detection records a stack trace on every borrow,
+ * so it stays off unless db.pool.leakThresholdMillis is set.
  */
 public class ConnectionUtil {
 
 	/**
 	 * url will represent our connection string. Since this is an in-memory db, we
-	 * will represent a file location to store the data
+	 * will represent a file location to store the data. The system property db.url points it elsewhere, for example
+	 * at a private in-memory database for benchmarks.
 	 */
-	private static String url = "jdbc:h2:./h2/db;";
+	private static String url = System.getProperty("db.url", "jdbc:h2:./h2/db;");
 	/**
 	 * Default username for connecting to h2
 	 */
@@ -32,42 +37,83 @@ public class ConnectionUtil {
 	private static String password = "sa";
 
 	/**
-	 * DataSource for pooling. Pooling enables the creation of multiple connections when connections are closed.
+	 * DataSource that opens the physical connections handed out by the pool.
 	 */
-	private static JdbcDataSource pool = new JdbcDataSource();
+	private static JdbcDataSource dataSource = new JdbcDataSource();
 
 	/**
-	 * static initialization block to establish credentials for DataSoure Pool
+	 * Bounded pool of connections shared by every DAO.
+	 */
+	private static ConnectionPool pool;
+
+	/**
+	 * static initialization block to establish credentials for the DataSource and size the pool
 	 */
 	static {
-		pool.setURL(url);
-		pool.setUser(username);
-		pool.setPassword(password);
+		dataSource.setURL(url);
+		dataSource.setUser(username);
+		dataSource.setPassword(password);
+
+		pool = new ConnectionPool(dataSource,
+				Integer.getInteger("db.pool.minSize", 2),
+				Integer.getInteger("db.pool.maxSize", 10),
+				Long.getLong("db.pool.acquireTimeoutMillis", 5000L),
+				Long.getLong("db.pool.idleTimeoutMillis", 60000L),
+				Long.getLong("db.pool.leakThresholdMillis", 0L));
 	}
 
 	/**
+	 * Borrow a connection from the pool. Closing the returned connection hands it back to the pool.
+	 *
+	 * If a UnitOfWork is active on the current thread, its connection is returned instead; closing it does nothing
+	 * and the work is committed when the unit of work ends.
 	 * @return an active connection to the database
+	 * @throws SQLException if no connection became available before the pool's acquire timeout
 	 */
-	public static Connection getConnection() {
-		try {
-			return pool.getConnection();
-		} catch (SQLException e) {
-			e.printStackTrace();
+	public static Connection getConnection() throws SQLException {
+		UnitOfWork unitOfWork = UnitOfWork.current();
+		if (unitOfWork != null) {
+			return unitOfWork.getConnection(pool);
 		}
+		return pool.getConnection();
+	}
 
-		return null;
+	/**
+	 * @return a snapshot of the connection pool's size and saturation counters
+	 */
+	public static PoolStats getPoolStats() {
+		return pool.getStats();
 	}
 
+	/**
+	 * The test fixture's rows as SocialMedia.sql left them, or null until the script has first been run.
+	 */
+	private static DatabaseSnapshot fixture;
+
 	/**
 	 * For the purpose of testing, we will need to drop and recreate our database
 	 * tables to keep it consistent across all tests. The method will read the sql
 	 * file in resources. This will be performed before every test.
+	 *
+	 * The script is only run the first time; the rows it leaves behind are captured in a DatabaseSnapshot, and every
+	 * later reset restores that snapshot instead, which is much faster than re-parsing and re-running the DDL. If
+	 * restoring fails (for example because a test changed the schema), the script is run again.
 	 */
-	public static void resetTestDatabase() {
-		try {
-			FileReader sqlReader = new FileReader("src/main/resources/SocialMedia.sql");
-			RunScript.execute(getConnection(), sqlReader);
-		} catch (SQLException | FileNotFoundException e) {
+	public static synchronized void resetTestDatabase() {
+		try (Connection connection = getConnection()) {
+			if (fixture != null) {
+				try {
+					fixture.restore(connection);
+					return;
+				} catch (SQLException e) {
+					fixture = null;
+				}
+			}
+			try (FileReader sqlReader = new FileReader("src/main/resources/SocialMedia.sql")) {
+				RunScript.execute(connection, sqlReader);
+			}
+			fixture = DatabaseSnapshot.capture(connection);
+		} catch (SQLException | IOException e) {
 			e.printStackTrace();
 		}
 	}
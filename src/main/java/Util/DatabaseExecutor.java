@@ -0,0 +1,110 @@
+package Util;
+
+import java.sql.SQLException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A bulkhead for database work: a fixed number of threads, normally as many as the connection pool has connections,
+ * in front of a bounded queue.
+ *
+ * Handlers hand their DAO work here instead of running it on the web server's thread, so a saturated database only
+ * ties up these threads while cheap requests keep being served. Once the queue is full, submit() fails straight away
+ * with a RejectedExecutionException rather than letting requests pile up waiting for a connection.
+ */
+public class DatabaseExecutor {
+
+    /**
+     * A piece of database work, which may throw anything a request handler may throw.
+     */
+    public interface Work {
+        void run() throws Exception;
+    }
+
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * @param threads        the number of threads running database work, normally the connection pool's maximum size
+     * @param queueCapacity  how many submissions may wait for a thread before further ones are rejected
+     */
+    public DatabaseExecutor(int threads, int queueCapacity) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        ThreadFactory factory = task -> {
+            Thread thread = new Thread(task, "db-executor-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), factory, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Run the work on one of the executor's threads, inside the given unit of work. The unit of work is resumed on
+     * that thread and ended there once the work has finished, rolling back if the work threw, so the transaction is
+     * committed before the returned future completes. If the commit fails, the future completes exceptionally.
+     * @param unit  a unit of work detached from the calling thread, or null to run the work without one
+     * @param work  the database work
+     * @return a future completed once the work has finished and its unit of work has ended
+     * @throws RejectedExecutionException if the queue is full; the unit of work has then been ended already
+     */
+    public CompletableFuture<Void> submit(UnitOfWork unit, Work work) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                Throwable failure = null;
+                if (unit != null) {
+                    unit.resume();
+                }
+                try {
+                    work.run();
+                } catch (Throwable t) {
+                    failure = t;
+                    if (unit != null) {
+                        unit.setRollbackOnly();
+                    }
+                } finally {
+                    if (unit != null && !unit.end() && failure == null) {
+                        failure = new SQLException("The transaction could not be committed");
+                    }
+                }
+                if (failure == null) {
+                    future.complete(null);
+                } else {
+                    future.completeExceptionally(failure);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            if (unit != null) {
+                unit.end();
+            }
+            throw e;
+        }
+        return future;
+    }
+
+    /**
+     * @return the number of submissions waiting for a thread
+     */
+    public int getQueued() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * @return the number of threads currently running database work
+     */
+    public int getActive() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * Stop accepting work. Work already submitted still runs.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
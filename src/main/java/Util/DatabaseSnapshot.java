@@ -0,0 +1,155 @@
+package Util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An in-memory copy of every row in the database's tables, which can be written back to reset the tables to the
+ * state they were in when the snapshot was taken.
+ *
+ * Restoring truncates each table and re-inserts the captured rows with their original ids, then restarts each
+ * identity column just past the largest captured id, so rows inserted afterwards get the same ids they would have
+ * had straight after the snapshot. It only touches rows: the schema must be the same as when the snapshot was taken.
+ */
+public class DatabaseSnapshot {
+
+    /**
+     * The rows of one table.
+     */
+    private static class TableRows {
+        final String table;
+        final List<String> columns;
+        final String identityColumn;
+        final List<Object[]> rows;
+
+        TableRows(String table, List<String> columns, String identityColumn, List<Object[]> rows) {
+            this.table = table;
+            this.columns = columns;
+            this.identityColumn = identityColumn;
+            this.rows = rows;
+        }
+    }
+
+    private final List<TableRows> tables;
+
+    private DatabaseSnapshot(List<TableRows> tables) {
+        this.tables = tables;
+    }
+
+    /**
+     * Copy every row of every table in the PUBLIC schema.
+     */
+    public static DatabaseSnapshot capture(Connection connection) throws SQLException {
+        List<TableRows> tables = new ArrayList<>();
+        for (String table : tableNames(connection)) {
+            try (Statement statement = connection.createStatement();
+                 ResultSet rs = statement.executeQuery("SELECT * FROM " + table)) {
+                ResultSetMetaData meta = rs.getMetaData();
+                List<String> columns = new ArrayList<>();
+                for (int i = 1; i <= meta.getColumnCount(); i++) {
+                    columns.add(meta.getColumnName(i));
+                }
+                List<Object[]> rows = new ArrayList<>();
+                while (rs.next()) {
+                    Object[] row = new Object[columns.size()];
+                    for (int i = 0; i < row.length; i++) {
+                        row[i] = rs.getObject(i + 1);
+                    }
+                    rows.add(row);
+                }
+                tables.add(new TableRows(table, Collections.unmodifiableList(columns),
+                        identityColumn(connection, table), rows));
+            }
+        }
+        return new DatabaseSnapshot(tables);
+    }
+
+    /**
+     * Replace the contents of every captured table with the captured rows. TRUNCATE and ALTER TABLE commit as they
+     * go, so this is not atomic: if it fails part way through, restore again or rebuild the database.
+     */
+    public void restore(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            // Tables are emptied and refilled in no particular order, so foreign keys are checked by neither
+            statement.execute("SET REFERENTIAL_INTEGRITY FALSE");
+            try {
+                for (TableRows table : tables) {
+                    statement.executeUpdate("TRUNCATE TABLE " + table.table);
+                    insertRows(connection, table);
+                    if (table.identityColumn != null) {
+                        statement.executeUpdate("ALTER TABLE " + table.table + " ALTER COLUMN "
+                                + table.identityColumn + " RESTART WITH " + nextIdentity(table));
+                    }
+                }
+            } finally {
+                statement.execute("SET REFERENTIAL_INTEGRITY TRUE");
+            }
+        }
+    }
+
+    private static void insertRows(Connection connection, TableRows table) throws SQLException {
+        if (table.rows.isEmpty()) {
+            return;
+        }
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(table.table).append(" (")
+                .append(String.join(", ", table.columns)).append(") VALUES (");
+        for (int i = 0; i < table.columns.size(); i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(')');
+
+        try (PreparedStatement ps = connection.prepareStatement(sql.toString())) {
+            for (Object[] row : table.rows) {
+                for (int i = 0; i < row.length; i++) {
+                    ps.setObject(i + 1, row[i]);
+                }
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    /**
+     * @return one more than the largest captured value of the table's identity column, or 1 if it had no rows
+     */
+    private static long nextIdentity(TableRows table) {
+        int column = table.columns.indexOf(table.identityColumn);
+        long max = 0;
+        for (Object[] row : table.rows) {
+            max = Math.max(max, ((Number) row[column]).longValue());
+        }
+        return max + 1;
+    }
+
+    private static List<String> tableNames(Connection connection) throws SQLException {
+        List<String> tables = new ArrayList<>();
+        try (PreparedStatement ps = connection.prepareStatement("SELECT table_name FROM information_schema.tables "
+                + "WHERE table_schema = 'PUBLIC' AND table_type = 'BASE TABLE' ORDER BY table_name");
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                tables.add(rs.getString(1));
+            }
+        }
+        return tables;
+    }
+
+    /**
+     * @return the name of the table's identity (auto_increment) column, or null if it has none
+     */
+    private static String identityColumn(Connection connection, String table) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement("SELECT column_name FROM information_schema.columns "
+                + "WHERE table_schema = 'PUBLIC' AND table_name = ? AND is_identity = 'YES'")) {
+            ps.setString(1, table);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        }
+    }
+}
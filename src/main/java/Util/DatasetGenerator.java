@@ -0,0 +1,212 @@
+package Util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Fills the account and message tables with a synthetic dataset of realistic shape, for benchmarks and load tests.
+ *
+ * Accounts are named "user0", "user1", ... with the password "password", so account_id n belongs to "user(n-1)".
+ * The number of messages per account follows a Zipf distribution: the most active account posts the most, the
+ * second about 2^s times less, and so on, with the popular accounts scattered across the id range rather than
+ * clustered at the start. Message text lengths are drawn from an exponential distribution around a mean and capped
+ * at the column's 255 characters, and time_posted_epoch is spread uniformly over the given number of years.
+ *
+ * Rows are loaded with JDBC batches, committed every COMMIT_EVERY rows so that the undo log stays bounded. The foreign
+ * key from message to account stays on throughout; every posted_by is generated from the loaded account ids, so it
+ * costs a primary key lookup per message and never fails.
+ */
+public class DatasetGenerator {
+
+    private static final int BATCH_SIZE = 10000;
+    private static final int COMMIT_EVERY = 100000;
+    private static final int MAX_TEXT_LENGTH = 255;
+    private static final long SECONDS_PER_YEAR = 365L * 24 * 60 * 60;
+
+    private final int accounts;
+    private final long messages;
+    private final double zipfExponent;
+    private final int meanTextLength;
+    private final int years;
+    private final long seed;
+
+    /**
+     * A generator with a Zipf exponent of 1.1, a mean text length of 80 characters, five years of messages ending
+     * now, and a fixed random seed.
+     */
+    public DatasetGenerator(int accounts, long messages) {
+        this(accounts, messages, 1.1, 80, 5, 42L);
+    }
+
+    /**
+     * @param accounts        number of accounts to create
+     * @param messages        number of messages to create; requires at least one account if not 0
+     * @param zipfExponent    skew of messages per account; 0 spreads them evenly, larger values concentrate them
+     * @param meanTextLength  mean message text length, between 1 and 255
+     * @param years           how many years back from now time_posted_epoch is spread over
+     * @param seed            random seed, so that the same arguments always generate the same dataset
+     */
+    public DatasetGenerator(int accounts, long messages, double zipfExponent, int meanTextLength, int years,
+                            long seed) {
+        if (accounts < 0 || messages < 0 || (messages > 0 && accounts == 0)) {
+            throw new IllegalArgumentException("Messages need at least one account to post them");
+        }
+        if (meanTextLength < 1 || meanTextLength > MAX_TEXT_LENGTH || zipfExponent < 0 || years < 0) {
+            throw new IllegalArgumentException("Invalid dataset shape");
+        }
+        this.accounts = accounts;
+        this.messages = messages;
+        this.zipfExponent = zipfExponent;
+        this.meanTextLength = meanTextLength;
+        this.years = years;
+        this.seed = seed;
+    }
+
+    /**
+     * Replace the contents of the account and message tables with the generated dataset. The connection's
+     * auto-commit setting is restored afterwards.
+     *
+     * The load is not atomic: the tables are cleared and the rows committed in several transactions (and H2 commits
+     * the ALTER TABLE statements that restart the ids on its own). If it fails, only the rows since the last commit
+     * are rolled back, so the tables may hold part of the dataset; generating again clears them first.
+     */
+    public void generate(Connection connection) throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try {
+            clear(connection);
+            insertAccounts(connection);
+            insertMessages(connection);
+            connection.commit();
+        } catch (SQLException e) {
+            // Only discards the rows since the last commit, see above
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    private void clear(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("DELETE FROM message");
+            statement.executeUpdate("DELETE FROM account");
+            statement.executeUpdate("ALTER TABLE account ALTER COLUMN account_id RESTART WITH 1");
+            statement.executeUpdate("ALTER TABLE message ALTER COLUMN message_id RESTART WITH 1");
+        }
+        connection.commit();
+    }
+
+    private void insertAccounts(Connection connection) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(
+                "INSERT INTO account (username, password) VALUES (?, ?)")) {
+            for (int i = 0; i < accounts; i++) {
+                ps.setString(1, "user" + i);
+                ps.setString(2, "password");
+                ps.addBatch();
+                flush(connection, ps, i + 1);
+            }
+            ps.executeBatch();
+        }
+        connection.commit();
+    }
+
+    private void insertMessages(Connection connection) throws SQLException {
+        if (messages == 0) {
+            return;
+        }
+        SplittableRandom random = new SplittableRandom(seed);
+        double[] zipf = zipfCumulative();
+        int[] accountByRank = shuffledAccountIds(random);
+        String text = randomText(random);
+        long newest = System.currentTimeMillis() / 1000;
+        long span = Math.max(1, years * SECONDS_PER_YEAR);
+
+        try (PreparedStatement ps = connection.prepareStatement(
+                "INSERT INTO message (posted_by, message_text, time_posted_epoch) VALUES (?, ?, ?)")) {
+            for (long i = 0; i < messages; i++) {
+                int rank = Arrays.binarySearch(zipf, random.nextDouble());
+                rank = rank >= 0 ? rank : Math.min(-rank - 1, accounts - 1);
+                int length = textLength(random);
+                int offset = random.nextInt(text.length() - length);
+
+                ps.setInt(1, accountByRank[rank]);
+                ps.setString(2, text.substring(offset, offset + length));
+                ps.setLong(3, newest - random.nextLong(span));
+                ps.addBatch();
+                flush(connection, ps, i + 1);
+            }
+            ps.executeBatch();
+        }
+    }
+
+    /**
+     * Send the batch every BATCH_SIZE rows, and commit every COMMIT_EVERY rows so the undo log stays bounded.
+     */
+    private static void flush(Connection connection, PreparedStatement ps, long rows) throws SQLException {
+        if (rows % BATCH_SIZE == 0) {
+            ps.executeBatch();
+        }
+        if (rows % COMMIT_EVERY == 0) {
+            connection.commit();
+        }
+    }
+
+    /**
+     * @return the cumulative Zipf probabilities of ranks 1 to accounts, so that a uniform random number's insertion
+     *         point is a Zipf-distributed rank
+     */
+    private double[] zipfCumulative() {
+        double[] cumulative = new double[accounts];
+        double total = 0;
+        for (int k = 0; k < accounts; k++) {
+            total += 1.0 / Math.pow(k + 1, zipfExponent);
+            cumulative[k] = total;
+        }
+        for (int k = 0; k < accounts; k++) {
+            cumulative[k] /= total;
+        }
+        return cumulative;
+    }
+
+    /**
+     * @return every account id in random order, so that popularity is not correlated with id
+     */
+    private int[] shuffledAccountIds(SplittableRandom random) {
+        int[] ids = new int[accounts];
+        for (int i = 0; i < accounts; i++) {
+            ids[i] = i + 1;
+        }
+        for (int i = accounts - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = ids[i];
+            ids[i] = ids[j];
+            ids[j] = swap;
+        }
+        return ids;
+    }
+
+    private int textLength(SplittableRandom random) {
+        double length = -meanTextLength * Math.log(1 - random.nextDouble());
+        return (int) Math.max(1, Math.min(MAX_TEXT_LENGTH, Math.round(length)));
+    }
+
+    /**
+     * @return 64KB of random words, which message texts are cut from
+     */
+    private static String randomText(SplittableRandom random) {
+        StringBuilder text = new StringBuilder(65536 + MAX_TEXT_LENGTH + 16);
+        while (text.length() < 65536 + MAX_TEXT_LENGTH + 1) {
+            int wordLength = 1 + random.nextInt(10);
+            for (int i = 0; i < wordLength; i++) {
+                text.append((char) ('a' + random.nextInt(26)));
+            }
+            text.append(' ');
+        }
+        return text.toString();
+    }
+}
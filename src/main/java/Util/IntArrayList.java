@@ -0,0 +1,52 @@
+package Util;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of ints, backed by an int[] so that adding a value never boxes it. Not thread safe.
+ */
+public class IntArrayList {
+
+    private int[] values;
+    private int size;
+
+    public IntArrayList() {
+        this(8);
+    }
+
+    /**
+     * @param capacity how many values to make room for up front
+     */
+    public IntArrayList(int capacity) {
+        values = new int[Math.max(capacity, 1)];
+    }
+
+    public void add(int value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = value;
+    }
+
+    public int get(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        }
+        return values[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return a copy of the values, in the order they were added
+     */
+    public int[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+}
@@ -0,0 +1,135 @@
+package Util;
+
+import java.util.Arrays;
+
+/**
+ * A compressed set of ints, laid out like a Roaring bitmap.
+ *
+ * Values are split on their high 16 bits into chunks of 65536. Each chunk that holds any value is stored either as a
+ * sorted array of its low 16 bits (while it holds at most 4096 values) or as a 65536-bit bitmap (once it holds more).
+ * A dense run of ids therefore costs about one bit each, a sparse one about two bytes each, and contains() is a
+ * binary search over at most 65536 chunk keys followed by a bit test or a short binary search.
+ *
+ * All methods are synchronized, so a bitmap may be shared between threads.
+ */
+public class IntBitmap {
+
+    /**
+     * Largest number of values kept in an array chunk before it is converted to a bitmap chunk.
+     */
+    private static final int ARRAY_CHUNK_LIMIT = 4096;
+
+    /**
+     * High 16 bits of each chunk, sorted, in the first chunkCount slots.
+     */
+    private char[] keys = new char[4];
+
+    /**
+     * Each chunk's values: a char[] of sorted low 16 bits, or a long[1024] bitmap.
+     */
+    private Object[] chunks = new Object[4];
+
+    /**
+     * Number of values held by each array chunk; unused for bitmap chunks.
+     */
+    private int[] arraySizes = new int[4];
+
+    private int chunkCount;
+    private int cardinality;
+
+    /**
+     * Add a value to the set.
+     * @return true if the value was not already present
+     */
+    public synchronized boolean add(int value) {
+        char high = (char) (value >>> 16);
+        char low = (char) value;
+        int c = Arrays.binarySearch(keys, 0, chunkCount, high);
+        if (c < 0) {
+            c = insertChunk(-c - 1, high);
+        }
+
+        Object chunk = chunks[c];
+        if (chunk instanceof long[]) {
+            long[] bits = (long[]) chunk;
+            long mask = 1L << low;
+            if ((bits[low >>> 6] & mask) != 0) {
+                return false;
+            }
+            bits[low >>> 6] |= mask;
+            cardinality++;
+            return true;
+        }
+
+        char[] values = (char[]) chunk;
+        int size = arraySizes[c];
+        int i = Arrays.binarySearch(values, 0, size, low);
+        if (i >= 0) {
+            return false;
+        }
+        if (size == ARRAY_CHUNK_LIMIT) {
+            long[] bits = new long[1024];
+            for (int j = 0; j < size; j++) {
+                bits[values[j] >>> 6] |= 1L << values[j];
+            }
+            bits[low >>> 6] |= 1L << low;
+            chunks[c] = bits;
+            cardinality++;
+            return true;
+        }
+        i = -i - 1;
+        if (size == values.length) {
+            values = Arrays.copyOf(values, Math.min(ARRAY_CHUNK_LIMIT, size * 2));
+            chunks[c] = values;
+        }
+        System.arraycopy(values, i, values, i + 1, size - i);
+        values[i] = low;
+        arraySizes[c] = size + 1;
+        cardinality++;
+        return true;
+    }
+
+    /**
+     * @return true if the value is in the set
+     */
+    public synchronized boolean contains(int value) {
+        int c = Arrays.binarySearch(keys, 0, chunkCount, (char) (value >>> 16));
+        if (c < 0) {
+            return false;
+        }
+        char low = (char) value;
+        Object chunk = chunks[c];
+        if (chunk instanceof long[]) {
+            return (((long[]) chunk)[low >>> 6] & (1L << low)) != 0;
+        }
+        return Arrays.binarySearch((char[]) chunk, 0, arraySizes[c], low) >= 0;
+    }
+
+    /**
+     * @return the number of values in the set
+     */
+    public synchronized int getCardinality() {
+        return cardinality;
+    }
+
+    /**
+     * Open an empty array chunk for the given high bits at the given position in the sorted key array.
+     * @return the position of the new chunk
+     */
+    private int insertChunk(int position, char high) {
+        if (chunkCount == keys.length) {
+            int capacity = chunkCount * 2;
+            keys = Arrays.copyOf(keys, capacity);
+            chunks = Arrays.copyOf(chunks, capacity);
+            arraySizes = Arrays.copyOf(arraySizes, capacity);
+        }
+        System.arraycopy(keys, position, keys, position + 1, chunkCount - position);
+        System.arraycopy(chunks, position, chunks, position + 1, chunkCount - position);
+        System.arraycopy(arraySizes, position, arraySizes, position + 1, chunkCount - position);
+        keys[position] = high;
+        chunks[position] = new char[4];
+        arraySizes[position] = 0;
+        chunkCount++;
+        return position;
+    }
+}
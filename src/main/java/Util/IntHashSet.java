@@ -0,0 +1,128 @@
+package Util;
+
+/**
+ * A set of ints in an open-addressing hash table, so that adding and looking up a value never boxes it. Suited to
+ * the small, short-lived sets built while handling a request, such as the posted_by values of a batch; long-lived
+ * sets of many ids belong in an IntBitmap. Not thread safe.
+ */
+public class IntHashSet {
+
+    /**
+     * Marks an empty slot. The value itself is tracked by containsEmpty instead.
+     */
+    private static final int EMPTY = 0;
+
+    private int[] slots;
+    private int size;
+    private boolean containsEmpty;
+
+    public IntHashSet() {
+        this(8);
+    }
+
+    /**
+     * @param expected how many values the set should hold before it has to grow
+     */
+    public IntHashSet(int expected) {
+        slots = new int[tableSize(expected)];
+    }
+
+    /**
+     * @return true if the value was not already present
+     */
+    public boolean add(int value) {
+        if (value == EMPTY) {
+            if (containsEmpty) {
+                return false;
+            }
+            containsEmpty = true;
+            size++;
+            return true;
+        }
+        int mask = slots.length - 1;
+        for (int i = mix(value) & mask; ; i = (i + 1) & mask) {
+            if (slots[i] == value) {
+                return false;
+            }
+            if (slots[i] == EMPTY) {
+                slots[i] = value;
+                size++;
+                // Keep at most half the slots full, so probe runs stay short
+                if (size * 2 > slots.length) {
+                    rehash(slots.length * 2);
+                }
+                return true;
+            }
+        }
+    }
+
+    public boolean contains(int value) {
+        if (value == EMPTY) {
+            return containsEmpty;
+        }
+        int mask = slots.length - 1;
+        for (int i = mix(value) & mask; ; i = (i + 1) & mask) {
+            if (slots[i] == value) {
+                return true;
+            }
+            if (slots[i] == EMPTY) {
+                return false;
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return the values, in no particular order
+     */
+    public int[] toArray() {
+        int[] values = new int[size];
+        int n = 0;
+        if (containsEmpty) {
+            values[n++] = EMPTY;
+        }
+        for (int slot : slots) {
+            if (slot != EMPTY) {
+                values[n++] = slot;
+            }
+        }
+        return values;
+    }
+
+    private void rehash(int length) {
+        int[] old = slots;
+        slots = new int[length];
+        int mask = length - 1;
+        for (int value : old) {
+            if (value != EMPTY) {
+                int i = mix(value) & mask;
+                while (slots[i] != EMPTY) {
+                    i = (i + 1) & mask;
+                }
+                slots[i] = value;
+            }
+        }
+    }
+
+    /**
+     * Spread sequential ids across the table.
+     */
+    static int mix(int value) {
+        int h = value * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * @return the smallest power of two that holds expected values at most half full
+     */
+    static int tableSize(int expected) {
+        return Integer.highestOneBit(Math.max(expected, 2) * 2 - 1) << 1;
+    }
+}
@@ -0,0 +1,123 @@
+package Util;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntFunction;
+
+/**
+ * A map from int keys to objects in an open-addressing hash table, so that looking a key up never boxes it.
+ *
+ * Built for indexes that are read far more often than they gain keys, such as a storage engine's messages by
+ * posted_by: get() takes no lock, while put() and computeIfAbsent() are synchronized. A value is written to its slot
+ * only after its key, so a reader that finds a value also sees the key it belongs to, and the table is replaced
+ * rather than changed when it grows. A reader racing with put() of a new key may not see it yet. Keys are never
+ * removed, and null values are not allowed.
+ */
+public class IntObjectMap<V> {
+
+    private static final class Table<V> {
+        final int[] keys;
+        final AtomicReferenceArray<V> values;
+
+        Table(int length) {
+            keys = new int[length];
+            values = new AtomicReferenceArray<>(length);
+        }
+    }
+
+    private volatile Table<V> table;
+    private int size;
+
+    public IntObjectMap() {
+        this(16);
+    }
+
+    /**
+     * @param expected how many keys the map should hold before it has to grow
+     */
+    public IntObjectMap(int expected) {
+        table = new Table<>(IntHashSet.tableSize(expected));
+    }
+
+    /**
+     * @return the value for the key, or null if there is none
+     */
+    public V get(int key) {
+        Table<V> t = table;
+        int mask = t.keys.length - 1;
+        for (int i = IntHashSet.mix(key) & mask; ; i = (i + 1) & mask) {
+            V value = t.values.get(i);
+            if (value == null) {
+                return null;
+            }
+            if (t.keys[i] == key) {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * Set the value for a key.
+     * @return the previous value, or null if the key was new
+     */
+    public synchronized V put(int key, V value) {
+        if (value == null) {
+            throw new NullPointerException("IntObjectMap does not hold null values");
+        }
+        Table<V> t = table;
+        int mask = t.keys.length - 1;
+        int i = IntHashSet.mix(key) & mask;
+        for (V existing; (existing = t.values.get(i)) != null; i = (i + 1) & mask) {
+            if (t.keys[i] == key) {
+                t.values.set(i, value);
+                return existing;
+            }
+        }
+        t.keys[i] = key;
+        t.values.set(i, value);
+        size++;
+        if (size * 2 > t.keys.length) {
+            table = grow(t);
+        }
+        return null;
+    }
+
+    /**
+     * @return the value for the key, first creating it with the function if there is none. The function is called
+     *         at most once per key, under the map's lock.
+     */
+    public V computeIfAbsent(int key, IntFunction<V> create) {
+        V value = get(key);
+        if (value != null) {
+            return value;
+        }
+        synchronized (this) {
+            value = get(key);
+            if (value == null) {
+                value = create.apply(key);
+                put(key, value);
+            }
+            return value;
+        }
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private static <V> Table<V> grow(Table<V> old) {
+        Table<V> t = new Table<>(old.keys.length * 2);
+        int mask = t.keys.length - 1;
+        for (int j = 0; j < old.keys.length; j++) {
+            V value = old.values.get(j);
+            if (value != null) {
+                int i = IntHashSet.mix(old.keys[j]) & mask;
+                while (t.values.get(i) != null) {
+                    i = (i + 1) & mask;
+                }
+                t.keys[i] = old.keys[j];
+                t.values.set(i, value);
+            }
+        }
+        return t;
+    }
+}
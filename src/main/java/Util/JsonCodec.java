@@ -0,0 +1,130 @@
+package Util;
+
+import Model.Account;
+import Model.Message;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import io.javalin.json.JsonMapper;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The application's single JSON codec, registered as Javalin's JsonMapper so that ctx.json() uses it too.
+ *
+ * One ObjectMapper is configured once, and an ObjectReader and ObjectWriter is built once per type, up front for
+ * Message and Account and on first use for anything else. Readers and writers are immutable and thread-safe, so
+ * handlers share them instead of creating a mapper (and re-resolving its serializers) on every request.
+ */
+public class JsonCodec implements JsonMapper {
+
+    public static final JsonCodec INSTANCE = new JsonCodec();
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final ObjectReader messageReader = mapper.readerFor(Message.class);
+    private final ObjectReader messageListReader = mapper.readerFor(new TypeReference<List<Message>>(){});
+    private final ObjectReader accountReader = mapper.readerFor(Account.class);
+
+    private final ConcurrentHashMap<Type, ObjectReader> readers = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Type, ObjectWriter> writers = new ConcurrentHashMap<>();
+
+    private JsonCodec() {
+        readers.put(Message.class, messageReader);
+        readers.put(Account.class, accountReader);
+        writers.put(Message.class, mapper.writerFor(Message.class));
+        writers.put(Account.class, mapper.writerFor(Account.class));
+    }
+
+    /**
+     * Read a single message straight from a request body stream.
+     */
+    public Message readMessage(InputStream in) throws IOException {
+        return messageReader.readValue(in);
+    }
+
+    /**
+     * Read a JSON list of messages straight from a request body stream.
+     */
+    public List<Message> readMessages(InputStream in) throws IOException {
+        return messageListReader.readValue(in);
+    }
+
+    /**
+     * Read a single account straight from a request body stream.
+     */
+    public Account readAccount(InputStream in) throws IOException {
+        return accountReader.readValue(in);
+    }
+
+    /**
+     * Create a generator for streaming JSON to the given stream. Closing the generator does not close the stream.
+     */
+    public JsonGenerator createGenerator(OutputStream out) throws IOException {
+        JsonGenerator generator = mapper.createGenerator(out);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        return generator;
+    }
+
+    @Override
+    public String toJsonString(Object obj, Type type) {
+        // Already-serialized JSON is passed through unchanged, as Javalin's own Jackson mapper does
+        if (obj instanceof String) {
+            return (String) obj;
+        }
+        try {
+            return writerFor(type).writeValueAsString(obj);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public InputStream toJsonStream(Object obj, Type type) {
+        try {
+            return new ByteArrayInputStream(writerFor(type).writeValueAsBytes(obj));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public <T> T fromJsonString(String json, Type targetType) {
+        try {
+            return readerFor(targetType).readValue(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public <T> T fromJsonStream(InputStream json, Type targetType) {
+        try {
+            return readerFor(targetType).readValue(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private ObjectReader readerFor(Type type) {
+        return readers.computeIfAbsent(type, t -> mapper.readerFor(javaType(t)));
+    }
+
+    private ObjectWriter writerFor(Type type) {
+        return writers.computeIfAbsent(type, t -> mapper.writerFor(javaType(t)));
+    }
+
+    private JavaType javaType(Type type) {
+        return mapper.getTypeFactory().constructType(type);
+    }
+}
@@ -0,0 +1,118 @@
+package Util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of durations in nanoseconds, with buckets laid out like an HDR histogram.
+ *
+ * Every power of two is split into 8 linear sub-buckets, so a recorded value is known to within 12.5% from 16ns
+ * up to about 18 minutes (longer values land in the last bucket). record() only increments counters, so it never
+ * allocates or blocks and is cheap enough to leave on for every request.
+ */
+public class LatencyHistogram {
+
+    /**
+     * Sub-buckets per power of two, as a number of bits.
+     */
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * Largest value with a bucket of its own; anything longer is counted in the last bucket.
+     */
+    private static final long MAX_TRACKED_NANOS = (1L << 40) - 1;
+
+    private static final int BUCKET_COUNT = bucketIndex(MAX_TRACKED_NANOS) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumNanos = new LongAdder();
+
+    /**
+     * Record one duration.
+     * @param nanos the duration in nanoseconds; negative values are recorded as 0
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, Math.min(nanos, MAX_TRACKED_NANOS));
+        counts.incrementAndGet(bucketIndex(value));
+        count.increment();
+        sumNanos.add(Math.max(0, nanos));
+    }
+
+    /**
+     * @return the number of recorded durations
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * @return the total of all recorded durations, in nanoseconds
+     */
+    public long getSumNanos() {
+        return sumNanos.sum();
+    }
+
+    /**
+     * Count the recorded durations up to a bucket boundary. Any power of two is a bucket boundary, so this is exact
+     * for the "le" bounds used by the Prometheus export.
+     * @param upperBoundNanos a power of two
+     * @return the number of recorded durations strictly below the bound
+     */
+    public long countBelow(long upperBoundNanos) {
+        int buckets = Math.min(BUCKET_COUNT, bucketIndex(Math.min(upperBoundNanos, MAX_TRACKED_NANOS)));
+        long below = 0;
+        for (int i = 0; i < buckets; i++) {
+            below += counts.get(i);
+        }
+        return below;
+    }
+
+    /**
+     * @param quantile between 0 and 1, for example 0.99
+     * @return an upper bound for the duration at that quantile, in nanoseconds, or 0 if nothing has been recorded
+     */
+    public long valueAtQuantile(double quantile) {
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            total += counts.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return bucketUpperBound(i);
+            }
+        }
+        return MAX_TRACKED_NANOS;
+    }
+
+    /**
+     * Values below 16 get a bucket each. Above that, a value's top bit picks its power of two and the next three bits
+     * pick one of the 8 sub-buckets within it.
+     */
+    private static int bucketIndex(long value) {
+        if (value < 2 * SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    /**
+     * @return the smallest value that falls in a later bucket than the given one
+     */
+    private static long bucketUpperBound(int index) {
+        if (index < 2 * SUB_BUCKETS) {
+            return index + 1;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long subBucket = index % SUB_BUCKETS + SUB_BUCKETS;
+        return (subBucket + 1) << shift;
+    }
+}
@@ -0,0 +1,208 @@
+package Util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * The application's metrics: request latency per route and status code, requests in flight, request and response
+ * bytes per route, database query timers, and gauges registered by other components, all written out in the
+ * Prometheus text format by writePrometheus().
+ *
+ * Recording never allocates once a route, status code or timer has been seen for the first time: lookups go through
+ * maps keyed by strings the web server and DAOs already hold, and every counter is a LatencyHistogram, LongAdder or
+ * atomic. Like ConnectionUtil, this is a process-wide singleton.
+ */
+public class Metrics {
+
+    /**
+     * "le" bounds of the exported histograms: every power of two from 2^10ns (about 1 microsecond) to 2^36ns (about
+     * 69 seconds). Each is a LatencyHistogram bucket boundary, so the exported counts are exact.
+     */
+    private static final int MIN_BOUND_SHIFT = 10;
+    private static final int MAX_BOUND_SHIFT = 36;
+
+    /**
+     * Route label for requests that matched no endpoint, such as 404s.
+     */
+    private static final String UNMATCHED = "unmatched";
+
+    /**
+     * Request metrics by HTTP method, then by route path as registered with Javalin.
+     */
+    private static final Map<String, Map<String, RouteMetrics>> ROUTES = new ConcurrentSkipListMap<>();
+
+    private static final AtomicInteger IN_FLIGHT = new AtomicInteger();
+
+    /**
+     * Database query timers by name, for example "MessageDAO.insertMessage".
+     */
+    private static final Map<String, LatencyHistogram> TIMERS = new ConcurrentSkipListMap<>();
+
+    private static final Map<String, Gauge> GAUGES = new ConcurrentSkipListMap<>();
+
+    private Metrics() {
+    }
+
+    /**
+     * Latency histograms by status code, and byte counters, for one route.
+     */
+    private static class RouteMetrics {
+        final AtomicReferenceArray<LatencyHistogram> byStatus = new AtomicReferenceArray<>(600);
+        final LongAdder requestBytes = new LongAdder();
+        final LongAdder responseBytes = new LongAdder();
+
+        LatencyHistogram forStatus(int status) {
+            int slot = status >= 100 && status < 600 ? status : 0;
+            LatencyHistogram histogram = byStatus.get(slot);
+            if (histogram == null) {
+                byStatus.compareAndSet(slot, null, new LatencyHistogram());
+                histogram = byStatus.get(slot);
+            }
+            return histogram;
+        }
+    }
+
+    private static class Gauge {
+        final String help;
+        final LongSupplier value;
+
+        Gauge(String help, LongSupplier value) {
+            this.help = help;
+            this.value = value;
+        }
+    }
+
+    /**
+     * @param name  the timer's name, for example "MessageDAO.insertMessage"
+     * @return the timer with that name, created on first use. Callers should keep it in a static field.
+     */
+    public static LatencyHistogram timer(String name) {
+        return TIMERS.computeIfAbsent(name, n -> new LatencyHistogram());
+    }
+
+    /**
+     * Register a gauge, replacing any earlier gauge with the same name.
+     * @param name   the Prometheus metric name
+     * @param help   the metric's description
+     * @param value  read every time the metrics are written out
+     */
+    public static void gauge(String name, String help, LongSupplier value) {
+        GAUGES.put(name, new Gauge(help, value));
+    }
+
+    /**
+     * Count a request that has started; every call must be followed by requestFinished().
+     */
+    public static void requestStarted() {
+        IN_FLIGHT.incrementAndGet();
+    }
+
+    /**
+     * Record a request that has finished.
+     * @param method         the HTTP method
+     * @param route          the matched endpoint path, for example "/messages/{message_id}", or null or empty if no
+     *                       endpoint matched
+     * @param status         the response status code
+     * @param nanos          the time taken to handle the request
+     * @param requestBytes   the size of the request body, or a negative number if unknown
+     * @param responseBytes  the number of bytes written for the response, or a negative number if unknown
+     */
+    public static void requestFinished(String method, String route, int status, long nanos,
+                                       long requestBytes, long responseBytes) {
+        IN_FLIGHT.decrementAndGet();
+
+        Map<String, RouteMetrics> byRoute = ROUTES.get(method);
+        if (byRoute == null) {
+            byRoute = ROUTES.computeIfAbsent(method, m -> new ConcurrentHashMap<>());
+        }
+        String path = route == null || route.isEmpty() ? UNMATCHED : route;
+        RouteMetrics metrics = byRoute.get(path);
+        if (metrics == null) {
+            metrics = byRoute.computeIfAbsent(path, p -> new RouteMetrics());
+        }
+
+        metrics.forStatus(status).record(nanos);
+        if (requestBytes > 0) {
+            metrics.requestBytes.add(requestBytes);
+        }
+        if (responseBytes > 0) {
+            metrics.responseBytes.add(responseBytes);
+        }
+    }
+
+    /**
+     * Write every metric in the Prometheus text exposition format (version 0.0.4).
+     */
+    public static void writePrometheus(StringBuilder out) {
+        out.append("# HELP http_server_requests_seconds Time taken to handle requests, by route and status code.\n");
+        out.append("# TYPE http_server_requests_seconds histogram\n");
+        for (Map.Entry<String, Map<String, RouteMetrics>> method : ROUTES.entrySet()) {
+            for (Map.Entry<String, RouteMetrics> route : method.getValue().entrySet()) {
+                AtomicReferenceArray<LatencyHistogram> byStatus = route.getValue().byStatus;
+                for (int status = 0; status < byStatus.length(); status++) {
+                    LatencyHistogram histogram = byStatus.get(status);
+                    if (histogram != null) {
+                        String labels = "method=\"" + method.getKey() + "\",route=\"" + escape(route.getKey())
+                                + "\",status=\"" + status + "\"";
+                        writeHistogram(out, "http_server_requests_seconds", labels, histogram);
+                    }
+                }
+            }
+        }
+
+        out.append("# HELP http_server_requests_in_flight Requests currently being handled.\n");
+        out.append("# TYPE http_server_requests_in_flight gauge\n");
+        out.append("http_server_requests_in_flight ").append(IN_FLIGHT.get()).append('\n');
+
+        writeByteCounter(out, "http_server_request_bytes_total", "Request body bytes received, by route.", true);
+        writeByteCounter(out, "http_server_response_bytes_total", "Response bytes sent, by route.", false);
+
+        out.append("# HELP db_query_seconds Time taken by database queries, by DAO method.\n");
+        out.append("# TYPE db_query_seconds histogram\n");
+        for (Map.Entry<String, LatencyHistogram> timer : TIMERS.entrySet()) {
+            writeHistogram(out, "db_query_seconds", "query=\"" + escape(timer.getKey()) + "\"", timer.getValue());
+        }
+
+        for (Map.Entry<String, Gauge> gauge : GAUGES.entrySet()) {
+            out.append("# HELP ").append(gauge.getKey()).append(' ').append(gauge.getValue().help).append('\n');
+            out.append("# TYPE ").append(gauge.getKey()).append(" gauge\n");
+            out.append(gauge.getKey()).append(' ').append(gauge.getValue().value.getAsLong()).append('\n');
+        }
+    }
+
+    private static void writeHistogram(StringBuilder out, String name, String labels, LatencyHistogram histogram) {
+        long count = histogram.getCount();
+        for (int shift = MIN_BOUND_SHIFT; shift <= MAX_BOUND_SHIFT; shift++) {
+            long bound = 1L << shift;
+            out.append(name).append("_bucket{").append(labels).append(",le=\"").append(bound / 1e9).append("\"} ")
+                    .append(histogram.countBelow(bound)).append('\n');
+        }
+        out.append(name).append("_bucket{").append(labels).append(",le=\"+Inf\"} ").append(count).append('\n');
+        out.append(name).append("_sum{").append(labels).append("} ").append(histogram.getSumNanos() / 1e9).append('\n');
+        out.append(name).append("_count{").append(labels).append("} ").append(count).append('\n');
+    }
+
+    private static void writeByteCounter(StringBuilder out, String name, String help, boolean request) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" counter\n");
+        for (Map.Entry<String, Map<String, RouteMetrics>> method : ROUTES.entrySet()) {
+            for (Map.Entry<String, RouteMetrics> route : method.getValue().entrySet()) {
+                LongAdder bytes = request ? route.getValue().requestBytes : route.getValue().responseBytes;
+                out.append(name).append("{method=\"").append(method.getKey()).append("\",route=\"")
+                        .append(escape(route.getKey())).append("\"} ").append(bytes.sum()).append('\n');
+            }
+        }
+    }
+
+    /**
+     * Escape a label value as the Prometheus text format requires.
+     */
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,110 @@
+package Util;
+
+/**
+ * An immutable snapshot of a ConnectionPool's size and saturation counters.
+ *
+ * The counters (acquired, timeouts, created, evicted, leaks, wait times) are cumulative since the pool was created.
+ */
+public class PoolStats {
+    private final int maxSize;
+    private final int total;
+    private final int active;
+    private final int idle;
+    private final int waiting;
+    private final long acquired;
+    private final long timeouts;
+    private final long created;
+    private final long evicted;
+    private final long leaks;
+    private final long totalWaitMillis;
+    private final long maxWaitMillis;
+
+    public PoolStats(int maxSize, int total, int active, int idle, int waiting, long acquired, long timeouts,
+                     long created, long evicted, long leaks, long totalWaitMillis, long maxWaitMillis) {
+        this.maxSize = maxSize;
+        this.total = total;
+        this.active = active;
+        this.idle = idle;
+        this.waiting = waiting;
+        this.acquired = acquired;
+        this.timeouts = timeouts;
+        this.created = created;
+        this.evicted = evicted;
+        this.leaks = leaks;
+        this.totalWaitMillis = totalWaitMillis;
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public int getActive() {
+        return active;
+    }
+
+    public int getIdle() {
+        return idle;
+    }
+
+    public int getWaiting() {
+        return waiting;
+    }
+
+    public long getAcquired() {
+        return acquired;
+    }
+
+    public long getTimeouts() {
+        return timeouts;
+    }
+
+    public long getCreated() {
+        return created;
+    }
+
+    public long getEvicted() {
+        return evicted;
+    }
+
+    public long getLeaks() {
+        return leaks;
+    }
+
+    public long getTotalWaitMillis() {
+        return totalWaitMillis;
+    }
+
+    public long getMaxWaitMillis() {
+        return maxWaitMillis;
+    }
+
+    /**
+     * @return the fraction of the pool's capacity currently borrowed, between 0 and 1.
+     */
+    public double getSaturation() {
+        return (double) active / maxSize;
+    }
+
+    @Override
+    public String toString() {
+        return "PoolStats{" +
+                "maxSize=" + maxSize +
+                ", total=" + total +
+                ", active=" + active +
+                ", idle=" + idle +
+                ", waiting=" + waiting +
+                ", acquired=" + acquired +
+                ", timeouts=" + timeouts +
+                ", created=" + created +
+                ", evicted=" + evicted +
+                ", leaks=" + leaks +
+                ", totalWaitMillis=" + totalWaitMillis +
+                ", maxWaitMillis=" + maxWaitMillis +
+                '}';
+    }
+}
@@ -0,0 +1,113 @@
+package Util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.h2.tools.RunScript;
+
+/**
+ * The SchemaMigrator brings the database schema up to date by running the versioned scripts in db/migration, in
+ * order, exactly once each. The version of every applied script is recorded in the schema_version table, so
+ * running the migrator against an up-to-date database does nothing.
+ *
+ * To change the schema, add a new script with the next version number to db/migration and to MIGRATIONS below,
+ * and update SocialMedia.sql (the test fixture) to match.
+ */
+public class SchemaMigrator {
+
+    /**
+     * Every migration script, in the order they must be applied. A script's version is its position plus one.
+     */
+    private static final String[] MIGRATIONS = {
+            "V1__create_account_and_message.sql",
+            "V2__message_access_indexes.sql",
+    };
+
+    /**
+     * Apply every migration that has not yet been applied to the database behind ConnectionUtil.
+     * @return the number of migrations applied
+     */
+    public static int migrate() {
+        try (Connection connection = ConnectionUtil.getConnection()) {
+            return migrate(connection);
+        } catch (SQLException | IOException e) {
+            throw new IllegalStateException("Schema migration failed", e);
+        }
+    }
+
+    /**
+     * Apply every migration that has not yet been applied to the given database.
+     * @return the number of migrations applied
+     */
+    public static int migrate(Connection connection) throws SQLException, IOException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("create table if not exists schema_version ("
+                    + "version int primary key, "
+                    + "description varchar(255), "
+                    + "installed_on timestamp default current_timestamp)");
+        }
+
+        int current = currentVersion(connection);
+        if (current == 0 && tableExists(connection, "ACCOUNT")) {
+            // The tables predate versioning (they were created by SocialMedia.sql), so they are at version 1
+            recordVersion(connection, 1);
+            current = 1;
+        }
+
+        int applied = 0;
+        for (int version = current + 1; version <= MIGRATIONS.length; version++) {
+            String script = MIGRATIONS[version - 1];
+            try (InputStream in = SchemaMigrator.class.getResourceAsStream("/db/migration/" + script)) {
+                if (in == null) {
+                    throw new IOException("Missing migration script " + script);
+                }
+                try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+                    RunScript.execute(connection, reader);
+                }
+            }
+            recordVersion(connection, version);
+            applied++;
+        }
+        return applied;
+    }
+
+    private static void recordVersion(Connection connection, int version) throws SQLException {
+        String script = MIGRATIONS[version - 1];
+        try (PreparedStatement ps = connection.prepareStatement(
+                "insert into schema_version (version, description) values (?, ?)")) {
+            ps.setInt(1, version);
+            ps.setString(2, script.substring(script.indexOf("__") + 2, script.lastIndexOf('.')));
+            ps.executeUpdate();
+        }
+    }
+
+    private static boolean tableExists(Connection connection, String table) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(
+                "select count(*) from information_schema.tables where table_schema = 'PUBLIC' and table_name = ?")) {
+            ps.setString(1, table);
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                return rs.getInt(1) > 0;
+            }
+        }
+    }
+
+    /**
+     * @return the highest migration version recorded in schema_version, or 0 if none has been applied.
+     */
+    public static int currentVersion(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("select coalesce(max(version), 0) from schema_version")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package Util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Strings kept off the Java heap as UTF-8, each behind an int handle.
+ *
+ * Text is copied into direct ByteBuffers of CHUNK_BYTES each, as a two byte length followed by the bytes, padded to a
+ * multiple of 8 bytes. A handle is the text's byte position in the arena divided by 8, so an int reaches 16 GiB of
+ * text and a holder of many strings keeps 4 bytes per string on the heap instead of a String and its byte[]. The
+ * garbage collector never scans or copies the text.
+ *
+ * Freed space is kept on a free list per padded size and reused by the next text of that size; the arena itself never
+ * shrinks. Text longer than MAX_TEXT_BYTES is not accepted.
+ *
+ * add() and free() are synchronized. get() takes no lock, so a caller that frees text while others may still read it
+ * must have them check afterwards that the handle they read is still current, since its space may have been reused.
+ * get() reads the arena with plain loads, which may be reordered after that check, so readers must put a
+ * VarHandle.acquireFence() between get() and the check.
+ */
+public class TextArena {
+
+    /**
+     * Bytes in each direct buffer. A power of two, so that a handle splits into chunk and offset with shifts.
+     */
+    private static final int CHUNK_BYTES = 1 << 20;
+    private static final int CHUNK_SHIFT = 20;
+
+    private static final int ALIGNMENT = 8;
+    private static final int ALIGNMENT_SHIFT = 3;
+
+    private static final int LENGTH_BYTES = 2;
+
+    /**
+     * The longest text accepted, in UTF-8 bytes.
+     */
+    public static final int MAX_TEXT_BYTES = 65535 - LENGTH_BYTES;
+
+    /**
+     * Handle of a null String.
+     */
+    public static final int NULL = -1;
+
+    private volatile ByteBuffer[] chunks = new ByteBuffer[0];
+
+    /**
+     * Where the next text goes when no freed space fits, as a position in the arena.
+     */
+    private long end;
+
+    /**
+     * Freed handles by padded size divided by ALIGNMENT, each a stack of freeCounts[size] handles.
+     */
+    private final int[][] freeHandles = new int[(MAX_TEXT_BYTES + LENGTH_BYTES) / ALIGNMENT + 2][];
+    private final int[] freeCounts = new int[freeHandles.length];
+
+    private long usedBytes;
+
+    /**
+     * Copy a String into the arena.
+     * @return its handle, or NULL if text is null
+     * @throws IllegalArgumentException if text is longer than MAX_TEXT_BYTES in UTF-8
+     */
+    public int add(String text) {
+        if (text == null) {
+            return NULL;
+        }
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_TEXT_BYTES) {
+            throw new IllegalArgumentException("Text of " + bytes.length + " bytes is longer than " + MAX_TEXT_BYTES);
+        }
+        int size = paddedSize(bytes.length);
+        synchronized (this) {
+            int handle = allocate(size);
+            ByteBuffer chunk = chunks[chunkOf(handle)];
+            int offset = offsetOf(handle);
+            chunk.putShort(offset, (short) bytes.length);
+            chunk.put(offset + LENGTH_BYTES, bytes);
+            usedBytes += size;
+            return handle;
+        }
+    }
+
+    /**
+     * Decode the text behind a handle.
+     * @return the text, or null for NULL
+     */
+    public String get(int handle) {
+        if (handle == NULL) {
+            return null;
+        }
+        ByteBuffer chunk = chunks[chunkOf(handle)];
+        int offset = offsetOf(handle);
+        // Bounded by the chunk, in case the space was reused while the length was being read
+        int length = Math.min(Short.toUnsignedInt(chunk.getShort(offset)), CHUNK_BYTES - offset - LENGTH_BYTES);
+        byte[] bytes = new byte[length];
+        chunk.get(offset + LENGTH_BYTES, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Give a handle's space back for reuse. The handle must not be used again.
+     */
+    public synchronized void free(int handle) {
+        if (handle == NULL) {
+            return;
+        }
+        int size = paddedSize(Short.toUnsignedInt(chunks[chunkOf(handle)].getShort(offsetOf(handle))));
+        int sizeClass = size >>> ALIGNMENT_SHIFT;
+        int[] stack = freeHandles[sizeClass];
+        if (stack == null) {
+            stack = freeHandles[sizeClass] = new int[16];
+        } else if (freeCounts[sizeClass] == stack.length) {
+            stack = freeHandles[sizeClass] = Arrays.copyOf(stack, stack.length * 2);
+        }
+        stack[freeCounts[sizeClass]++] = handle;
+        usedBytes -= size;
+    }
+
+    /**
+     * @return bytes taken by live text, padding included
+     */
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * @return bytes of direct memory held by the arena
+     */
+    public synchronized long getCapacityBytes() {
+        return (long) chunks.length * CHUNK_BYTES;
+    }
+
+    /**
+     * Find room for a padded size: freed space of that size if there is any, else at the end, starting a new chunk
+     * when the current one is too full. Must hold the lock.
+     */
+    private int allocate(int size) {
+        int sizeClass = size >>> ALIGNMENT_SHIFT;
+        if (freeCounts[sizeClass] > 0) {
+            return freeHandles[sizeClass][--freeCounts[sizeClass]];
+        }
+        if ((end & (CHUNK_BYTES - 1)) + size > CHUNK_BYTES) {
+            end = (long) chunks.length << CHUNK_SHIFT;
+        }
+        int chunk = (int) (end >>> CHUNK_SHIFT);
+        if (chunk >= (1 << (31 - CHUNK_SHIFT + ALIGNMENT_SHIFT))) {
+            throw new IllegalStateException("TextArena is full");
+        }
+        if (chunk == chunks.length) {
+            ByteBuffer[] grown = Arrays.copyOf(chunks, chunk + 1);
+            grown[chunk] = ByteBuffer.allocateDirect(CHUNK_BYTES);
+            chunks = grown;
+        }
+        int handle = (int) (end >>> ALIGNMENT_SHIFT);
+        end += size;
+        return handle;
+    }
+
+    private static int paddedSize(int textBytes) {
+        return (textBytes + LENGTH_BYTES + ALIGNMENT - 1) & -ALIGNMENT;
+    }
+
+    private static int chunkOf(int handle) {
+        return handle >>> (CHUNK_SHIFT - ALIGNMENT_SHIFT);
+    }
+
+    private static int offsetOf(int handle) {
+        return (handle << ALIGNMENT_SHIFT) & (CHUNK_BYTES - 1);
+    }
+}
@@ -0,0 +1,567 @@
+package Util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+/**
+ * A bounded, thread-safe cache using the W-TinyLFU policy.
+ *
+ * New entries land in a small LRU "window". When the window overflows, its oldest entry becomes a candidate for the
+ * main area, which is a segmented LRU split into a probation and a protected segment. If the main area is full, the
+ * candidate is only admitted if it has been requested more often than the entry it would evict, according to a
+ * compact count-min sketch of recent access frequencies. This keeps one-off lookups (for example a scraper walking
+ * through ids) from flushing out entries that are genuinely popular.
+ *
+ * Each entry may carry a time-to-live, which is used for short-lived negative entries. Hit, miss and eviction
+ * counters are kept for monitoring. An optional removal listener is told of every value that leaves the cache, by
+ * eviction, expiry, invalidation or replacement, so that it can release what the value holds.
+ *
+ * A caller that loads a value and then caches it can lose a race with a writer that invalidates the key in between,
+ * and cache the value the writer just replaced. To avoid that, take invalidationStamp(key) before loading and cache
+ * the value with putIfNotInvalidated: the value is dropped if the key was invalidated since. Stamps are kept per
+ * stripe of keys rather than per key, so an invalidation of another key in the same stripe only costs a missed put.
+ *
+ * Lookups take no lock: get reads a ConcurrentHashMap and records the access in a small ring buffer, one of several
+ * striped by thread. Writes, invalidations and eviction run under a single lock, and whoever holds it replays the
+ * buffered accesses into the sketch and the LRU order first; a reader whose buffer fills up does so too, if the lock
+ * is free. The buffers are lossy: an access that loses a race for a slot is dropped, which only makes the policy
+ * slightly less precise. A value returned by get may therefore be removed, and handed to the removal listener, while
+ * the caller is still using it.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class TinyLfuCache<K, V> {
+
+    /**
+     * Time-to-live for entries that should only leave the cache by eviction or invalidation.
+     */
+    public static final long NO_EXPIRY = Long.MAX_VALUE;
+
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+    private static final int REMOVED = -1;
+
+    /**
+     * Number of invalidation stamps, a power of two.
+     */
+    private static final int INVALIDATION_STRIPES = 1024;
+
+    /**
+     * Number of read buffers, a power of two at least the number of cores.
+     */
+    private static final int READ_BUFFERS = Integer.highestOneBit(
+            Math.max(1, Runtime.getRuntime().availableProcessors() - 1) << 1);
+
+    private final int maximumSize;
+    private final int windowMaximum;
+    private final int protectedMaximum;
+
+    private final ConcurrentHashMap<K, Node<K, V>> data;
+    private final AccessOrder<K, V> window = new AccessOrder<>();
+    private final AccessOrder<K, V> probation = new AccessOrder<>();
+    private final AccessOrder<K, V> protectedSegment = new AccessOrder<>();
+    private final FrequencySketch sketch;
+    private final ReadBuffer<K, V>[] readBuffers;
+
+    /**
+     * Guards the access order lists, the sketch and every change to data.
+     */
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    /**
+     * Invalidations so far of the keys in each stripe.
+     */
+    private final AtomicLongArray invalidationStamps = new AtomicLongArray(INVALIDATION_STRIPES);
+
+    private final BiConsumer<K, V> removalListener;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maximumSize the maximum number of entries held at once
+     */
+    public TinyLfuCache(int maximumSize) {
+        this(maximumSize, (key, value) -> { });
+    }
+
+    /**
+     * @param maximumSize     the maximum number of entries held at once
+     * @param removalListener called, under the cache's lock, with every value that leaves the cache
+     */
+    @SuppressWarnings("unchecked")
+    public TinyLfuCache(int maximumSize, BiConsumer<K, V> removalListener) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("maximumSize must be positive");
+        }
+        this.maximumSize = maximumSize;
+        this.windowMaximum = Math.max(1, maximumSize / 100);
+        this.protectedMaximum = Math.max(1, (maximumSize - windowMaximum) * 4 / 5);
+        this.data = new ConcurrentHashMap<>(maximumSize * 4 / 3 + 1);
+        this.sketch = new FrequencySketch(maximumSize);
+        this.readBuffers = new ReadBuffer[READ_BUFFERS];
+        for (int i = 0; i < READ_BUFFERS; i++) {
+            readBuffers[i] = new ReadBuffer<>();
+        }
+        this.removalListener = removalListener;
+    }
+
+    /**
+     * @return the cached value, or null if the key is not cached or its entry has expired
+     */
+    public V get(K key) {
+        Node<K, V> node = data.get(key);
+        if (node == null) {
+            misses.increment();
+            return null;
+        }
+        V value = node.value;
+        long expiresAt = node.expiresAt;
+        if (expiresAt != NO_EXPIRY && System.nanoTime() - expiresAt >= 0) {
+            evictionLock.lock();
+            try {
+                if (node.segment != REMOVED && node.expiresAt == expiresAt) {
+                    remove(node);
+                }
+            } finally {
+                evictionLock.unlock();
+            }
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        recordAccess(node);
+        return value;
+    }
+
+    /**
+     * Cache a value that does not expire.
+     */
+    public void put(K key, V value) {
+        put(key, value, NO_EXPIRY);
+    }
+
+    /**
+     * Cache a value for at most ttlNanos nanoseconds.
+     */
+    public void put(K key, V value, long ttlNanos) {
+        evictionLock.lock();
+        try {
+            drainReadBuffers();
+            putLocked(key, value, ttlNanos);
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Cache a value for at most ttlNanos nanoseconds, unless the key has been invalidated since the stamp was taken.
+     * @param stamp the key's invalidationStamp, taken before the value was loaded
+     * @return true if the value was cached
+     */
+    public boolean putIfNotInvalidated(K key, V value, long ttlNanos, long stamp) {
+        evictionLock.lock();
+        try {
+            if (invalidationStamps.get(stripe(key)) != stamp) {
+                return false;
+            }
+            drainReadBuffers();
+            putLocked(key, value, ttlNanos);
+            return true;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * @return a stamp that changes whenever the key is invalidated, for putIfNotInvalidated
+     */
+    public long invalidationStamp(K key) {
+        return invalidationStamps.get(stripe(key));
+    }
+
+    /**
+     * Remove the key from the cache, if present.
+     */
+    public void invalidate(K key) {
+        evictionLock.lock();
+        try {
+            drainReadBuffers();
+            invalidationStamps.incrementAndGet(stripe(key));
+            Node<K, V> node = data.get(key);
+            if (node != null) {
+                remove(node);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Remove every entry from the cache.
+     */
+    public void invalidateAll() {
+        evictionLock.lock();
+        try {
+            drainReadBuffers();
+            for (int i = 0; i < INVALIDATION_STRIPES; i++) {
+                invalidationStamps.incrementAndGet(i);
+            }
+            for (Node<K, V> node : data.values()) {
+                node.segment = REMOVED;
+                removalListener.accept(node.key, node.value);
+            }
+            data.clear();
+            window.clear();
+            probation.clear();
+            protectedSegment.clear();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    public int size() {
+        return data.size();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * Add or replace an entry; the caller holds the eviction lock. A new key counts as a request for it, which is the
+     * miss that led to the put.
+     */
+    private void putLocked(K key, V value, long ttlNanos) {
+        long expiresAt = ttlNanos == NO_EXPIRY ? NO_EXPIRY : System.nanoTime() + ttlNanos;
+        Node<K, V> node = data.get(key);
+        if (node != null) {
+            if (node.value != value) {
+                removalListener.accept(key, node.value);
+            }
+            node.value = value;
+            node.expiresAt = expiresAt;
+            onAccess(node);
+            return;
+        }
+
+        sketch.increment(key.hashCode());
+        node = new Node<>(key, value, expiresAt);
+        data.put(key, node);
+        node.segment = WINDOW;
+        window.addLast(node);
+
+        Node<K, V> candidate = null;
+        if (window.size > windowMaximum) {
+            candidate = window.removeFirst();
+            candidate.segment = PROBATION;
+            probation.addLast(candidate);
+        }
+        if (data.size() > maximumSize) {
+            evict(candidate);
+        }
+    }
+
+    /**
+     * Buffer an access by this thread, replaying the buffer at once if it is full and nobody else holds the lock.
+     */
+    private void recordAccess(Node<K, V> node) {
+        int h = Long.hashCode(Thread.currentThread().threadId() * 0x9e3779b97f4a7c15L);
+        ReadBuffer<K, V> buffer = readBuffers[(h ^ (h >>> 16)) & (READ_BUFFERS - 1)];
+        if (!buffer.offer(node) && evictionLock.tryLock()) {
+            try {
+                drainReadBuffers();
+            } finally {
+                evictionLock.unlock();
+            }
+            buffer.offer(node);
+        }
+    }
+
+    /**
+     * Replay the buffered accesses; the caller holds the eviction lock. An access still counts towards its key's
+     * frequency if the entry has been removed since, but only a live entry is promoted.
+     */
+    private void drainReadBuffers() {
+        for (ReadBuffer<K, V> buffer : readBuffers) {
+            long reads = buffer.reads;
+            long writes = buffer.writes.get();
+            while (reads != writes) {
+                int index = (int) reads & (ReadBuffer.SIZE - 1);
+                Node<K, V> node = buffer.slots.get(index);
+                if (node == null) {
+                    // Claimed by a reader that has not stored its node yet
+                    break;
+                }
+                buffer.slots.lazySet(index, null);
+                reads++;
+                sketch.increment(node.key.hashCode());
+                if (node.segment != REMOVED) {
+                    onAccess(node);
+                }
+            }
+            buffer.reads = reads;
+        }
+    }
+
+    /**
+     * Promote an entry on access: within the window and protected segment it becomes most recently used, and an
+     * entry in probation that is used again is moved to the protected segment.
+     */
+    private void onAccess(Node<K, V> node) {
+        switch (node.segment) {
+            case WINDOW:
+                window.moveToLast(node);
+                break;
+            case PROBATION:
+                probation.remove(node);
+                node.segment = PROTECTED;
+                protectedSegment.addLast(node);
+                if (protectedSegment.size > protectedMaximum) {
+                    Node<K, V> demoted = protectedSegment.removeFirst();
+                    demoted.segment = PROBATION;
+                    probation.addLast(demoted);
+                }
+                break;
+            default:
+                protectedSegment.moveToLast(node);
+                break;
+        }
+    }
+
+    /**
+     * Evict one entry to get back to the maximum size. The candidate that just left the window competes with the
+     * least recently used probation entry, and whichever has been requested less often is evicted.
+     */
+    private void evict(Node<K, V> candidate) {
+        Node<K, V> victim = probation.first();
+        if (victim == null) {
+            victim = protectedSegment.first() != null ? protectedSegment.first() : window.first();
+        }
+        if (candidate != null && candidate != victim
+                && sketch.frequency(candidate.key.hashCode()) <= sketch.frequency(victim.key.hashCode())) {
+            victim = candidate;
+        }
+        remove(victim);
+        evictions.increment();
+    }
+
+    private static int stripe(Object key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & (INVALIDATION_STRIPES - 1);
+    }
+
+    private void remove(Node<K, V> node) {
+        data.remove(node.key);
+        removalListener.accept(node.key, node.value);
+        switch (node.segment) {
+            case WINDOW:
+                window.remove(node);
+                break;
+            case PROBATION:
+                probation.remove(node);
+                break;
+            default:
+                protectedSegment.remove(node);
+                break;
+        }
+        node.segment = REMOVED;
+    }
+
+    /**
+     * An entry. Its value and expiry are read without the lock; everything else is guarded by it.
+     */
+    private static final class Node<K, V> {
+        final K key;
+        volatile V value;
+        volatile long expiresAt;
+        int segment;
+        Node<K, V> prev;
+        Node<K, V> next;
+
+        Node(K key, V value, long expiresAt) {
+            this.key = key;
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * A lossy ring buffer of accesses. Readers claim a slot by advancing writes, and only the holder of the eviction
+     * lock drains it and advances reads. A reader that finds it full, or loses the race for a slot, drops its access.
+     */
+    private static final class ReadBuffer<K, V> {
+        static final int SIZE = 16;
+
+        final AtomicReferenceArray<Node<K, V>> slots = new AtomicReferenceArray<>(SIZE);
+        final AtomicLong writes = new AtomicLong();
+        volatile long reads;
+
+        /**
+         * @return false if the buffer is full
+         */
+        boolean offer(Node<K, V> node) {
+            long claimed = writes.get();
+            if (claimed - reads >= SIZE) {
+                return false;
+            }
+            if (writes.compareAndSet(claimed, claimed + 1)) {
+                slots.lazySet((int) claimed & (SIZE - 1), node);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * An intrusive doubly linked list ordered from least to most recently used.
+     */
+    private static final class AccessOrder<K, V> {
+        Node<K, V> head;
+        Node<K, V> tail;
+        int size;
+
+        Node<K, V> first() {
+            return head;
+        }
+
+        void addLast(Node<K, V> node) {
+            node.prev = tail;
+            node.next = null;
+            if (tail == null) {
+                head = node;
+            } else {
+                tail.next = node;
+            }
+            tail = node;
+            size++;
+        }
+
+        Node<K, V> removeFirst() {
+            Node<K, V> node = head;
+            if (node != null) {
+                remove(node);
+            }
+            return node;
+        }
+
+        void remove(Node<K, V> node) {
+            if (node.prev == null) {
+                head = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+            if (node.next == null) {
+                tail = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+            size--;
+        }
+
+        void moveToLast(Node<K, V> node) {
+            if (tail != node) {
+                remove(node);
+                addLast(node);
+            }
+        }
+
+        void clear() {
+            head = null;
+            tail = null;
+            size = 0;
+        }
+    }
+
+    /**
+     * A count-min sketch of 4-bit counters, sixteen to a long, estimating how often each key has been requested
+     * recently. Once the number of increments reaches ten times the cache size every counter is halved, so old
+     * popularity fades.
+     */
+    private static final class FrequencySketch {
+        private static final long[] SEEDS = {
+                0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+        private static final long RESET_MASK = 0x7777777777777777L;
+
+        private final long[] table;
+        private final int tableMask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int maximumSize) {
+            int length = Integer.highestOneBit(Math.max(16, maximumSize - 1) << 1);
+            this.table = new long[length];
+            this.tableMask = length - 1;
+            this.sampleSize = 10 * maximumSize;
+        }
+
+        int frequency(int hashCode) {
+            int hash = spread(hashCode);
+            int frequency = Integer.MAX_VALUE;
+            for (int i = 0; i < 4; i++) {
+                int count = (int) ((table[indexOf(hash, i)] >>> offsetOf(hash, i)) & 0xfL);
+                frequency = Math.min(frequency, count);
+            }
+            return frequency;
+        }
+
+        void increment(int hashCode) {
+            int hash = spread(hashCode);
+            boolean added = false;
+            for (int i = 0; i < 4; i++) {
+                int index = indexOf(hash, i);
+                int offset = offsetOf(hash, i);
+                if (((table[index] >>> offset) & 0xfL) != 0xfL) {
+                    table[index] += 1L << offset;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= sampleSize) {
+                reset();
+            }
+        }
+
+        private void reset() {
+            for (int i = 0; i < table.length; i++) {
+                table[i] = (table[i] >>> 1) & RESET_MASK;
+            }
+            additions /= 2;
+        }
+
+        private int indexOf(int hash, int i) {
+            long h = (hash + SEEDS[i]) * SEEDS[i];
+            h += h >>> 32;
+            return ((int) h) & tableMask;
+        }
+
+        /**
+         * @return the bit offset of one of the sixteen 4-bit counters in a long
+         */
+        private static int offsetOf(int hash, int i) {
+            return ((hash >>> (i << 3)) & 0xf) << 2;
+        }
+
+        private static int spread(int x) {
+            x = ((x >>> 16) ^ x) * 0x45d9f3b;
+            x = ((x >>> 16) ^ x) * 0x45d9f3b;
+            return (x >>> 16) ^ x;
+        }
+    }
+}
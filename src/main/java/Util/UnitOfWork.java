@@ -0,0 +1,215 @@
+package Util;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A unit of work binds one pooled connection and one transaction to the current thread, so that every DAO call made
+ * while handling a single request shares them and the request commits exactly once.
+ *
+ * The connection is only borrowed the first time a DAO asks ConnectionUtil for one, so requests that never touch the
+ * database never take a connection from the pool. While a unit of work is active, ConnectionUtil.getConnection()
+ * returns a handle whose close() does nothing; the connection is committed (or rolled back) and returned to the pool
+ * by end().
+ *
+ * A unit of work is bound to one thread at a time, but may be detached from the thread that began it and resumed on
+ * another, as long as only one thread uses it at once.
+ */
+public class UnitOfWork {
+
+    private static final ThreadLocal<UnitOfWork> CURRENT = new ThreadLocal<>();
+
+    /**
+     * The pooled connection, borrowed lazily.
+     */
+    private Connection connection;
+
+    /**
+     * The handle given to DAOs, which ignores close() so a DAO's try-with-resources block does not end the unit.
+     */
+    private Connection handle;
+
+    private boolean rollbackOnly;
+
+    /**
+     * Set once the transaction has committed, for the afterCommit callbacks.
+     */
+    private boolean committed;
+
+    /**
+     * Callbacks to run once the transaction has been committed or rolled back.
+     */
+    private final List<Runnable> afterCompletion = new ArrayList<>();
+
+    private UnitOfWork() {
+    }
+
+    /**
+     * Start a unit of work on the current thread. Any unit of work left behind on this thread is rolled back first.
+     * @return the new unit of work
+     */
+    public static UnitOfWork begin() {
+        UnitOfWork stale = CURRENT.get();
+        if (stale != null) {
+            stale.setRollbackOnly();
+            stale.end();
+        }
+        UnitOfWork unit = new UnitOfWork();
+        CURRENT.set(unit);
+        return unit;
+    }
+
+    /**
+     * @return the unit of work active on the current thread, or null if there is none
+     */
+    public static UnitOfWork current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Unbind the current thread's unit of work, so that it can be resumed on another thread. This is how a request's
+     * unit of work follows its handler onto the DatabaseExecutor.
+     * @return the unit of work that was active on this thread, or null if there was none
+     */
+    public static UnitOfWork detach() {
+        UnitOfWork unit = CURRENT.get();
+        CURRENT.remove();
+        return unit;
+    }
+
+    /**
+     * Bind this unit of work, previously detached from another thread, to the current thread.
+     * @throws IllegalStateException if another unit of work is already active on this thread
+     */
+    public void resume() {
+        UnitOfWork active = CURRENT.get();
+        if (active != null && active != this) {
+            throw new IllegalStateException("Another unit of work is active on this thread");
+        }
+        CURRENT.set(this);
+    }
+
+    /**
+     * Run the callback once the current unit of work has committed or rolled back, or straight away if there is no
+     * unit of work on this thread. This is used to keep caches coherent with what other threads can actually read.
+     * @param callback the action to run
+     */
+    public static void afterCompletion(Runnable callback) {
+        UnitOfWork unit = CURRENT.get();
+        if (unit == null) {
+            callback.run();
+        } else {
+            unit.afterCompletion.add(callback);
+        }
+    }
+
+    /**
+     * Run the callback once the current unit of work has committed, or straight away if there is no unit of work on
+     * this thread (a DAO then runs in auto-commit). If the unit rolls back, the callback is never run. This is used to
+     * publish what a transaction wrote only once other threads can actually read it.
+     * @param callback the action to run
+     */
+    public static void afterCommit(Runnable callback) {
+        UnitOfWork unit = CURRENT.get();
+        if (unit == null) {
+            callback.run();
+        } else {
+            unit.afterCompletion.add(() -> {
+                if (unit.committed) {
+                    callback.run();
+                }
+            });
+        }
+    }
+
+    /**
+     * Borrow the unit's connection from the pool on first use and start its transaction.
+     * @return a connection whose close() is a no-op for the lifetime of this unit of work
+     */
+    Connection getConnection(ConnectionPool pool) throws SQLException {
+        if (handle == null) {
+            connection = pool.getConnection();
+            connection.setAutoCommit(false);
+            handle = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                        if (method.getName().equals("close")) {
+                            return null;
+                        }
+                        try {
+                            return method.invoke(connection, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    });
+        }
+        return handle;
+    }
+
+    /**
+     * Mark the unit of work so that end() rolls back instead of committing.
+     */
+    public void setRollbackOnly() {
+        rollbackOnly = true;
+    }
+
+    /**
+     * Commit (or roll back, if marked rollback-only) the unit's transaction, return its connection to the pool and
+     * unbind it from the current thread.
+     * @return false if the transaction should have committed but could not, in which case it has been rolled back
+     *         and nothing the unit of work wrote was stored
+     */
+    public boolean end() {
+        if (CURRENT.get() == this) {
+            CURRENT.remove();
+        }
+        try {
+            return finish();
+        } finally {
+            for (Runnable callback : afterCompletion) {
+                try {
+                    callback.run();
+                } catch (RuntimeException e) {
+                    System.out.println(e.getMessage());
+                }
+            }
+            afterCompletion.clear();
+        }
+    }
+
+    private boolean finish() {
+        if (connection == null) {
+            // Nothing was written, so there is nothing an afterCommit callback could publish early
+            committed = !rollbackOnly;
+            return true;
+        }
+        try {
+            if (rollbackOnly) {
+                connection.rollback();
+            } else {
+                connection.commit();
+                committed = true;
+            }
+            return true;
+        } catch (SQLException e) {
+            System.out.println(e.getMessage());
+            try {
+                connection.rollback();
+            } catch (SQLException rollbackException) {
+                System.out.println(rollbackException.getMessage());
+            }
+            return rollbackOnly;
+        } finally {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                System.out.println(e.getMessage());
+            }
+            connection = null;
+            handle = null;
+        }
+    }
+}
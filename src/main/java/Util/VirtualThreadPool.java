@@ -0,0 +1,37 @@
+package Util;
+
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+/**
+ * A Jetty thread pool that runs request handlers on virtual threads, and everything else on platform threads.
+ *
+ * Jetty's default pool caps the number of requests in progress at its maximum thread count, and a request blocked on
+ * JDBC holds one of those threads for the whole call. A virtual thread blocked the same way gives its carrier thread
+ * back, so concurrency is instead bounded by the connection pool, whose Semaphore and LinkedBlockingDeque park
+ * virtual threads without pinning them.
+ *
+ * The acceptor and selector threads stay on this pool's platform threads: they run for the life of the server and
+ * spend it in blocking accept() and select() calls, which gain nothing from a virtual thread and would hold a carrier
+ * thread if pinned. Jetty's execution strategy hands each blocking task it produces, which is how a request handler
+ * runs, to a new virtual thread instead (QueuedThreadPool.setUseVirtualThreads).
+ *
+ * Code that may run on these threads must not block on JDBC inside a synchronized block or method, which would pin
+ * the carrier thread for the whole call. Run with -Djdk.tracePinnedThreads=short to report any that do.
+ */
+public class VirtualThreadPool extends QueuedThreadPool {
+
+    /**
+     * Platform threads kept for acceptors, selectors and Jetty's own non-blocking tasks. Each connector takes one
+     * acceptor and a selector per couple of cores, so this leaves room for both and some housekeeping.
+     */
+    private static final int PLATFORM_THREADS = Math.max(8, 2 * Runtime.getRuntime().availableProcessors());
+
+    /**
+     * @param name the pool's name, which prefixes the names of its platform threads
+     */
+    public VirtualThreadPool(String name) {
+        super(PLATFORM_THREADS, Math.min(PLATFORM_THREADS, 8));
+        setName(name);
+        setUseVirtualThreads(true);
+    }
+}
@@ -1,5 +1,7 @@
+-- Test fixture: recreates the schema at its latest migration version (see db/migration) and seeds it.
 drop table if exists message;
 drop table if exists account;
+drop table if exists schema_version;
 create table account (
     account_id int primary key auto_increment,
     username varchar(255) unique,
@@ -12,6 +14,15 @@ create table message (
     time_posted_epoch bigint,
     foreign key (posted_by) references  account(account_id)
 );
+create index idx_message_posted_by_time on message (posted_by, time_posted_epoch, message_id);
+create index idx_message_time on message (time_posted_epoch);
+create table schema_version (
+    version int primary key,
+    description varchar(255),
+    installed_on timestamp default current_timestamp
+);
+insert into schema_version (version, description) values (1, 'create_account_and_message');
+insert into schema_version (version, description) values (2, 'message_access_indexes');
 
 insert into account (username, password) values ('testuser1', 'password');
 insert into message (posted_by, message_text, time_posted_epoch) values (1,'test message 1',1669947792);
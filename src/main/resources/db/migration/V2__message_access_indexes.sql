@@ -0,0 +1,4 @@
+-- Per-account listings filter on posted_by and order by (time_posted_epoch, message_id).
+create index idx_message_posted_by_time on message (posted_by, time_posted_epoch, message_id);
+-- Time-ordered listings across all accounts.
+create index idx_message_time on message (time_posted_epoch);
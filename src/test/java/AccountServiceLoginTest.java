@@ -0,0 +1,60 @@
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import DAO.AccountDAO;
+import Model.Account;
+import Service.AccountService;
+
+public class AccountServiceLoginTest {
+    AccountDAO mockAccountDAO;
+    AccountService accountService;
+
+    /**
+     * Before every test, create an AccountService with a credential cache over a mock AccountDAO that knows a
+     * single account.
+     */
+    @Before
+    public void setUp() {
+        mockAccountDAO = Mockito.mock(AccountDAO.class);
+        Mockito.when(mockAccountDAO.getAccountByUsername("testuser1"))
+                .thenReturn(new Account(1, "testuser1", "password"));
+        accountService = new AccountService(mockAccountDAO, 100, TimeUnit.MINUTES.toNanos(5));
+    }
+
+    /**
+     * A repeated successful login should be answered from the credential cache with a single database lookup.
+     */
+    @Test
+    public void repeatedLoginUsesCache() {
+        Account expected = new Account(1, "testuser1", "password");
+        Assert.assertEquals(expected, accountService.loginUser(new Account("testuser1", "password")));
+        Assert.assertEquals(expected, accountService.loginUser(new Account("testuser1", "password")));
+        Assert.assertEquals(expected, accountService.loginUser(new Account("testuser1", "password")));
+        Mockito.verify(mockAccountDAO, Mockito.times(1)).getAccountByUsername("testuser1");
+    }
+
+    /**
+     * A wrong password must never be accepted from the cache, and is checked against the database instead.
+     */
+    @Test
+    public void wrongPasswordIsNotServedFromCache() {
+        Assert.assertNotNull(accountService.loginUser(new Account("testuser1", "password")));
+        Assert.assertNull(accountService.loginUser(new Account("testuser1", "wrongpassword")));
+        Mockito.verify(mockAccountDAO, Mockito.times(2)).getAccountByUsername("testuser1");
+    }
+
+    /**
+     * After invalidation, the next login should go back to the database.
+     */
+    @Test
+    public void invalidatedLoginGoesToDatabase() {
+        accountService.loginUser(new Account("testuser1", "password"));
+        accountService.invalidateCredentials("testuser1");
+        accountService.loginUser(new Account("testuser1", "password"));
+        Mockito.verify(mockAccountDAO, Mockito.times(2)).getAccountByUsername("testuser1");
+    }
+}
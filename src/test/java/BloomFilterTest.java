@@ -0,0 +1,39 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import Util.BloomFilter;
+
+public class BloomFilterTest {
+
+    /**
+     * Every string that was added must be reported as possibly present.
+     */
+    @Test
+    public void noFalseNegatives() {
+        BloomFilter filter = new BloomFilter(10000, 0.01);
+        for (int i = 0; i < 10000; i++) {
+            filter.put("user" + i);
+        }
+        for (int i = 0; i < 10000; i++) {
+            Assert.assertTrue(filter.mightContain("user" + i));
+        }
+    }
+
+    /**
+     * At its expected size, the filter should report strings it has never seen close to its configured rate.
+     */
+    @Test
+    public void falsePositiveRateIsNearTarget() {
+        BloomFilter filter = new BloomFilter(10000, 0.01);
+        for (int i = 0; i < 10000; i++) {
+            filter.put("user" + i);
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 100000; i++) {
+            if (filter.mightContain("other" + i)) {
+                falsePositives++;
+            }
+        }
+        Assert.assertTrue("False positive rate was " + falsePositives / 100000.0, falsePositives < 2000);
+    }
+}
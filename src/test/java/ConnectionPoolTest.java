@@ -0,0 +1,82 @@
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Util.ConnectionPool;
+import Util.PoolStats;
+
+public class ConnectionPoolTest {
+    ConnectionPool pool;
+
+    /**
+     * Before every test, create a small pool over a private in-memory database so the shared pool is untouched.
+     */
+    @Before
+    public void setUp() {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:pooltest;DB_CLOSE_DELAY=-1");
+        dataSource.setUser("sa");
+        dataSource.setPassword("sa");
+        pool = new ConnectionPool(dataSource, 0, 2, 200, 60000, 0);
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Closing a borrowed connection should return the same physical connection to the pool rather than opening a
+     * new one for the next borrower.
+     */
+    @Test
+    public void closedConnectionIsReused() throws SQLException {
+        Connection first = pool.getConnection();
+        first.close();
+        Assert.assertTrue(first.isClosed());
+
+        Connection second = pool.getConnection();
+        Assert.assertFalse(second.isClosed());
+        second.close();
+
+        PoolStats stats = pool.getStats();
+        Assert.assertEquals(1, stats.getCreated());
+        Assert.assertEquals(2, stats.getAcquired());
+        Assert.assertEquals(0, stats.getActive());
+        Assert.assertEquals(1, stats.getIdle());
+    }
+
+    /**
+     * Once every connection is borrowed, the next borrower should fail after the acquire timeout instead of
+     * opening a connection beyond the maximum size.
+     */
+    @Test
+    public void exhaustedPoolTimesOut() throws SQLException {
+        Connection first = pool.getConnection();
+        Connection second = pool.getConnection();
+        try {
+            pool.getConnection();
+            Assert.fail("Expected the third borrow to time out");
+        } catch (SQLException e) {
+            Assert.assertEquals(1, pool.getStats().getTimeouts());
+        }
+        Assert.assertEquals(2, pool.getStats().getTotal());
+        first.close();
+        second.close();
+    }
+
+    /**
+     * A connection that has been returned must not be usable through a stale reference.
+     */
+    @Test(expected = SQLException.class)
+    public void returnedConnectionRejectsUse() throws SQLException {
+        Connection connection = pool.getConnection();
+        connection.close();
+        connection.createStatement();
+    }
+}
@@ -21,21 +21,21 @@ public class CreateMessageTest {
     HttpClient webClient;
     ObjectMapper objectMapper;
     Javalin app;
+    String baseUrl;
 
     /**
-     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * Before every test, reset the database, restart the Javalin app on a free port, and create a new webClient and ObjectMapper
      * for interacting locally on the web.
-     * @throws InterruptedException
      */
     @Before
-    public void setUp() throws InterruptedException {
+    public void setUp() {
         ConnectionUtil.resetTestDatabase();
         socialMediaController = new SocialMediaController();
         app = socialMediaController.startAPI();
         webClient = HttpClient.newHttpClient();
         objectMapper = new ObjectMapper();
-        app.start(8080);
-        Thread.sleep(1000);
+        app.start(0);
+        baseUrl = "http://localhost:" + app.port();
     }
 
     @After
@@ -47,7 +47,7 @@ public class CreateMessageTest {
     
 
     /**
-     * Sending an http request to POST localhost:8080/messages with valid message credentials
+     * Sending an http request to POST /messages with valid message credentials
      * 
      * Expected Response:
      *  Status Code: 200
@@ -56,7 +56,7 @@ public class CreateMessageTest {
     @Test
     public void createMessageSuccessful() throws IOException, InterruptedException {
         HttpRequest postMessageRequest = HttpRequest.newBuilder()
-                .uri(URI.create("http://localhost:8080/messages"))
+                .uri(URI.create(baseUrl + "/messages"))
                 .POST(HttpRequest.BodyPublishers.ofString("{"+
                         "\"posted_by\":1, " +
                         "\"message_text\": \"hello message\", " +
@@ -75,7 +75,7 @@ public class CreateMessageTest {
     }
 
     /**
-     * Sending an http request to POST localhost:8080/messages with empty message
+     * Sending an http request to POST /messages with empty message
      * 
      * Expected Response:
      *  Status Code: 400
@@ -84,7 +84,7 @@ public class CreateMessageTest {
     @Test
     public void createMessageMessageTextBlank() throws IOException, InterruptedException {
         HttpRequest postMessageRequest = HttpRequest.newBuilder()
-                .uri(URI.create("http://localhost:8080/messages"))
+                .uri(URI.create(baseUrl + "/messages"))
                 .POST(HttpRequest.BodyPublishers.ofString("{"+
                         "\"posted_by\":1, " +
                         "\"message_text\": \"\", " +
@@ -100,7 +100,7 @@ public class CreateMessageTest {
 
 
     /**
-     * Sending an http request to POST localhost:8080/messages with message length greater than 255
+     * Sending an http request to POST /messages with message length greater than 255
      * 
      * Expected Response:
      *  Status Code: 400
@@ -109,7 +109,7 @@ public class CreateMessageTest {
     @Test
     public void createMessageMessageGreaterThan255() throws IOException, InterruptedException {
         HttpRequest postMessageRequest = HttpRequest.newBuilder()
-                .uri(URI.create("http://localhost:8080/messages"))
+                .uri(URI.create(baseUrl + "/messages"))
                 .POST(HttpRequest.BodyPublishers.ofString("{"+
                         "\"posted_by\":1, " +
                         "\"message_text\": \"aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa\", " +
@@ -125,7 +125,7 @@ public class CreateMessageTest {
 
 
     /**
-     * Sending an http request to POST localhost:8080/messages with a user id that doesnt exist in db
+     * Sending an http request to POST /messages with a user id that doesnt exist in db
      * 
      * Expected Response:
      *  Status Code: 400
@@ -134,7 +134,7 @@ public class CreateMessageTest {
     @Test
     public void createMessageUserNotInDb() throws IOException, InterruptedException {
         HttpRequest postMessageRequest = HttpRequest.newBuilder()
-                .uri(URI.create("http://localhost:8080/messages"))
+                .uri(URI.create(baseUrl + "/messages"))
                 .POST(HttpRequest.BodyPublishers.ofString("{"+
                         "\"posted_by\":3, " +
                         "\"message_text\": \"message test\", " +
@@ -0,0 +1,103 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Model.MessageBatchResult;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class CreateMessagesBatchTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+    String baseUrl;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app on a free port, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(0);
+        baseUrl = "http://localhost:" + app.port();
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to POST /messages/batch with a mix of valid and invalid messages
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: one result per message, created messages carrying generated ids in order
+     */
+    @Test
+    public void createMessagesBatchMixed() throws IOException, InterruptedException {
+        HttpRequest postBatchRequest = HttpRequest.newBuilder()
+                .uri(URI.create(baseUrl + "/messages/batch"))
+                .POST(HttpRequest.BodyPublishers.ofString("[" +
+                        "{\"posted_by\":1, \"message_text\": \"first\", \"time_posted_epoch\": 1669947792}," +
+                        "{\"posted_by\":1, \"message_text\": \"\", \"time_posted_epoch\": 1669947792}," +
+                        "{\"posted_by\":3, \"message_text\": \"nobody\", \"time_posted_epoch\": 1669947792}," +
+                        "{\"posted_by\":1, \"message_text\": \"second\", \"time_posted_epoch\": 1669947793}" +
+                        "]"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> response = webClient.send(postBatchRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+
+        List<MessageBatchResult> results = objectMapper.readValue(response.body(),
+                new TypeReference<List<MessageBatchResult>>(){});
+        Assert.assertEquals(4, results.size());
+        Assert.assertEquals(new Message(2, 1, "first", 1669947792), results.get(0).getMessage());
+        Assert.assertNotNull(results.get(1).getError());
+        Assert.assertNotNull(results.get(2).getError());
+        Assert.assertEquals(new Message(3, 1, "second", 1669947793), results.get(3).getMessage());
+
+        HttpRequest getRequest = HttpRequest.newBuilder()
+                .uri(URI.create(baseUrl + "/messages"))
+                .build();
+        HttpResponse<String> all = webClient.send(getRequest, HttpResponse.BodyHandlers.ofString());
+        List<Message> messages = objectMapper.readValue(all.body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(3, messages.size());
+    }
+
+    /**
+     * Sending an http request to POST /messages/batch with a body that is not a JSON list
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void createMessagesBatchMalformed() throws IOException, InterruptedException {
+        HttpRequest postBatchRequest = HttpRequest.newBuilder()
+                .uri(URI.create(baseUrl + "/messages/batch"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"posted_by\":1}"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> response = webClient.send(postBatchRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(400, response.statusCode());
+    }
+}
@@ -0,0 +1,76 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Util.DatabaseExecutor;
+import Util.UnitOfWork;
+
+public class DatabaseExecutorTest {
+    DatabaseExecutor executor;
+
+    @Before
+    public void setUp() {
+        executor = new DatabaseExecutor(1, 1);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    /**
+     * A unit of work detached from the calling thread should be active while the work runs, and ended afterwards.
+     */
+    @Test
+    public void unitOfWorkFollowsTheWork() throws Exception {
+        UnitOfWork.begin();
+        UnitOfWork unit = UnitOfWork.detach();
+        Assert.assertNull(UnitOfWork.current());
+
+        AtomicReference<UnitOfWork> seen = new AtomicReference<>();
+        executor.submit(unit, () -> seen.set(UnitOfWork.current())).get(5, TimeUnit.SECONDS);
+        Assert.assertSame(unit, seen.get());
+
+        // The unit of work was ended, so the executor thread no longer has one
+        executor.submit(null, () -> seen.set(UnitOfWork.current())).get(5, TimeUnit.SECONDS);
+        Assert.assertNull(seen.get());
+    }
+
+    /**
+     * Work that throws should complete its future exceptionally.
+     */
+    @Test(expected = ExecutionException.class)
+    public void failedWorkFailsTheFuture() throws Exception {
+        executor.submit(null, () -> {
+            throw new IllegalStateException("failed");
+        }).get(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Once the thread is busy and the queue is full, further work should be rejected straight away.
+     */
+    @Test
+    public void fullQueueRejects() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> running = executor.submit(null, release::await);
+        CompletableFuture<Void> queued = executor.submit(null, () -> { });
+        try {
+            executor.submit(null, () -> { });
+            Assert.fail("Expected the third submission to be rejected");
+        } catch (RejectedExecutionException e) {
+            // expected
+        } finally {
+            release.countDown();
+        }
+        running.get(5, TimeUnit.SECONDS);
+        queued.get(5, TimeUnit.SECONDS);
+    }
+}
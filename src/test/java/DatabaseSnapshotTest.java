@@ -0,0 +1,109 @@
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Util.DatabaseSnapshot;
+import Util.SchemaMigrator;
+
+public class DatabaseSnapshotTest {
+    Connection connection;
+
+    /**
+     * Before every test, migrate a private in-memory database and add one account with one message.
+     */
+    @Before
+    public void setUp() throws SQLException, IOException {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:snapshottest;DB_CLOSE_DELAY=-1");
+        dataSource.setUser("sa");
+        dataSource.setPassword("sa");
+        connection = dataSource.getConnection();
+        SchemaMigrator.migrate(connection);
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("INSERT INTO account (username, password) VALUES ('testuser1', 'password')");
+            statement.executeUpdate("INSERT INTO message (posted_by, message_text, time_posted_epoch) "
+                    + "VALUES (1, 'test message 1', 1669947792)");
+        }
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP ALL OBJECTS");
+        }
+        connection.close();
+    }
+
+    /**
+     * Restoring should undo inserts, updates and deletes made after the snapshot was taken.
+     */
+    @Test
+    public void restoreUndoesChanges() throws SQLException {
+        DatabaseSnapshot snapshot = DatabaseSnapshot.capture(connection);
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("INSERT INTO account (username, password) VALUES ('testuser2', 'password')");
+            statement.executeUpdate("UPDATE message SET message_text = 'changed' WHERE message_id = 1");
+            statement.executeUpdate("INSERT INTO message (posted_by, message_text, time_posted_epoch) "
+                    + "VALUES (2, 'test message 2', 1669947793)");
+            statement.executeUpdate("DELETE FROM message WHERE message_id = 1");
+        }
+
+        snapshot.restore(connection);
+
+        Assert.assertEquals(1, count("SELECT COUNT(*) FROM account"));
+        Assert.assertEquals(1, count("SELECT COUNT(*) FROM message"));
+        Assert.assertEquals(1, count("SELECT COUNT(*) FROM message "
+                + "WHERE message_id = 1 AND posted_by = 1 AND message_text = 'test message 1'"));
+        Assert.assertEquals(2, count("SELECT COUNT(*) FROM schema_version"));
+    }
+
+    /**
+     * After a restore, new rows should get the ids they would have got straight after the snapshot was taken.
+     */
+    @Test
+    public void restoreRestartsIdentities() throws SQLException {
+        DatabaseSnapshot snapshot = DatabaseSnapshot.capture(connection);
+        try (Statement statement = connection.createStatement()) {
+            for (int i = 0; i < 3; i++) {
+                statement.executeUpdate("INSERT INTO message (posted_by, message_text, time_posted_epoch) "
+                        + "VALUES (1, 'extra', 1669947793)");
+            }
+        }
+
+        snapshot.restore(connection);
+
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("INSERT INTO message (posted_by, message_text, time_posted_epoch) "
+                    + "VALUES (1, 'after restore', 1669947794)");
+        }
+        Assert.assertEquals(2, count("SELECT message_id FROM message WHERE message_text = 'after restore'"));
+    }
+
+    /**
+     * Foreign keys should be enforced again once a restore has finished.
+     */
+    @Test(expected = SQLException.class)
+    public void restoreReenablesReferentialIntegrity() throws SQLException {
+        DatabaseSnapshot.capture(connection).restore(connection);
+
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("INSERT INTO message (posted_by, message_text, time_posted_epoch) "
+                    + "VALUES (99, 'no such account', 1669947793)");
+        }
+    }
+
+    private long count(String sql) throws SQLException {
+        try (Statement statement = connection.createStatement(); ResultSet rs = statement.executeQuery(sql)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+}
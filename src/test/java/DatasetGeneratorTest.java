@@ -0,0 +1,84 @@
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Util.DatasetGenerator;
+import Util.SchemaMigrator;
+
+public class DatasetGeneratorTest {
+    Connection connection;
+
+    /**
+     * Before every test, migrate a private in-memory database so the shared database is untouched.
+     */
+    @Before
+    public void setUp() throws SQLException, IOException {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:generatortest;DB_CLOSE_DELAY=-1");
+        dataSource.setUser("sa");
+        dataSource.setPassword("sa");
+        connection = dataSource.getConnection();
+        SchemaMigrator.migrate(connection);
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP ALL OBJECTS");
+        }
+        connection.close();
+    }
+
+    /**
+     * The generator should create exactly the requested rows, with valid posted_by values and text lengths.
+     */
+    @Test
+    public void generatesRequestedRows() throws SQLException {
+        new DatasetGenerator(100, 10000).generate(connection);
+
+        Assert.assertEquals(100, count("SELECT COUNT(*) FROM account"));
+        Assert.assertEquals(10000, count("SELECT COUNT(*) FROM message"));
+        Assert.assertEquals(0, count("SELECT COUNT(*) FROM message WHERE posted_by NOT IN (SELECT account_id FROM account)"));
+        Assert.assertEquals(0, count("SELECT COUNT(*) FROM message WHERE LENGTH(message_text) NOT BETWEEN 1 AND 255"));
+        Assert.assertEquals(1, count("SELECT account_id FROM account WHERE username = 'user0'"));
+    }
+
+    /**
+     * Messages per account should be skewed: the most active account should post far more than the median one.
+     */
+    @Test
+    public void messagesPerAccountAreSkewed() throws SQLException {
+        new DatasetGenerator(100, 10000).generate(connection);
+
+        long busiest = count("SELECT MAX(c) FROM (SELECT COUNT(*) c FROM message GROUP BY posted_by)");
+        long median = count("SELECT MEDIAN(c) FROM (SELECT COUNT(*) c FROM message GROUP BY posted_by)");
+        Assert.assertTrue("busiest " + busiest + ", median " + median, busiest > 10 * median);
+    }
+
+    /**
+     * Running the generator again should replace the dataset rather than add to it.
+     */
+    @Test
+    public void generateReplacesExistingRows() throws SQLException {
+        new DatasetGenerator(10, 100).generate(connection);
+        new DatasetGenerator(10, 100).generate(connection);
+
+        Assert.assertEquals(10, count("SELECT COUNT(*) FROM account"));
+        Assert.assertEquals(100, count("SELECT COUNT(*) FROM message"));
+    }
+
+    private long count(String sql) throws SQLException {
+        try (Statement statement = connection.createStatement(); ResultSet rs = statement.executeQuery(sql)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+}
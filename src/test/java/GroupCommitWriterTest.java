@@ -0,0 +1,105 @@
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.GroupCommitWriter;
+import DAO.InMemoryAccountStore;
+import DAO.InMemoryMessageStore;
+import DAO.MessageDAO;
+import Model.Account;
+import Model.Message;
+import Util.ConnectionUtil;
+
+public class GroupCommitWriterTest {
+    MessageDAO messageDAO;
+    GroupCommitWriter writer;
+
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        messageDAO = new MessageDAO();
+        writer = new GroupCommitWriter(messageDAO, 1024, 16, 2000);
+    }
+
+    @After
+    public void tearDown() {
+        writer.shutdown();
+    }
+
+    /**
+     * Messages submitted together should all be committed, each with its own generated id.
+     */
+    @Test
+    public void submittedMessagesAreCommitted() {
+        List<CompletableFuture<Message>> futures = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            futures.add(writer.submit(new Message(1, "group message " + i, 1669947792 + i)));
+        }
+
+        Set<Integer> ids = new HashSet<>();
+        for (CompletableFuture<Message> future : futures) {
+            Message persisted = future.join();
+            Assert.assertNotNull(persisted);
+            ids.add(persisted.getMessage_id());
+            Assert.assertEquals(persisted, messageDAO.getMessageById(persisted.getMessage_id()));
+        }
+        Assert.assertEquals(50, ids.size());
+    }
+
+    /**
+     * A message for a missing account should fail on its own without failing the rest of its group.
+     */
+    @Test
+    public void invalidMessageDoesNotFailItsGroup() {
+        CompletableFuture<Message> good = writer.submit(new Message(1, "good", 1669947792));
+        CompletableFuture<Message> bad = writer.submit(new Message(99, "bad", 1669947792));
+        CompletableFuture<Message> alsoGood = writer.submit(new Message(1, "also good", 1669947793));
+
+        Assert.assertNotNull(good.join());
+        Assert.assertNull(bad.join());
+        Assert.assertNotNull(alsoGood.join());
+    }
+
+    /**
+     * Messages submitted while the writer shuts down should still be written, whichever side of the shutdown they
+     * land on.
+     */
+    @Test
+    public void messagesRacingShutdownAreWritten() throws Exception {
+        InMemoryAccountStore accountStore = new InMemoryAccountStore();
+        accountStore.insertAccount(new Account("testuser1", "password"));
+        InMemoryMessageStore messageStore = new InMemoryMessageStore(accountStore);
+
+        for (int round = 0; round < 20; round++) {
+            GroupCommitWriter racingWriter = new GroupCommitWriter(messageStore, 1024, 16, 50);
+            List<CompletableFuture<Message>> futures = new ArrayList<>();
+            Thread[] submitters = new Thread[4];
+            for (int t = 0; t < submitters.length; t++) {
+                submitters[t] = new Thread(() -> {
+                    for (int i = 0; i < 200; i++) {
+                        CompletableFuture<Message> future = racingWriter.submit(new Message(1, "racing", 1669947792));
+                        synchronized (futures) {
+                            futures.add(future);
+                        }
+                    }
+                });
+                submitters[t].start();
+            }
+            racingWriter.shutdown();
+            for (Thread submitter : submitters) {
+                submitter.join();
+            }
+            for (CompletableFuture<Message> future : futures) {
+                Assert.assertNotNull(future.get(5, TimeUnit.SECONDS));
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.InMemoryAccountStore;
+import DAO.InMemoryMessageStore;
+import Model.Account;
+import Model.Message;
+import Model.MessageBatchResult;
+import Service.MessageService;
+
+public class InMemoryStoreTest {
+    InMemoryAccountStore accountStore;
+    InMemoryMessageStore messageStore;
+
+    /**
+     * Before every test, create empty stores holding one account, testuser1 with account_id 1.
+     */
+    @Before
+    public void setUp() {
+        accountStore = new InMemoryAccountStore();
+        messageStore = new InMemoryMessageStore(accountStore);
+        accountStore.insertAccount(new Account("testuser1", "password"));
+    }
+
+    /**
+     * Usernames should be unique and account_ids generated in order.
+     */
+    @Test
+    public void insertAccountRejectsTakenUsername() {
+        Assert.assertEquals(new Account(2, "testuser2", "password"),
+                accountStore.insertAccount(new Account("testuser2", "password")));
+        Assert.assertNull(accountStore.insertAccount(new Account("testuser1", "other")));
+        Assert.assertEquals(new Account(1, "testuser1", "password"), accountStore.getAccountByUsername("testuser1"));
+        Assert.assertTrue(accountStore.loadAccountIds().contains(2));
+    }
+
+    /**
+     * A message should get a generated message_id, and one posted by a missing account should be rejected.
+     */
+    @Test
+    public void insertMessageChecksPostedBy() {
+        Message stored = messageStore.insertMessage(new Message(1, "test message 1", 1669947792));
+        Assert.assertEquals(new Message(1, 1, "test message 1", 1669947792), stored);
+        Assert.assertEquals(stored, messageStore.getMessageById(1));
+        Assert.assertNull(messageStore.insertMessage(new Message(99, "no such account", 1669947792)));
+    }
+
+    /**
+     * An account's messages should come back ordered by time_posted_epoch then message_id, and paging should
+     * continue strictly after the cursor position.
+     */
+    @Test
+    public void accountMessagesAreOrderedByTime() throws IOException {
+        messageStore.insertMessage(new Message(1, "third", 30));
+        messageStore.insertMessage(new Message(1, "first", 10));
+        messageStore.insertMessage(new Message(1, "second", 10));
+
+        List<Message> all = messageStore.getMessagesByAccountId(1);
+        Assert.assertEquals(Arrays.asList("first", "second", "third"),
+                Arrays.asList(all.get(0).getMessage_text(), all.get(1).getMessage_text(), all.get(2).getMessage_text()));
+
+        List<Message> page = messageStore.getMessagesByAccountIdAfter(1, 10, 2, 10);
+        Assert.assertEquals(2, page.size());
+        Assert.assertEquals("second", page.get(0).getMessage_text());
+
+        Assert.assertEquals(Arrays.asList(messageStore.getMessageById(2), messageStore.getMessageById(3)),
+                messageStore.getMessagesAfter(1, 2));
+
+        List<Message> streamed = new ArrayList<>();
+        Assert.assertEquals(3, messageStore.forEachMessageByAccountId(1, streamed::add));
+        Assert.assertEquals(all, streamed);
+        Assert.assertEquals(0, messageStore.forEachMessageByAccountId(2, streamed::add));
+    }
+
+    /**
+     * Updating and deleting should keep the message_id and per-account indexes in step.
+     */
+    @Test
+    public void updateAndDeleteChangeBothIndexes() {
+        messageStore.insertMessage(new Message(1, "test message 1", 1669947792));
+
+        Message updated = messageStore.updateMessageById(1, new Message(1, "updated", 0));
+        Assert.assertEquals(new Message(1, 1, "updated", 1669947792), updated);
+        Assert.assertEquals(updated, messageStore.getMessagesByAccountId(1).get(0));
+
+        Assert.assertEquals(updated, messageStore.deleteMessageById(1));
+        Assert.assertNull(messageStore.getMessageById(1));
+        Assert.assertTrue(messageStore.getMessagesByAccountId(1).isEmpty());
+        Assert.assertNull(messageStore.deleteMessageById(1));
+        Assert.assertEquals(0, messageStore.getTextArena().getUsedBytes());
+    }
+
+    /**
+     * A batch with any invalid message should store nothing.
+     */
+    @Test
+    public void insertMessagesIsAllOrNothing() {
+        Assert.assertNull(messageStore.insertMessages(Arrays.asList(
+                new Message(1, "valid", 1669947792), new Message(99, "no such account", 1669947792))));
+        Assert.assertTrue(messageStore.getAllMessages().isEmpty());
+
+        Assert.assertEquals(2, messageStore.insertMessages(Arrays.asList(
+                new Message(1, "one", 1669947792), new Message(1, "two", 1669947793))).size());
+        Assert.assertEquals(2, messageStore.getAllMessages().size());
+    }
+
+    /**
+     * MessageService should run unchanged on top of the in-memory stores.
+     */
+    @Test
+    public void messageServiceUsesStores() {
+        MessageService messageService = new MessageService(messageStore, accountStore);
+
+        List<MessageBatchResult> results = messageService.createMessages(Arrays.asList(
+                new Message(1, "hello", 1669947792), new Message(2, "no such account", 1669947792)));
+        Assert.assertEquals(new Message(1, 1, "hello", 1669947792), results.get(0).getMessage());
+        Assert.assertNotNull(results.get(1).getError());
+        Assert.assertEquals(new Message(1, 1, "hello", 1669947792), messageService.getMessageById(1));
+        Assert.assertEquals(new Message(1, 1, "hello", 1669947792), messageService.getMessageById(1));
+        Assert.assertNull(messageService.getMessageById(2));
+        Assert.assertNull(messageService.getMessageById(2));
+    }
+}
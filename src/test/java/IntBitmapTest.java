@@ -0,0 +1,47 @@
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import Util.IntBitmap;
+
+public class IntBitmapTest {
+
+    /**
+     * The bitmap should agree with a HashSet on random values, across sparse and dense chunks.
+     */
+    @Test
+    public void matchesHashSet() {
+        IntBitmap bitmap = new IntBitmap();
+        Set<Integer> expected = new HashSet<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 20000; i++) {
+            // Mostly dense low ids, which convert their chunk to a bitmap, plus some sparse large ones
+            int value = i % 4 == 0 ? random.nextInt(Integer.MAX_VALUE) : random.nextInt(10000);
+            Assert.assertEquals(expected.add(value), bitmap.add(value));
+        }
+        Assert.assertEquals(expected.size(), bitmap.getCardinality());
+        for (int i = 0; i < 100000; i++) {
+            int value = i % 2 == 0 ? random.nextInt(20000) : random.nextInt(Integer.MAX_VALUE);
+            Assert.assertEquals(expected.contains(value), bitmap.contains(value));
+        }
+    }
+
+    /**
+     * Values that were never added should not be reported, including ones sharing a chunk with added values.
+     */
+    @Test
+    public void absentValuesAreNotContained() {
+        IntBitmap bitmap = new IntBitmap();
+        bitmap.add(1);
+        bitmap.add(70000);
+        Assert.assertTrue(bitmap.contains(1));
+        Assert.assertTrue(bitmap.contains(70000));
+        Assert.assertFalse(bitmap.contains(2));
+        Assert.assertFalse(bitmap.contains(70001));
+        Assert.assertFalse(bitmap.contains(0));
+        Assert.assertEquals(2, bitmap.getCardinality());
+    }
+}
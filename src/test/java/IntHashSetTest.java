@@ -0,0 +1,45 @@
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import Util.IntHashSet;
+
+public class IntHashSetTest {
+
+    /**
+     * The set should agree with a HashSet on random values while it grows, including 0 and negative values.
+     */
+    @Test
+    public void matchesHashSet() {
+        IntHashSet set = new IntHashSet(2);
+        Set<Integer> expected = new HashSet<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 20000; i++) {
+            int value = i % 2 == 0 ? random.nextInt(5000) - 100 : random.nextInt();
+            Assert.assertEquals(expected.add(value), set.add(value));
+        }
+        Assert.assertEquals(expected.size(), set.size());
+        for (int i = 0; i < 20000; i++) {
+            int value = random.nextInt(10000) - 100;
+            Assert.assertEquals(expected.contains(value), set.contains(value));
+        }
+    }
+
+    /**
+     * toArray should return every value once.
+     */
+    @Test
+    public void toArrayReturnsEveryValue() {
+        IntHashSet set = new IntHashSet();
+        for (int value : new int[] {3, 0, 1, 3, 0, 100000}) {
+            set.add(value);
+        }
+        int[] values = set.toArray();
+        Arrays.sort(values);
+        Assert.assertArrayEquals(new int[] {0, 1, 3, 100000}, values);
+    }
+}
@@ -0,0 +1,70 @@
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import Util.IntObjectMap;
+
+public class IntObjectMapTest {
+
+    /**
+     * The map should agree with a HashMap on random keys while it grows, including replaced values.
+     */
+    @Test
+    public void matchesHashMap() {
+        IntObjectMap<String> map = new IntObjectMap<>(2);
+        Map<Integer, String> expected = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 20000; i++) {
+            int key = random.nextInt(8000) - 100;
+            Assert.assertEquals(expected.put(key, "value " + i), map.put(key, "value " + i));
+        }
+        Assert.assertEquals(expected.size(), map.size());
+        for (int key = -200; key < 9000; key++) {
+            Assert.assertEquals(expected.get(key), map.get(key));
+        }
+    }
+
+    /**
+     * computeIfAbsent should create a value only for a missing key.
+     */
+    @Test
+    public void computeIfAbsentCreatesOnce() {
+        IntObjectMap<StringBuilder> map = new IntObjectMap<>();
+        StringBuilder first = map.computeIfAbsent(7, key -> new StringBuilder("created " + key));
+        Assert.assertSame(first, map.computeIfAbsent(7, key -> new StringBuilder("again")));
+        Assert.assertEquals("created 7", map.get(7).toString());
+    }
+
+    /**
+     * Readers without a lock should always find keys that were added before they started, while a writer keeps
+     * adding keys and growing the table.
+     */
+    @Test
+    public void readersSeeEarlierKeysWhileTableGrows() throws InterruptedException {
+        IntObjectMap<Integer> map = new IntObjectMap<>();
+        for (int key = 0; key < 100; key++) {
+            map.put(key, key);
+        }
+        AtomicBoolean failed = new AtomicBoolean();
+        Thread reader = new Thread(() -> {
+            for (int round = 0; round < 2000; round++) {
+                for (int key = 0; key < 100; key++) {
+                    Integer value = map.get(key);
+                    if (value == null || value != key) {
+                        failed.set(true);
+                    }
+                }
+            }
+        });
+        reader.start();
+        for (int key = 100; key < 200000; key++) {
+            map.put(key, key);
+        }
+        reader.join();
+        Assert.assertFalse(failed.get());
+    }
+}
@@ -0,0 +1,208 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.InMemoryAccountStore;
+import DAO.LogMessageStore;
+import Model.Account;
+import Model.Message;
+
+public class LogMessageStoreTest {
+    /**
+     * Room for a few dozen records, so that tests can fill segments quickly.
+     */
+    static final int SEGMENT_BYTES = 4096;
+
+    Path directory;
+    InMemoryAccountStore accountStore;
+    LogMessageStore messageStore;
+
+    /**
+     * Before every test, open a log in an empty directory, with one account, testuser1 with account_id 1.
+     */
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("messagelog");
+        accountStore = new InMemoryAccountStore();
+        accountStore.insertAccount(new Account("testuser1", "password"));
+        messageStore = new LogMessageStore(directory, SEGMENT_BYTES, false, accountStore);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        messageStore.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private LogMessageStore reopen() throws IOException {
+        messageStore.close();
+        messageStore = new LogMessageStore(directory, SEGMENT_BYTES, false, accountStore);
+        return messageStore;
+    }
+
+    /**
+     * A message should get a generated message_id, and one posted by a missing account should be rejected.
+     */
+    @Test
+    public void insertMessageChecksPostedBy() {
+        Message stored = messageStore.insertMessage(new Message(1, "test message 1", 1669947792));
+        Assert.assertEquals(new Message(1, 1, "test message 1", 1669947792), stored);
+        Assert.assertEquals(stored, messageStore.getMessageById(1));
+        Assert.assertNull(messageStore.insertMessage(new Message(99, "no such account", 1669947792)));
+    }
+
+    /**
+     * Updating and deleting should keep the message_id and per-account indexes in step.
+     */
+    @Test
+    public void updateAndDeleteChangeBothIndexes() {
+        messageStore.insertMessage(new Message(1, "test message 1", 1669947792));
+
+        Message updated = messageStore.updateMessageById(1, new Message(1, "updated ü", 0));
+        Assert.assertEquals(new Message(1, 1, "updated ü", 1669947792), updated);
+        Assert.assertEquals(updated, messageStore.getMessagesByAccountId(1).get(0));
+
+        Assert.assertEquals(updated, messageStore.deleteMessageById(1));
+        Assert.assertNull(messageStore.getMessageById(1));
+        Assert.assertTrue(messageStore.getMessagesByAccountId(1).isEmpty());
+        Assert.assertNull(messageStore.deleteMessageById(1));
+    }
+
+    /**
+     * Reopening the log should replay inserts, updates and deletes, and carry on from the highest message_id.
+     */
+    @Test
+    public void reopenReplaysTheLog() throws IOException {
+        messageStore.insertMessages(Arrays.asList(
+                new Message(1, "one", 10), new Message(1, "two", 20), new Message(1, null, 30)));
+        messageStore.updateMessageById(1, new Message(1, "one updated", 0));
+        messageStore.deleteMessageById(2);
+
+        reopen();
+
+        List<Message> messages = messageStore.getMessagesByAccountId(1);
+        Assert.assertEquals(2, messages.size());
+        Assert.assertEquals(new Message(1, 1, "one updated", 10), messages.get(0));
+        Assert.assertEquals(3, messages.get(1).getMessage_id());
+        Assert.assertNull(messages.get(1).getMessage_text());
+        Assert.assertEquals(4, messageStore.insertMessage(new Message(1, "four", 40)).getMessage_id());
+    }
+
+    /**
+     * Bytes after the last intact record, as a crash part way through an append would leave, should be ignored.
+     */
+    @Test
+    public void reopenStopsAtTornRecord() throws IOException {
+        messageStore.insertMessage(new Message(1, "kept", 10));
+        messageStore.insertMessage(new Message(1, "torn", 20));
+        messageStore.close();
+
+        Path segment;
+        try (Stream<Path> files = Files.list(directory)) {
+            segment = files.findFirst().get();
+        }
+        byte[] bytes = Files.readAllBytes(segment);
+        // The second record starts after the first, 32 header bytes and 4 of text; damage its text
+        bytes[36 + 33] ^= 1;
+        Files.write(segment, bytes);
+
+        reopen();
+        Assert.assertEquals(new Message(1, 1, "kept", 10), messageStore.getMessageById(1));
+        Assert.assertNull(messageStore.getMessageById(2));
+        Assert.assertEquals(new Message(2, 1, "again", 30), messageStore.insertMessage(new Message(1, "again", 30)));
+    }
+
+    /**
+     * A batch whose commit record never made it to the log, as after a crash part way through, should be dropped as a
+     * whole on reopen.
+     */
+    @Test
+    public void reopenDropsUncommittedBatch() throws IOException {
+        messageStore.insertMessage(new Message(1, "kept", 10));
+        messageStore.insertMessages(Arrays.asList(new Message(1, "one", 20), new Message(1, "two", 30)));
+        messageStore.close();
+
+        Path segment;
+        try (Stream<Path> files = Files.list(directory)) {
+            segment = files.findFirst().get();
+        }
+        byte[] bytes = Files.readAllBytes(segment);
+        // After the 36 byte PUT come the 32 byte BATCH_BEGIN, two 35 byte BATCH_PUTs and the BATCH_COMMIT; damage it
+        bytes[36 + 32 + 35 + 35 + 8] ^= 1;
+        Files.write(segment, bytes);
+
+        reopen();
+        Assert.assertEquals(new Message(1, 1, "kept", 10), messageStore.getMessageById(1));
+        Assert.assertNull(messageStore.getMessageById(2));
+        Assert.assertNull(messageStore.getMessageById(3));
+        Assert.assertEquals(1, messageStore.getMessagesByAccountId(1).size());
+    }
+
+    /**
+     * message_ids should not be handed out again after compaction has dropped every record of the highest ones.
+     */
+    @Test
+    public void compactionKeepsMessageIdsUnique() throws IOException {
+        for (int i = 0; i < 100; i++) {
+            messageStore.insertMessage(new Message(1, "message " + i, i));
+        }
+        for (int i = 2; i <= 100; i++) {
+            messageStore.deleteMessageById(i);
+        }
+        // Updates fill further segments, so that the ones holding the tombstones are sealed and compacted
+        for (int i = 0; i < 300; i++) {
+            messageStore.updateMessageById(1, new Message(1, "update " + i, 0));
+        }
+        Assert.assertTrue(messageStore.compact() > 0);
+
+        reopen();
+        Assert.assertEquals(1, messageStore.getAllMessages().size());
+        Assert.assertEquals(101, messageStore.insertMessage(new Message(1, "new", 0)).getMessage_id());
+    }
+
+    /**
+     * Filling a segment should start another, and compaction should drop mostly dead segments without losing any
+     * live message, also across a reopen.
+     */
+    @Test
+    public void compactionKeepsLiveMessages() throws IOException {
+        for (int i = 0; i < 200; i++) {
+            messageStore.insertMessage(new Message(1, "message " + i, i));
+        }
+        for (int i = 1; i <= 200; i++) {
+            if (i % 10 != 0) {
+                messageStore.deleteMessageById(i);
+            }
+        }
+        long before = segmentCount();
+        Assert.assertTrue(before > 1);
+
+        Assert.assertTrue(messageStore.compact() > 0);
+        Assert.assertTrue(segmentCount() < before);
+
+        List<Message> live = messageStore.getAllMessages();
+        Assert.assertEquals(20, live.size());
+        Assert.assertEquals(new Message(10, 1, "message 9", 9), live.get(0));
+
+        reopen();
+        Assert.assertEquals(live, messageStore.getAllMessages());
+        Assert.assertEquals(live, messageStore.getMessagesByAccountId(1));
+    }
+
+    private long segmentCount() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class MetricsTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+    String baseUrl;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app on a free port, and create a new webClient for interacting
+     * locally on the web.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(0);
+        baseUrl = "http://localhost:" + app.port();
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to GET /messages/1, then GET /metrics
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: Prometheus text including the route's latency histogram and the DAO query timer
+     */
+    @Test
+    public void metricsIncludeRouteAndQueryTimers() throws IOException, InterruptedException {
+        HttpRequest messageRequest = HttpRequest.newBuilder()
+                .uri(URI.create(baseUrl + "/messages/1"))
+                .build();
+        Assert.assertEquals(200, webClient.send(messageRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        HttpRequest metricsRequest = HttpRequest.newBuilder()
+                .uri(URI.create(baseUrl + "/metrics"))
+                .build();
+        HttpResponse<String> response = webClient.send(metricsRequest, HttpResponse.BodyHandlers.ofString());
+
+        Assert.assertEquals(200, response.statusCode());
+        String body = response.body();
+        Assert.assertTrue(body.contains("# TYPE http_server_requests_seconds histogram"));
+        Assert.assertTrue(body.contains(
+                "http_server_requests_seconds_bucket{method=\"GET\",route=\"/messages/{message_id}\",status=\"200\",le=\"+Inf\"}"));
+        Assert.assertTrue(body.contains("http_server_requests_in_flight "));
+        Assert.assertTrue(body.contains("db_query_seconds_count{query=\"MessageDAO.getMessageById\"}"));
+        Assert.assertTrue(body.contains("db_pool_active_connections "));
+    }
+}
@@ -0,0 +1,111 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.MessageDAO;
+import Model.Message;
+import Model.MessagePage;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class PaginateMessagesTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+    String baseUrl;
+
+    /**
+     * Before every test, reset the database, add four more messages for account 1 (five in total), restart the
+     * Javalin app on a free port, and create a new webClient and ObjectMapper for interacting locally on the web.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        MessageDAO messageDAO = new MessageDAO();
+        for (int i = 2; i <= 5; i++) {
+            messageDAO.insertMessage(new Message(1, "test message " + i, 1669947792 + i));
+        }
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(0);
+        baseUrl = "http://localhost:" + app.port();
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Following next_cursor from GET /messages?limit=2 should visit every message exactly once, in
+     * message_id order, and end with a null cursor.
+     */
+    @Test
+    public void getAllMessagesFollowingCursor() throws IOException, InterruptedException {
+        List<Integer> seen = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            MessagePage page = getPage(baseUrl + "/messages?limit=2" + (cursor == null ? "" : "&cursor=" + cursor));
+            Assert.assertTrue(page.getMessages().size() <= 2);
+            page.getMessages().forEach(message -> seen.add(message.getMessage_id()));
+            cursor = page.getNext_cursor();
+            pages++;
+        } while (cursor != null);
+
+        Assert.assertEquals(List.of(1, 2, 3, 4, 5), seen);
+        Assert.assertEquals(3, pages);
+    }
+
+    /**
+     * Following next_cursor from GET /accounts/1/messages?limit=3 should visit every message by the
+     * account in time_posted_epoch order.
+     */
+    @Test
+    public void getAccountMessagesFollowingCursor() throws IOException, InterruptedException {
+        MessagePage first = getPage(baseUrl + "/accounts/1/messages?limit=3");
+        Assert.assertEquals(3, first.getMessages().size());
+        Assert.assertNotNull(first.getNext_cursor());
+
+        MessagePage second = getPage(baseUrl + "/accounts/1/messages?limit=3&cursor=" + first.getNext_cursor());
+        Assert.assertEquals(2, second.getMessages().size());
+        Assert.assertNull(second.getNext_cursor());
+        Assert.assertEquals(5, second.getMessages().get(1).getMessage_id());
+    }
+
+    /**
+     * A cursor that was not produced by the server should be rejected with 400.
+     */
+    @Test
+    public void getAllMessagesInvalidCursor() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(baseUrl + "/messages?cursor=not-a-cursor"))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(400, response.statusCode());
+    }
+
+    private MessagePage getPage(String uri) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(uri))
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body(), MessagePage.class);
+    }
+}
@@ -0,0 +1,104 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.AccountDAO;
+import DAO.MessageDAO;
+import Util.ConnectionUtil;
+
+/**
+ * Runs EXPLAIN on the statements issued by AccountDAO and MessageDAO and fails if any of them would scan a whole table
+ * rather than seek through an index. The statements are the DAOs' own constants, so a changed query is checked as it
+ * is run. EXPLAIN only plans a write; nothing is inserted, updated or deleted.
+ *
+ * Full listings (getAllMessages, forEachMessage, loadAccountIds, forEachUsername) read every row by design and are not
+ * checked.
+ */
+public class QueryPlanTest {
+    Connection connection;
+
+    @Before
+    public void setUp() throws SQLException {
+        ConnectionUtil.resetTestDatabase();
+        connection = ConnectionUtil.getConnection();
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Test
+    public void getAccountByUsernameUsesIndex() throws SQLException {
+        assertIndexed(AccountDAO.SELECT_ACCOUNT_BY_USERNAME, "testuser1");
+    }
+
+    @Test
+    public void getExistingAccountIdsUsesIndex() throws SQLException {
+        assertIndexed(AccountDAO.SELECT_EXISTING_ACCOUNT_IDS,
+                connection.createArrayOf("INTEGER", new Integer[] {1, 2}));
+    }
+
+    @Test
+    public void insertAccountDoesNotScan() throws SQLException {
+        assertIndexed(AccountDAO.INSERT_ACCOUNT_RETURNING, "planuser", "password");
+    }
+
+    @Test
+    public void getMessageByIdUsesIndex() throws SQLException {
+        assertIndexed(MessageDAO.SELECT_MESSAGE_BY_ID, 1);
+    }
+
+    @Test
+    public void getMessagesByAccountIdUsesIndex() throws SQLException {
+        assertIndexed(MessageDAO.SELECT_MESSAGES_BY_ACCOUNT_ID, 1);
+    }
+
+    @Test
+    public void getMessagesAfterUsesIndex() throws SQLException {
+        assertIndexed(MessageDAO.SELECT_MESSAGES_AFTER, 0, 100);
+    }
+
+    @Test
+    public void getMessagesByAccountIdAfterUsesIndex() throws SQLException {
+        assertIndexed(MessageDAO.SELECT_MESSAGES_BY_ACCOUNT_ID_AFTER, 1, 0L, 0, 100);
+    }
+
+    @Test
+    public void insertMessageDoesNotScan() throws SQLException {
+        assertIndexed(MessageDAO.INSERT_MESSAGE_RETURNING, 1, "planned", 0L);
+        assertIndexed(MessageDAO.INSERT_MESSAGE, 1, "planned", 0L);
+    }
+
+    @Test
+    public void updateMessageByIdUsesIndex() throws SQLException {
+        assertIndexed(MessageDAO.UPDATE_MESSAGE_BY_ID_RETURNING, "updated", 1);
+    }
+
+    @Test
+    public void deleteMessageByIdUsesIndex() throws SQLException {
+        assertIndexed(MessageDAO.DELETE_MESSAGE_BY_ID_RETURNING, 1);
+    }
+
+    /**
+     * EXPLAIN the statement with the given parameters and fail if H2 plans a table scan.
+     */
+    private void assertIndexed(String sql, Object... params) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement("EXPLAIN " + sql)) {
+            for (int i = 0; i < params.length; i++) {
+                ps.setObject(i + 1, params[i]);
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                Assert.assertTrue(rs.next());
+                String plan = rs.getString(1);
+                Assert.assertFalse("Table scan in plan for: " + sql + "\n" + plan, plan.contains("tableScan"));
+            }
+        }
+    }
+}
@@ -24,21 +24,21 @@ public class RetrieveAllMessagesForUserTest {
     HttpClient webClient;
     ObjectMapper objectMapper;
     Javalin app;
+    String baseUrl;
 
     /**
-     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * Before every test, reset the database, restart the Javalin app on a free port, and create a new webClient and ObjectMapper
      * for interacting locally on the web.
-     * @throws InterruptedException
      */
     @Before
-    public void setUp() throws InterruptedException {
+    public void setUp() {
         ConnectionUtil.resetTestDatabase();
         socialMediaController = new SocialMediaController();
         app = socialMediaController.startAPI();
         webClient = HttpClient.newHttpClient();
         objectMapper = new ObjectMapper();
-        app.start(8080);
-        Thread.sleep(1000);
+        app.start(0);
+        baseUrl = "http://localhost:" + app.port();
     }
 
     @After
@@ -47,7 +47,7 @@ public class RetrieveAllMessagesForUserTest {
     }
 
     /**
-     * Sending an http request to GET localhost:8080/accounts/1/messages (messages exist for user) 
+     * Sending an http request to GET /accounts/1/messages (messages exist for user) 
      * 
      * Expected Response:
      *  Status Code: 200
@@ -56,7 +56,7 @@ public class RetrieveAllMessagesForUserTest {
     @Test
     public void getAllMessagesFromUserMessageExists() throws IOException, InterruptedException {
         HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create("http://localhost:8080/accounts/1/messages"))
+                .uri(URI.create(baseUrl + "/accounts/1/messages"))
                 .build();
         HttpResponse response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
         int status = response.statusCode();
@@ -70,7 +70,7 @@ public class RetrieveAllMessagesForUserTest {
     }
 
     /**
-     * Sending an http request to GET localhost:8080/accounts/1/messages (messages does NOT exist for user) 
+     * Sending an http request to GET /accounts/1/messages (messages does NOT exist for user) 
      * 
      * Expected Response:
      *  Status Code: 200
@@ -79,7 +79,7 @@ public class RetrieveAllMessagesForUserTest {
     @Test
     public void getAllMessagesFromUserNoMessagesFound() throws IOException, InterruptedException {
         HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create("http://localhost:8080/accounts/2/messages"))
+                .uri(URI.create(baseUrl + "/accounts/2/messages"))
                 .build();
         HttpResponse response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
         int status = response.statusCode();
@@ -27,21 +27,21 @@ public class RetrieveAllMessagesTest {
     HttpClient webClient;
     ObjectMapper objectMapper;
     Javalin app;
+    String baseUrl;
 
     /**
-     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * Before every test, reset the database, restart the Javalin app on a free port, and create a new webClient and ObjectMapper
      * for interacting locally on the web.
-     * @throws InterruptedException
      */
     @Before
-    public void setUp() throws InterruptedException {
+    public void setUp() {
         ConnectionUtil.resetTestDatabase();
         socialMediaController = new SocialMediaController();
         app = socialMediaController.startAPI();
         webClient = HttpClient.newHttpClient();
         objectMapper = new ObjectMapper();
-        app.start(8080);
-        Thread.sleep(1000);
+        app.start(0);
+        baseUrl = "http://localhost:" + app.port();
     }
 
     @After
@@ -50,7 +50,7 @@ public class RetrieveAllMessagesTest {
     }
 
 /**
-     * Sending an http request to GET localhost:8080/messages 
+     * Sending an http request to GET /messages 
      * 
      * Expected Response:
      *  Status Code: 200
@@ -59,7 +59,7 @@ public class RetrieveAllMessagesTest {
     @Test
     public void getAllMessagesMessagesAvailable() throws IOException, InterruptedException {
         HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create("http://localhost:8080/messages"))
+                .uri(URI.create(baseUrl + "/messages"))
                 .build();
         HttpResponse response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
         int status = response.statusCode();
@@ -74,7 +74,7 @@ public class RetrieveAllMessagesTest {
 
 
     /**
-     * Sending an http request to GET localhost:8080/messages with no mesages in db
+     * Sending an http request to GET /messages with no mesages in db
      * 
      * Expected Response:
      *  Status Code: 200
@@ -86,7 +86,7 @@ public class RetrieveAllMessagesTest {
         removeInitialMessage();
 
         HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create("http://localhost:8080/messages"))
+                .uri(URI.create(baseUrl + "/messages"))
                 .build();
         HttpResponse response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
         int status = response.statusCode();
@@ -99,10 +99,34 @@ public class RetrieveAllMessagesTest {
 
 
 
+    /**
+     * Sending an http request to GET /messages?stream=true
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the same JSON list of message objects as the unstreamed endpoint
+     */
+    @Test
+    public void getAllMessagesStreamed() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(baseUrl + "/messages?stream=true"))
+                .build();
+        HttpResponse response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        int status = response.statusCode();
+
+        Assert.assertEquals(200, status);
+
+        List<Message> expectedResult = new ArrayList<Message>();
+        expectedResult.add(new Message(1, 1, "test message 1", 1669947792));
+        List<Message> actualResult = objectMapper.readValue(response.body().toString(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(expectedResult, actualResult);
+    }
+
+
+
     private void removeInitialMessage(){
-        try {
-                Connection conn = ConnectionUtil.getConnection();
-                PreparedStatement ps = conn.prepareStatement("delete from message where message_id = ?");
+        try (Connection conn = ConnectionUtil.getConnection();
+             PreparedStatement ps = conn.prepareStatement("delete from message where message_id = ?")) {
                 ps.setInt(1, 1);
                 ps.executeUpdate();
         } catch (SQLException e) {
@@ -0,0 +1,84 @@
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.RowMappers;
+import Model.Account;
+import Model.Message;
+import Util.SchemaMigrator;
+
+public class RowMappersTest {
+    Connection connection;
+
+    /**
+     * Before every test, migrate a private in-memory database and add one account with two messages.
+     */
+    @Before
+    public void setUp() throws SQLException, IOException {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:rowmapperstest;DB_CLOSE_DELAY=-1");
+        dataSource.setUser("sa");
+        dataSource.setPassword("sa");
+        connection = dataSource.getConnection();
+        SchemaMigrator.migrate(connection);
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("INSERT INTO account (username, password) VALUES ('testuser1', 'password')");
+            statement.executeUpdate("INSERT INTO message (posted_by, message_text, time_posted_epoch) "
+                    + "VALUES (1, 'test message 1', 1669947792), (1, 'test message 2', 1669947793)");
+        }
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP ALL OBJECTS");
+        }
+        connection.close();
+    }
+
+    /**
+     * MESSAGE and ACCOUNT should read the columns their column lists select.
+     */
+    @Test
+    public void mapsExplicitColumns() throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT " + RowMappers.MESSAGE_COLUMNS + " FROM message ORDER BY message_id")) {
+            Assert.assertEquals(Arrays.asList(new Message(1, 1, "test message 1", 1669947792),
+                            new Message(2, 1, "test message 2", 1669947793)),
+                    RowMappers.list(statement.executeQuery(), RowMappers.MESSAGE));
+        }
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT " + RowMappers.ACCOUNT_COLUMNS + " FROM account WHERE username = 'missing'")) {
+            Assert.assertNull(RowMappers.first(statement.executeQuery(), RowMappers.ACCOUNT));
+        }
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT " + RowMappers.ACCOUNT_COLUMNS + " FROM account")) {
+            Assert.assertEquals(new Account(1, "testuser1", "password"),
+                    RowMappers.first(statement.executeQuery(), RowMappers.ACCOUNT));
+        }
+    }
+
+    /**
+     * messageByName should find the columns wherever a query put them.
+     */
+    @Test
+    public void messageByNameResolvesColumnPositions() throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT time_posted_epoch, message_text, 'extra' AS extra, posted_by, message_id FROM message "
+                        + "WHERE message_id = 2")) {
+            ResultSet rs = statement.executeQuery();
+            Assert.assertEquals(new Message(2, 1, "test message 2", 1669947793),
+                    RowMappers.first(rs, RowMappers.messageByName(rs)));
+        }
+    }
+}
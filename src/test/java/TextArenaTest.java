@@ -0,0 +1,59 @@
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import Util.TextArena;
+
+public class TextArenaTest {
+
+    /**
+     * Text should come back as it went in, including null, the empty string and multi-byte characters, across more
+     * than one chunk.
+     */
+    @Test
+    public void textRoundTrips() {
+        TextArena arena = new TextArena();
+        List<String> texts = new ArrayList<>();
+        List<Integer> handles = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            String text = i % 3 == 0 ? "message " + i : "ü€𝄞 message ".repeat(i % 20) + i;
+            texts.add(text);
+            handles.add(arena.add(text));
+        }
+        Assert.assertTrue(arena.getCapacityBytes() > 1 << 20);
+        for (int i = 0; i < texts.size(); i++) {
+            Assert.assertEquals(texts.get(i), arena.get(handles.get(i)));
+        }
+
+        Assert.assertEquals(TextArena.NULL, arena.add(null));
+        Assert.assertNull(arena.get(TextArena.NULL));
+        Assert.assertEquals("", arena.get(arena.add("")));
+    }
+
+    /**
+     * Freed space should be reused by text of the same padded size instead of growing the arena.
+     */
+    @Test
+    public void freedSpaceIsReused() {
+        TextArena arena = new TextArena();
+        int first = arena.add("first message");
+        arena.add("second message");
+        long used = arena.getUsedBytes();
+
+        arena.free(first);
+        Assert.assertTrue(arena.getUsedBytes() < used);
+        Assert.assertEquals(first, arena.add("third message"));
+        Assert.assertEquals("third message", arena.get(first));
+        Assert.assertEquals(used, arena.getUsedBytes());
+    }
+
+    /**
+     * Text too long for the two byte length should be rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOverlongText() {
+        new TextArena().add("x".repeat(TextArena.MAX_TEXT_BYTES + 1));
+    }
+}
@@ -0,0 +1,153 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import Util.TinyLfuCache;
+
+public class TinyLfuCacheTest {
+
+    /**
+     * The cache should never hold more than its maximum size, and should count what it evicts.
+     */
+    @Test
+    public void sizeIsBounded() {
+        TinyLfuCache<Integer, String> cache = new TinyLfuCache<>(100);
+        for (int i = 0; i < 1000; i++) {
+            cache.put(i, "value " + i);
+        }
+        Assert.assertEquals(100, cache.size());
+        Assert.assertEquals(900, cache.getEvictionCount());
+    }
+
+    /**
+     * Frequently requested entries should survive a scan of many keys that are each requested only once.
+     */
+    @Test
+    public void popularEntriesSurviveScan() {
+        TinyLfuCache<Integer, String> cache = new TinyLfuCache<>(100);
+        for (int i = 0; i < 50; i++) {
+            cache.put(i, "hot " + i);
+        }
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 50; i++) {
+                Assert.assertNotNull(cache.get(i));
+            }
+        }
+        for (int i = 1000; i < 11000; i++) {
+            cache.get(i);
+            cache.put(i, "cold " + i);
+        }
+        int survivors = 0;
+        for (int i = 0; i < 50; i++) {
+            if (cache.get(i) != null) {
+                survivors++;
+            }
+        }
+        Assert.assertTrue("Only " + survivors + " popular entries survived", survivors >= 45);
+    }
+
+    /**
+     * Entries with a time-to-live should disappear once it has passed, counting as a miss.
+     */
+    @Test
+    public void expiredEntriesAreMisses() throws InterruptedException {
+        TinyLfuCache<Integer, String> cache = new TinyLfuCache<>(10);
+        cache.put(1, "short lived", 1_000_000L);
+        Thread.sleep(5);
+        Assert.assertNull(cache.get(1));
+        Assert.assertEquals(1, cache.getMissCount());
+        Assert.assertEquals(0, cache.size());
+    }
+
+    /**
+     * Invalidated entries should no longer be returned.
+     */
+    @Test
+    public void invalidateRemovesEntry() {
+        TinyLfuCache<Integer, String> cache = new TinyLfuCache<>(10);
+        cache.put(1, "one");
+        Assert.assertEquals("one", cache.get(1));
+        cache.invalidate(1);
+        Assert.assertNull(cache.get(1));
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(1, cache.getMissCount());
+    }
+
+    /**
+     * A value loaded before its key was invalidated should not be cached, since it may be the value the invalidation
+     * was meant to remove.
+     */
+    @Test
+    public void putIfNotInvalidatedDropsValueLoadedBeforeInvalidation() {
+        TinyLfuCache<Integer, String> cache = new TinyLfuCache<>(10);
+        long stamp = cache.invalidationStamp(1);
+        cache.invalidate(1);
+        Assert.assertFalse(cache.putIfNotInvalidated(1, "stale", TinyLfuCache.NO_EXPIRY, stamp));
+        Assert.assertNull(cache.get(1));
+
+        stamp = cache.invalidationStamp(1);
+        Assert.assertTrue(cache.putIfNotInvalidated(1, "fresh", TinyLfuCache.NO_EXPIRY, stamp));
+        Assert.assertEquals("fresh", cache.get(1));
+    }
+
+    /**
+     * Every value that leaves the cache, however it leaves, should be handed to the removal listener once.
+     */
+    @Test
+    public void removalListenerSeesEveryRemovedValue() {
+        List<String> removed = new ArrayList<>();
+        TinyLfuCache<Integer, String> cache = new TinyLfuCache<>(10, (key, value) -> removed.add(value));
+        cache.put(1, "one");
+        cache.put(1, "one again");
+        cache.invalidate(1);
+        for (int i = 0; i < 11; i++) {
+            cache.put(i, "value " + i);
+        }
+        Assert.assertEquals(Arrays.asList("one", "one again"), removed.subList(0, 2));
+        Assert.assertEquals(3, removed.size());
+
+        cache.invalidateAll();
+        Assert.assertEquals(13, removed.size());
+    }
+
+    /**
+     * Lock-free lookups racing with puts and invalidations should keep the size bounded and count every lookup once.
+     */
+    @Test
+    public void concurrentReadsAndWritesStayConsistent() throws InterruptedException {
+        TinyLfuCache<Integer, String> cache = new TinyLfuCache<>(100);
+        AtomicInteger lookups = new AtomicInteger();
+        AtomicInteger wrongValues = new AtomicInteger();
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < 20000; i++) {
+                    int key = random.nextInt(300);
+                    String value = cache.get(key);
+                    lookups.incrementAndGet();
+                    if (value != null && !value.equals("value " + key)) {
+                        wrongValues.incrementAndGet();
+                    }
+                    if (value == null) {
+                        cache.put(key, "value " + key);
+                    } else if (random.nextInt(50) == 0) {
+                        cache.invalidate(key);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals(0, wrongValues.get());
+        Assert.assertTrue(cache.size() <= 100);
+        Assert.assertEquals(lookups.get(), cache.getHitCount() + cache.getMissCount());
+    }
+}
@@ -0,0 +1,133 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.AccountDAO;
+import DAO.MessageDAO;
+import Model.Account;
+import Model.Message;
+import Util.ConnectionUtil;
+import Util.IntBitmap;
+import Util.UnitOfWork;
+
+public class UnitOfWorkTest {
+    MessageDAO messageDAO;
+
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        messageDAO = new MessageDAO();
+    }
+
+    @After
+    public void tearDown() {
+        UnitOfWork unitOfWork = UnitOfWork.current();
+        if (unitOfWork != null) {
+            unitOfWork.end();
+        }
+    }
+
+    /**
+     * Every DAO call inside a unit of work should see the same connection, and closing it should not end the unit.
+     */
+    @Test
+    public void daoCallsShareOneConnection() throws SQLException {
+        UnitOfWork unitOfWork = UnitOfWork.begin();
+        int activeBefore = ConnectionUtil.getPoolStats().getActive();
+
+        Connection first = ConnectionUtil.getConnection();
+        first.close();
+        Connection second = ConnectionUtil.getConnection();
+        Assert.assertFalse(first.isClosed());
+        Assert.assertEquals(first, second);
+        Assert.assertEquals(activeBefore + 1, ConnectionUtil.getPoolStats().getActive());
+
+        unitOfWork.end();
+        Assert.assertEquals(activeBefore, ConnectionUtil.getPoolStats().getActive());
+        Assert.assertNull(UnitOfWork.current());
+    }
+
+    /**
+     * Changes made inside a unit of work marked rollback-only should not be visible after it ends.
+     */
+    @Test
+    public void rollbackOnlyDiscardsChanges() throws SQLException {
+        UnitOfWork unitOfWork = UnitOfWork.begin();
+        Connection connection = ConnectionUtil.getConnection();
+        try (PreparedStatement ps = connection.prepareStatement("DELETE FROM message WHERE message_id = ?")) {
+            ps.setInt(1, 1);
+            ps.executeUpdate();
+        }
+        Assert.assertNull(messageDAO.getMessageById(1));
+        unitOfWork.setRollbackOnly();
+        unitOfWork.end();
+
+        Message expected = new Message(1, 1, "test message 1", 1669947792);
+        Assert.assertEquals(expected, messageDAO.getMessageById(1));
+    }
+
+    /**
+     * end() should report a commit that failed, so the request is not answered as if its changes were stored.
+     */
+    @Test
+    public void endReportsFailedCommit() throws SQLException {
+        UnitOfWork unitOfWork = UnitOfWork.begin();
+        Connection connection = ConnectionUtil.getConnection();
+        try (PreparedStatement ps = connection.prepareStatement("DELETE FROM message WHERE message_id = ?")) {
+            ps.setInt(1, 1);
+            ps.executeUpdate();
+        }
+        // Closing the physical connection underneath the unit of work makes the commit fail
+        connection.unwrap(Connection.class).close();
+        Assert.assertFalse(unitOfWork.end());
+
+        Message expected = new Message(1, 1, "test message 1", 1669947792);
+        Assert.assertEquals(expected, messageDAO.getMessageById(1));
+    }
+
+    /**
+     * A failed batch inside a unit of work should take back the rows it did insert, so that committing the rest of
+     * the unit does not store part of the batch.
+     */
+    @Test
+    public void failedBatchLeavesNoRowsInUnit() {
+        int before = messageDAO.getAllMessages().size();
+
+        UnitOfWork unitOfWork = UnitOfWork.begin();
+        List<Message> batch = Arrays.asList(new Message(1, "inserted first", 1669947800),
+                new Message(9999, "no such account", 1669947801));
+        Assert.assertNull(messageDAO.insertMessages(batch));
+        Assert.assertTrue(unitOfWork.end());
+
+        Assert.assertEquals(before, messageDAO.getAllMessages().size());
+    }
+
+    /**
+     * An account inserted in a unit of work that rolls back should never reach the account id bitmap, and one that
+     * commits should reach it once the unit ends.
+     */
+    @Test
+    public void accountIdsOnlyHoldCommittedAccounts() {
+        AccountDAO accountDAO = new AccountDAO();
+        IntBitmap accountIds = accountDAO.loadAccountIds();
+
+        UnitOfWork rolledBack = UnitOfWork.begin();
+        Account discarded = accountDAO.insertAccount(new Account("rolledback", "password"));
+        rolledBack.setRollbackOnly();
+        rolledBack.end();
+        Assert.assertFalse(accountIds.contains(discarded.getAccount_id()));
+
+        UnitOfWork committed = UnitOfWork.begin();
+        Account kept = accountDAO.insertAccount(new Account("committed", "password"));
+        Assert.assertFalse(accountIds.contains(kept.getAccount_id()));
+        Assert.assertTrue(committed.end());
+        Assert.assertTrue(accountIds.contains(kept.getAccount_id()));
+    }
+}
@@ -21,21 +21,21 @@ public class UpdateMessageTextTest {
     HttpClient webClient;
     ObjectMapper objectMapper;
     Javalin app;
+    String baseUrl;
 
     /**
-     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * Before every test, reset the database, restart the Javalin app on a free port, and create a new webClient and ObjectMapper
      * for interacting locally on the web.
-     * @throws InterruptedException
      */
     @Before
-    public void setUp() throws InterruptedException {
+    public void setUp() {
         ConnectionUtil.resetTestDatabase();
         socialMediaController = new SocialMediaController();
         app = socialMediaController.startAPI();
         webClient = HttpClient.newHttpClient();
         objectMapper = new ObjectMapper();
-        app.start(8080);
-        Thread.sleep(1000);
+        app.start(0);
+        baseUrl = "http://localhost:" + app.port();
     }
 
     @After
@@ -45,7 +45,7 @@ public class UpdateMessageTextTest {
 
 
     /**
-     * Sending an http request to PATCH localhost:8080/messages/1 (message id exists in db) with successfule message text
+     * Sending an http request to PATCH /messages/1 (message id exists in db) with successfule message text
      * 
      * Expected Response:
      *  Status Code: 200
@@ -54,7 +54,7 @@ public class UpdateMessageTextTest {
     @Test
     public void updateMessageSuccessful() throws IOException, InterruptedException {
         HttpRequest postMessageRequest = HttpRequest.newBuilder()
-                .uri(URI.create("http://localhost:8080/messages/1"))
+                .uri(URI.create(baseUrl + "/messages/1"))
                 .method("PATCH", HttpRequest.BodyPublishers.ofString("{"+
                         "\"message_text\": \"updated message\" }"))
                 .header("Content-Type", "application/json")
@@ -73,7 +73,7 @@ public class UpdateMessageTextTest {
 
 
     /**
-     * Sending an http request to PATCH localhost:8080/messages/1 (message id does NOT exist in db) 
+     * Sending an http request to PATCH /messages/1 (message id does NOT exist in db) 
      * 
      * Expected Response:
      *  Status Code: 400
@@ -82,7 +82,7 @@ public class UpdateMessageTextTest {
     @Test
     public void updateMessageMessageNotFound() throws IOException, InterruptedException {
         HttpRequest postMessageRequest = HttpRequest.newBuilder()
-                .uri(URI.create("http://localhost:8080/messages/2"))
+                .uri(URI.create(baseUrl + "/messages/2"))
                 .method("PATCH", HttpRequest.BodyPublishers.ofString("{"+
                         "\"message_text\": \"updated message\" }"))
                 .header("Content-Type", "application/json")
@@ -96,7 +96,7 @@ public class UpdateMessageTextTest {
 
 
     /**
-     * Sending an http request to PATCH localhost:8080/messages/1 (message text to update is an empty string) 
+     * Sending an http request to PATCH /messages/1 (message text to update is an empty string) 
      * 
      * Expected Response:
      *  Status Code: 400
@@ -105,7 +105,7 @@ public class UpdateMessageTextTest {
     @Test
     public void updateMessageMessageStringEmpty() throws IOException, InterruptedException {
         HttpRequest postMessageRequest = HttpRequest.newBuilder()
-                .uri(URI.create("http://localhost:8080/messages/1"))
+                .uri(URI.create(baseUrl + "/messages/1"))
                 .method("PATCH", HttpRequest.BodyPublishers.ofString("{"+
                         "\"message_text\": \"\" }"))
                 .header("Content-Type", "application/json")
@@ -119,7 +119,7 @@ public class UpdateMessageTextTest {
 
 
     /**
-     * Sending an http request to PATCH localhost:8080/messages/1 (message text is too long) 
+     * Sending an http request to PATCH /messages/1 (message text is too long) 
      * 
      * Expected Response:
      *  Status Code: 400
@@ -128,7 +128,7 @@ public class UpdateMessageTextTest {
     @Test
     public void updateMessageMessageTooLong() throws IOException, InterruptedException {
         HttpRequest postMessageRequest = HttpRequest.newBuilder()
-                .uri(URI.create("http://localhost:8080/messages/1"))
+                .uri(URI.create(baseUrl + "/messages/1"))
                 .method("PATCH", HttpRequest.BodyPublishers.ofString("{"+
                         "\"message_text\": \"aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa\" }"))
                 .header("Content-Type", "application/json")
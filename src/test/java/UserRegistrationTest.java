@@ -21,21 +21,21 @@ public class UserRegistrationTest {
     HttpClient webClient;
     ObjectMapper objectMapper;
     Javalin app;
+    String baseUrl;
 
     /**
-     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * Before every test, reset the database, restart the Javalin app on a free port, and create a new webClient and ObjectMapper
      * for interacting locally on the web.
-     * @throws InterruptedException
      */
     @Before
-    public void setUp() throws InterruptedException {
+    public void setUp() {
         ConnectionUtil.resetTestDatabase();
         socialMediaController = new SocialMediaController();
         app = socialMediaController.startAPI();
         webClient = HttpClient.newHttpClient();
         objectMapper = new ObjectMapper();
-        app.start(8080);
-        Thread.sleep(1000);
+        app.start(0);
+        baseUrl = "http://localhost:" + app.port();
     }
 
     @After
@@ -44,7 +44,7 @@ public class UserRegistrationTest {
     }
 
     /**
-     * Sending an http request to POST localhost:8080/register when username does not exist in the system
+     * Sending an http request to POST /register when username does not exist in the system
      * 
      * Expected Response:
      *  Status Code: 200
@@ -53,7 +53,7 @@ public class UserRegistrationTest {
     @Test
     public void registerUserSuccessful() throws IOException, InterruptedException {
         HttpRequest postRequest = HttpRequest.newBuilder()
-                .uri(URI.create("http://localhost:8080/register"))
+                .uri(URI.create(baseUrl + "/register"))
                 .POST(HttpRequest.BodyPublishers.ofString("{" +
                         "\"username\": \"user\", " +
                         "\"password\": \"password\" }"))
@@ -70,7 +70,7 @@ public class UserRegistrationTest {
 
 
      /**
-     * Sending an http request to POST localhost:8080/register when username already exists in system
+     * Sending an http request to POST /register when username already exists in system
      * 
      * Expected Response:
      *  Status Code: 400
@@ -79,7 +79,7 @@ public class UserRegistrationTest {
     @Test
     public void registerUserDuplicateUsername() throws IOException, InterruptedException {
         HttpRequest postRequest = HttpRequest.newBuilder()
-                .uri(URI.create("http://localhost:8080/register"))
+                .uri(URI.create(baseUrl + "/register"))
                 .POST(HttpRequest.BodyPublishers.ofString("{" +
                         "\"username\": \"user\", " +
                         "\"password\": \"password\" }"))
@@ -96,7 +96,7 @@ public class UserRegistrationTest {
     }
 
     /**
-     * Sending an http request to POST localhost:8080/register when no username provided
+     * Sending an http request to POST /register when no username provided
      * 
      * Expected Response:
      *  Status Code: 400
@@ -105,7 +105,7 @@ public class UserRegistrationTest {
     @Test
     public void registerUserUsernameBlank() throws IOException, InterruptedException {
         HttpRequest postRequest = HttpRequest.newBuilder()
-                .uri(URI.create("http://localhost:8080/register"))
+                .uri(URI.create(baseUrl + "/register"))
                 .POST(HttpRequest.BodyPublishers.ofString("{" +
                         "\"username\": \"\", " +
                         "\"password\": \"password\" }"))
@@ -120,7 +120,7 @@ public class UserRegistrationTest {
 
 
     /**
-     * Sending an http request to POST localhost:8080/register when no password is less than 4 characters
+     * Sending an http request to POST /register when no password is less than 4 characters
      * 
      * Expected Response:
      *  Status Code: 400
@@ -129,7 +129,7 @@ public class UserRegistrationTest {
     @Test
     public void registeUserPasswordLengthLessThanFour() throws IOException, InterruptedException {
         HttpRequest postRequest = HttpRequest.newBuilder()
-                .uri(URI.create("http://localhost:8080/register"))
+                .uri(URI.create(baseUrl + "/register"))
                 .POST(HttpRequest.BodyPublishers.ofString("{" +
                         "\"username\": \"username\", " +
                         "\"password\": \"pas\" }"))
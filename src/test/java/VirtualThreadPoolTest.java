@@ -0,0 +1,58 @@
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Util.VirtualThreadPool;
+
+public class VirtualThreadPoolTest {
+    VirtualThreadPool pool;
+
+    @Before
+    public void setUp() throws Exception {
+        pool = new VirtualThreadPool("test");
+        pool.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        pool.stop();
+    }
+
+    /**
+     * Tasks handed straight to the pool, as Jetty's acceptors and selectors are, should run on platform threads.
+     */
+    @Test
+    public void executedTasksRunOnPlatformThreads() throws InterruptedException {
+        CountDownLatch ran = new CountDownLatch(1);
+        AtomicBoolean virtual = new AtomicBoolean(true);
+        pool.execute(() -> {
+            virtual.set(Thread.currentThread().isVirtual());
+            ran.countDown();
+        });
+        Assert.assertTrue(ran.await(10, TimeUnit.SECONDS));
+        Assert.assertFalse(virtual.get());
+    }
+
+    /**
+     * The pool should tell Jetty's execution strategy to run blocking tasks, such as request handlers, on virtual
+     * threads.
+     */
+    @Test
+    public void blockingTasksUseVirtualThreads() {
+        Assert.assertTrue(pool.isUseVirtualThreads());
+    }
+
+    /**
+     * Once stopped, the pool should refuse new tasks.
+     */
+    @Test(expected = java.util.concurrent.RejectedExecutionException.class)
+    public void stoppedPoolRejectsTasks() throws Exception {
+        pool.stop();
+        pool.execute(() -> { });
+    }
+}